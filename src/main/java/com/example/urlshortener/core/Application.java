@@ -1,5 +1,7 @@
 package com.example.urlshortener.core;
 
+import java.io.IOException;
+import java.nio.file.Paths;
 import java.util.Optional;
 import java.util.Scanner;
 import java.util.UUID;
@@ -8,6 +10,9 @@ import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 
 public class Application {
+    private static final int LINKS_PAGE_SIZE = 20;
+    private static final String SEQUENCE_FILE = "codes.seq";
+
     private final UrlShortenerService service;
     private final Scanner scanner;
     private final UserRepository userRepository;
@@ -225,13 +230,21 @@ public class Application {
             return;
         }
 
+        System.out.print(
+                "Тип: 1 - обычная (лимит "
+                        + service.getDefaultClickLimit()
+                        + " переходов), 2 - постоянная (301, без лимита) [1]: ");
+        boolean permanent = chooseOption(new Boolean[] {false, true});
+
         // Создание короткой ссылки
         try {
-            String shortCode = service.createShortLink(originalUrl, currentUser.getId());
+            String shortCode = service.createShortLink(originalUrl, currentUser.getId(), permanent);
 
             System.out.println("✅ Короткая ссылка успешно создана!");
             System.out.println("🔗 Ваша короткая ссылка: " + shortCode);
-            System.out.println("📊 Лимит переходов: " + service.getDefaultClickLimit());
+            System.out.println(
+                    "📊 Лимит переходов: "
+                            + (permanent ? "без лимита" : service.getDefaultClickLimit()));
             System.out.println("⏰ Время жизни: " + service.getLinkTtlSeconds() + " секунд");
 
             Logger.logUserAction(
@@ -256,16 +269,25 @@ public class Application {
         }
 
         try {
-            String originalUrl = service.handleRedirect(shortCode);
+            RedirectResult result = service.resolveRedirect(shortCode);
+            switch (result.getStatus()) {
+                case NOT_FOUND:
+                    System.out.println("❌ Ошибка: Ссылка не найдена");
+                    return;
+                case INACTIVE:
+                    System.out.println(
+                            "🚫 Ссылка недоступна: Ссылка неактивна (истек срок или превышен"
+                                    + " лимит переходов)");
+                    return;
+                default:
+                    break;
+            }
+            String originalUrl = result.getOriginalUrl();
             System.out.println("🔗 Перенаправление на: " + originalUrl);
 
             // Улучшенная логика открытия URL
             openUrlInBrowser(originalUrl);
 
-        } catch (LinkNotFoundException e) {
-            System.out.println("❌ Ошибка: " + e.getMessage());
-        } catch (LinkNotActiveException e) {
-            System.out.println("🚫 Ссылка недоступна: " + e.getMessage());
         } catch (Exception e) {
             System.out.println("❌ Неизвестная ошибка: " + e.getMessage());
             Logger.logError("Ошибка при обработке редиректа для кода: " + shortCode, e);
@@ -328,55 +350,89 @@ public class Application {
 
     private void showMyLinks() {
         System.out.println("\n--- МОИ ССЫЛКИ ---");
-        var myLinks = service.getAllUserLinks(currentUser.getId());
+        int total = service.countUserLinks(currentUser.getId());
 
-        if (myLinks.isEmpty()) {
+        if (total == 0) {
             System.out.println("📭 У вас пока нет созданных ссылок.");
             System.out.println(
                     "💡 Используйте опцию 'Создать короткую ссылку' чтобы добавить первую ссылку!");
-        } else {
-            System.out.println("📊 Всего ссылок: " + myLinks.size());
-            System.out.println();
-
-            myLinks.forEach(
-                    link -> {
-                        String status =
-                                LinkValidator.isLinkActive(link) ? "🟢 АКТИВНА" : "🔴 НЕАКТИВНА";
-                        String details =
-                                String.format(
-                                        "📈 Переходы: %d/%d, ⏰ Истекает: %s",
-                                        link.getCurrentClicks(),
-                                        link.getClickLimit(),
-                                        link.getExpirationTime().toString().substring(0, 16));
+            return;
+        }
+        System.out.println("📊 Всего ссылок: " + total);
+        System.out.print("Сортировка: 1 - новые, 2 - скоро истекают, 3 - по переходам [1]: ");
+        LinkSort sort = chooseOption(LinkSort.values());
+        System.out.print("Показать: 1 - все, 2 - активные, 3 - неактивные [1]: ");
+        LinkFilter filter = chooseOption(LinkFilter.values());
+        System.out.println();
+
+        // Ссылки печатаются страницами, следующая загружается по курсору только по запросу
+        String cursor = null;
+        do {
+            LinkPage page =
+                    service.getUserLinksPage(
+                            currentUser.getId(), sort, filter, cursor, LINKS_PAGE_SIZE);
+            if (page.getLinks().isEmpty() && cursor == null) {
+                System.out.println("📭 Нет ссылок, подходящих под фильтр.");
+            }
+            page.getLinks().forEach(this::printLink);
+            cursor = page.getNextCursor();
+            if (cursor != null) {
+                System.out.print("Enter - следующая страница, 0 - назад: ");
+                if ("0".equals(scanner.nextLine().trim())) {
+                    return;
+                }
+            }
+        } while (cursor != null);
+    }
 
-                        System.out.printf(
-                                "🔗 Код: %s -> %s [%s]%n",
-                                link.getShortCode(), link.getOriginalUrl(), status);
-                        System.out.printf("   %s%n", details);
-                        System.out.println("   ──────────────────────────────────────────");
-                    });
+    // Номер варианта начиная с 1; пустой или неверный ввод выбирает первый вариант
+    private <T> T chooseOption(T[] options) {
+        String input = scanner.nextLine().trim();
+        try {
+            int index = Integer.parseInt(input) - 1;
+            if (index >= 0 && index < options.length) {
+                return options[index];
+            }
+        } catch (NumberFormatException e) {
+            // Берем вариант по умолчанию
         }
+        return options[0];
+    }
+
+    private void printLink(Link link) {
+        String status = LinkValidator.isLinkActive(link) ? "🟢 АКТИВНА" : "🔴 НЕАКТИВНА";
+        String details =
+                String.format(
+                        "📈 Переходы: %d/%s, ⏰ Истекает: %s",
+                        link.getCurrentClicks(),
+                        link.isPermanent() ? "∞ (постоянная)" : link.getClickLimit(),
+                        link.getExpirationTime().toString().substring(0, 16));
+
+        System.out.printf(
+                "🔗 Код: %s -> %s [%s]%n", link.getShortCode(), link.getOriginalUrl(), status);
+        System.out.printf("   %s%n", details);
+        System.out.println("   ──────────────────────────────────────────");
     }
 
     private void checkUserNotifications() {
-        var inactiveLinks = service.getInactiveLinks(currentUser.getId());
-        if (!inactiveLinks.isEmpty()) {
+        var notifications = service.pollNotifications(currentUser.getId());
+        if (!notifications.isEmpty()) {
             System.out.println("\n--- УВЕДОМЛЕНИЯ ---");
-            inactiveLinks.forEach(
-                    link -> {
+            notifications.forEach(
+                    event -> {
                         String reason;
-                        if (link.getCurrentClicks() >= link.getClickLimit()) {
+                        if (event.getReason() == InactiveLinkTracker.Reason.CLICK_LIMIT_REACHED) {
                             reason =
                                     "исчерпан лимит переходов ("
-                                            + link.getCurrentClicks()
+                                            + event.getClicks()
                                             + "/"
-                                            + link.getClickLimit()
+                                            + event.getClickLimit()
                                             + ")";
                         } else {
                             reason = "истек срок действия";
                         }
                         System.out.printf(
-                                "🔔 Ссылка %s недоступна: %s%n", link.getShortCode(), reason);
+                                "🔔 Ссылка %s недоступна: %s%n", event.getShortCode(), reason);
                     });
             System.out.println("────────────────────");
         }
@@ -394,6 +450,21 @@ public class Application {
         System.out.println("Текущие настройки системы:");
         System.out.println("1. Лимит переходов: " + service.getDefaultClickLimit());
         System.out.println("2. Время жизни ссылок: " + service.getLinkTtlSeconds() + " секунд");
+        RedirectCache.Stats cacheStats = service.getRedirectCacheStats();
+        System.out.printf(
+                "🔥 Кэш переходов: ссылок %d, попаданий %d, промахов %d (%.1f%%), вытеснено %d%n",
+                cacheStats.getSize(),
+                cacheStats.getHits(),
+                cacheStats.getMisses(),
+                cacheStats.getHitRate() * 100,
+                cacheStats.getEvictions());
+        ConcurrencyLimiter.Stats admission = service.getAdmissionStats();
+        System.out.printf(
+                "🚦 Нагрузка: выполняется %d из %d, отклонено переходов %d, созданий %d%n",
+                admission.getInFlight(),
+                admission.getLimit(),
+                admission.getRejectedRedirects(),
+                admission.getRejectedCreates());
 
         System.out.print("\nВыберите настройку для изменения (1-2) или 0 для отмены: ");
         String choice = scanner.nextLine();
@@ -443,27 +514,73 @@ public class Application {
         }
     }
 
+    // Режим без консоли: HTTP-сервер переходов работает до остановки процесса. В обработчике
+    // завершения хранилище закрывается после того, как очистка просроченных ссылок доработает
+    private static void serve(
+            UrlShortenerService service,
+            LinkRepository linkRepository,
+            ScheduledExecutorService cleanupScheduler,
+            SystemSettings settings,
+            int port)
+            throws IOException {
+        RedirectServer server = RedirectServer.create(service, settings, port);
+        Runtime.getRuntime()
+                .addShutdownHook(
+                        new Thread(
+                                () -> {
+                                    server.stop();
+                                    shutdown(cleanupScheduler, linkRepository);
+                                }));
+        server.start();
+        System.out.println("🌐 Сервер переходов слушает порт " + server.getPort());
+    }
+
+    // Хранилище закрывается только после того, как идущая очистка просроченных ссылок доработает
+    private static void shutdown(
+            ScheduledExecutorService cleanupScheduler, LinkRepository linkRepository) {
+        cleanupScheduler.shutdown();
+        try {
+            cleanupScheduler.awaitTermination(30, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        linkRepository.close();
+    }
+
     public static void main(String[] args) {
         try {
-            FileLinkRepository linkRepository = new FileLinkRepository();
-            UserRepository userRepository = new UserRepository();
             SystemSettings systemSettings = new SystemSettings();
+            if (args.length == 2 && "--rebalance-shards".equals(args[0])) {
+                ShardedLinkRepository.rebalance(
+                        Paths.get(""), Integer.parseInt(args[1]), systemSettings);
+                return;
+            }
+            ShortCodeGenerator.useSequenceFile(Paths.get(SEQUENCE_FILE));
+            LinkRepository linkRepository = LinkRepository.create(Paths.get(""), systemSettings);
+            UserRepository userRepository = new UserRepository();
 
             UrlShortenerService service = new UrlShortenerService(linkRepository, systemSettings);
 
             ScheduledExecutorService cleanupScheduler = Executors.newScheduledThreadPool(1);
             cleanupScheduler.scheduleAtFixedRate(
                     () -> {
-                        linkRepository.removeExpiredLinks();
+                        service.removeExpiredLinks();
                     },
                     0,
-                    60,
-                    TimeUnit.SECONDS);
+                    systemSettings.getCleanupIntervalMillis(),
+                    TimeUnit.MILLISECONDS);
+
+            if (args.length >= 1 && "--serve".equals(args[0])) {
+                int port =
+                        args.length >= 2 ? Integer.parseInt(args[1]) : systemSettings.getHttpPort();
+                serve(service, linkRepository, cleanupScheduler, systemSettings, port);
+                return;
+            }
 
             Application app = new Application(service, userRepository);
             app.start();
 
-            cleanupScheduler.shutdown();
+            shutdown(cleanupScheduler, linkRepository);
         } catch (Exception e) {
             System.err.println("Ошибка запуска приложения: " + e.getMessage());
             e.printStackTrace();
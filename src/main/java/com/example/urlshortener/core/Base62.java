@@ -0,0 +1,54 @@
+package com.example.urlshortener.core;
+
+import java.util.Arrays;
+
+/**
+ * Короткий код из 8 символов base62 как число в диапазоне [0, 62^8). Порядок символов тот же, что у
+ * генератора: A-Z, a-z, 0-9; первый символ - старший разряд.
+ */
+final class Base62 {
+    static final String ALPHABET = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789";
+    static final int CODE_LENGTH = 8;
+    // 62^8 = 218 340 105 584 896 - меньше 2^48
+    static final long SPACE = 218_340_105_584_896L;
+
+    private static final byte[] DIGITS = new byte[128];
+
+    static {
+        Arrays.fill(DIGITS, (byte) -1);
+        for (int i = 0; i < ALPHABET.length(); i++) {
+            DIGITS[ALPHABET.charAt(i)] = (byte) i;
+        }
+    }
+
+    private Base62() {}
+
+    static String encode(long value) {
+        if (value < 0 || value >= SPACE) {
+            throw new IllegalArgumentException("Число вне диапазона кодов: " + value);
+        }
+        char[] chars = new char[CODE_LENGTH];
+        for (int i = CODE_LENGTH - 1; i >= 0; i--) {
+            chars[i] = ALPHABET.charAt((int) (value % 62));
+            value /= 62;
+        }
+        return new String(chars);
+    }
+
+    /** Число кода или -1, если это не 8 символов base62 (например, код старого формата). */
+    static long decode(String code) {
+        if (code == null || code.length() != CODE_LENGTH) {
+            return -1;
+        }
+        long value = 0;
+        for (int i = 0; i < CODE_LENGTH; i++) {
+            char c = code.charAt(i);
+            int digit = c < 128 ? DIGITS[c] : -1;
+            if (digit < 0) {
+                return -1;
+            }
+            value = value * 62 + digit;
+        }
+        return value;
+    }
+}
@@ -0,0 +1,85 @@
+package com.example.urlshortener.core;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Фильтр Блума по коротким кодам. Позволяет не заглядывать в SSTable, где кода точно нет.
+ *
+ * <p>Позиции битов считаются двойным хешированием от одного 64-битного хеша кода.
+ */
+final class BloomFilter {
+    // 10 бит на ключ и 7 хешей дают около 1% ложных срабатываний
+    private static final int BITS_PER_KEY = 10;
+    private static final int HASHES = 7;
+
+    private final long[] bits;
+    private final int hashes;
+
+    private BloomFilter(long[] bits, int hashes) {
+        this.bits = bits;
+        this.hashes = hashes;
+    }
+
+    static BloomFilter forKeys(int expectedKeys) {
+        long bitCount = Math.max(64, (long) expectedKeys * BITS_PER_KEY);
+        return new BloomFilter(new long[(int) ((bitCount + 63) / 64)], HASHES);
+    }
+
+    void add(String key) {
+        long hash = hash(key);
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32);
+        long bitCount = (long) bits.length * 64;
+        for (int i = 0; i < hashes; i++) {
+            long bit = Integer.toUnsignedLong(h1 + i * h2) % bitCount;
+            bits[(int) (bit >>> 6)] |= 1L << bit;
+        }
+    }
+
+    boolean mightContain(String key) {
+        long hash = hash(key);
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32);
+        long bitCount = (long) bits.length * 64;
+        for (int i = 0; i < hashes; i++) {
+            long bit = Integer.toUnsignedLong(h1 + i * h2) % bitCount;
+            if ((bits[(int) (bit >>> 6)] & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    int serializedSize() {
+        return 4 + 4 + bits.length * 8;
+    }
+
+    void writeTo(ByteBuffer buffer) {
+        buffer.putInt(hashes).putInt(bits.length);
+        for (long word : bits) {
+            buffer.putLong(word);
+        }
+    }
+
+    static BloomFilter readFrom(ByteBuffer buffer) {
+        int hashes = buffer.getInt();
+        long[] bits = new long[buffer.getInt()];
+        for (int i = 0; i < bits.length; i++) {
+            bits[i] = buffer.getLong();
+        }
+        return new BloomFilter(bits, hashes);
+    }
+
+    // FNV-1a по символам кода (коды ASCII) с финальным перемешиванием; нужен и CuckooFilter
+    static long hash(String key) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < key.length(); i++) {
+            hash ^= key.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
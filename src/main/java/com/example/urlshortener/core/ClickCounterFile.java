@@ -0,0 +1,326 @@
+package com.example.urlshortener.core;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Счетчики переходов в отображенном в память файле clicks.dat.
+ *
+ * <p>Каждой ссылке выделяется слот фиксированного размера: короткий код (8 байт) и счетчик (int).
+ * Переход по ссылке - одно атомарное сложение в отображенной памяти, без сериализации и системных
+ * вызовов. На диск изменения сбрасываются фоновым force() раз в заданный интервал, поэтому при сбое
+ * ОС теряются только переходы за последний интервал. Падение самого процесса не теряет переходы
+ * привязанных ссылок: страницы уже в кэше ОС.
+ *
+ * <p>Слот удаленной или замененной ссылки освобождается не сразу: переход, успевший прочитать слот
+ * до освобождения, еще может в него записать. Такой слот выдается заново не раньше, чем через
+ * полный интервал сброса, чтобы запоздавшая запись не попала в счетчик следующей ссылки.
+ *
+ * <p>Файл захватывается блокировкой; если им уже владеет другой экземпляр хранилища, {@link #open}
+ * возвращает null и счетчики остаются в памяти.
+ */
+public class ClickCounterFile implements Closeable {
+    private static final int MAGIC = 0x434C4B31; // "CLK1"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 16;
+
+    // Слот: короткий код, счетчик и 4 байта запаса до выравнивания на 16
+    static final int SLOT_SIZE = 16;
+    private static final int COUNT_OFFSET = LinkCodec.SHORT_CODE_BYTES;
+    // Файл растет областями по 64K слотов, каждая отображается отдельно
+    private static final int SLOTS_PER_REGION = 64 * 1024;
+    private static final long REGION_SIZE = (long) SLOTS_PER_REGION * SLOT_SIZE;
+
+    private static final VarHandle COUNT =
+            MethodHandles.byteBufferViewVarHandle(int[].class, ByteOrder.BIG_ENDIAN);
+
+    private final FileChannel channel;
+    private final FileLock lock;
+    private volatile MappedByteBuffer[] regions = new MappedByteBuffer[0];
+    private final Deque<Integer> freeSlots = new ArrayDeque<>();
+    // Освобожденные слоты выжидают два тика сброса, прежде чем попасть в freeSlots
+    private List<Integer> releasedSlots = new ArrayList<>();
+    private List<Integer> coolingSlots = new ArrayList<>();
+    private int nextSlot;
+    private final ScheduledExecutorService flusher;
+
+    private ClickCounterFile(FileChannel channel, FileLock lock, long flushIntervalMillis)
+            throws IOException {
+        this.channel = channel;
+        this.lock = lock;
+        if (channel.size() < HEADER_SIZE) {
+            writeHeader();
+        } else {
+            checkHeader();
+        }
+        long regionCount = (channel.size() - HEADER_SIZE + REGION_SIZE - 1) / REGION_SIZE;
+        for (int i = 0; i < regionCount; i++) {
+            mapNextRegion();
+        }
+        this.flusher =
+                Executors.newSingleThreadScheduledExecutor(
+                        runnable -> {
+                            Thread thread = new Thread(runnable, "click-counter-flush");
+                            thread.setDaemon(true);
+                            return thread;
+                        });
+        flusher.scheduleWithFixedDelay(
+                () -> {
+                    flush();
+                    recycleReleasedSlots();
+                },
+                flushIntervalMillis,
+                flushIntervalMillis,
+                TimeUnit.MILLISECONDS);
+    }
+
+    /** Открывает файл счетчиков или возвращает null, если он занят другим экземпляром. */
+    public static ClickCounterFile open(Path file, long flushIntervalMillis) {
+        FileChannel channel = null;
+        try {
+            channel =
+                    FileChannel.open(
+                            file,
+                            StandardOpenOption.CREATE,
+                            StandardOpenOption.READ,
+                            StandardOpenOption.WRITE);
+            FileLock lock;
+            try {
+                lock = channel.tryLock();
+            } catch (OverlappingFileLockException e) {
+                lock = null;
+            }
+            if (lock == null) {
+                channel.close();
+                System.err.println("Файл счетчиков " + file.getFileName() + " уже занят");
+                return null;
+            }
+            return new ClickCounterFile(channel, lock, flushIntervalMillis);
+        } catch (IOException | RuntimeException e) {
+            closeQuietly(channel);
+            Logger.logError("Не удалось открыть файл счетчиков переходов", e);
+            return null;
+        }
+    }
+
+    /**
+     * Привязывает загруженные ссылки к их слотам. Значение в слоте и в ссылке сводится к максимуму:
+     * счетчик только растет, а снимок мог отстать от файла счетчиков или наоборот. Слоты ссылок,
+     * которых больше нет, и лишние слоты одного кода освобождаются.
+     */
+    public synchronized void attachAll(Collection<Link> links) {
+        Map<String, Integer> slotsByCode = new HashMap<>();
+        for (int slot = 0; slot < capacity(); slot++) {
+            String code = readCode(slot);
+            if (!code.isEmpty()) {
+                Integer duplicate = slotsByCode.put(code, slot);
+                if (duplicate != null) {
+                    clearSlot(duplicate); // Остался от прежней версии ссылки
+                }
+                nextSlot = slot + 1;
+            }
+        }
+        for (Link link : links) {
+            Integer slot = slotsByCode.remove(link.getShortCode());
+            if (slot != null) {
+                link.attachCounter(this, slot);
+            } else {
+                attach(link);
+            }
+        }
+        for (int slot : slotsByCode.values()) {
+            clearSlot(slot);
+        }
+        for (int slot = 0; slot < nextSlot; slot++) {
+            if (readCode(slot).isEmpty()) {
+                freeSlots.push(slot);
+            }
+        }
+    }
+
+    /** Выделяет слот новой ссылке и переносит в него текущее значение счетчика. */
+    public synchronized void attach(Link link) {
+        if (link.isAttachedTo(this)) {
+            return;
+        }
+        int slot = freeSlots.isEmpty() ? nextSlot++ : freeSlots.pop();
+        try {
+            while (slot >= capacity()) {
+                mapNextRegion();
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Не удалось расширить файл счетчиков переходов", e);
+        }
+        ByteBuffer region = region(slot);
+        int offset = offset(slot);
+        COUNT.setVolatile(region, offset + COUNT_OFFSET, 0);
+        region.put(offset, codeBytes(link.getShortCode()));
+        link.attachCounter(this, slot);
+    }
+
+    /**
+     * Возвращает слот удаленной или замененной ссылки; счетчик остается в самой ссылке. Слот снова
+     * выдается только после карантина.
+     */
+    public synchronized void release(Link link) {
+        int slot = link.detachCounter(this);
+        if (slot >= 0) {
+            clearSlot(slot);
+            releasedSlots.add(slot);
+        }
+    }
+
+    // Вызывается на каждом тике сброса: слот, освобожденный до прошлого тика, уже никто не держит
+    synchronized void recycleReleasedSlots() {
+        freeSlots.addAll(coolingSlots);
+        coolingSlots = releasedSlots;
+        releasedSlots = new ArrayList<>();
+    }
+
+    // Граница выданных слотов: слоты за ней ни разу не выдавались
+    synchronized int getSlotCount() {
+        return nextSlot;
+    }
+
+    // Число слотов с кодом ссылки во всем файле
+    synchronized int getUsedSlotCount() {
+        int used = 0;
+        for (int slot = 0; slot < capacity(); slot++) {
+            if (!readCode(slot).isEmpty()) {
+                used++;
+            }
+        }
+        return used;
+    }
+
+    int get(int slot) {
+        return (int) COUNT.getVolatile(region(slot), offset(slot) + COUNT_OFFSET);
+    }
+
+    int incrementAndGet(int slot) {
+        return (int) COUNT.getAndAdd(region(slot), offset(slot) + COUNT_OFFSET, 1) + 1;
+    }
+
+    boolean compareAndSet(int slot, int expected, int clicks) {
+        return COUNT.compareAndSet(region(slot), offset(slot) + COUNT_OFFSET, expected, clicks);
+    }
+
+    void add(int slot, int delta) {
+        COUNT.getAndAdd(region(slot), offset(slot) + COUNT_OFFSET, delta);
+    }
+
+    void accumulateMax(int slot, int clicks) {
+        ByteBuffer region = region(slot);
+        int index = offset(slot) + COUNT_OFFSET;
+        int current;
+        do {
+            current = (int) COUNT.getVolatile(region, index);
+        } while (current < clicks && !COUNT.compareAndSet(region, index, current, clicks));
+    }
+
+    // Сбрасывает измененные страницы на диск
+    public void flush() {
+        for (MappedByteBuffer region : regions) {
+            region.force();
+        }
+    }
+
+    @Override
+    public void close() {
+        flusher.shutdown();
+        try {
+            flusher.awaitTermination(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        flush();
+        try {
+            lock.release();
+        } catch (IOException e) {
+            System.err.println("Ошибка снятия блокировки файла счетчиков: " + e.getMessage());
+        }
+        closeQuietly(channel);
+    }
+
+    private int capacity() {
+        return regions.length * SLOTS_PER_REGION;
+    }
+
+    private ByteBuffer region(int slot) {
+        return regions[slot / SLOTS_PER_REGION];
+    }
+
+    private static int offset(int slot) {
+        return (slot % SLOTS_PER_REGION) * SLOT_SIZE;
+    }
+
+    private String readCode(int slot) {
+        ByteBuffer slice = region(slot).slice(offset(slot), LinkCodec.SHORT_CODE_BYTES);
+        return LinkCodec.readShortCode(slice);
+    }
+
+    private void clearSlot(int slot) {
+        region(slot).put(offset(slot), new byte[LinkCodec.SHORT_CODE_BYTES]);
+    }
+
+    private static byte[] codeBytes(String shortCode) {
+        ByteBuffer buffer = ByteBuffer.allocate(LinkCodec.SHORT_CODE_BYTES);
+        LinkCodec.writeShortCode(shortCode, buffer);
+        return buffer.array();
+    }
+
+    private void mapNextRegion() throws IOException {
+        MappedByteBuffer[] current = regions;
+        MappedByteBuffer region =
+                channel.map(
+                        FileChannel.MapMode.READ_WRITE,
+                        HEADER_SIZE + current.length * REGION_SIZE,
+                        REGION_SIZE);
+        MappedByteBuffer[] grown = Arrays.copyOf(current, current.length + 1);
+        grown[current.length] = region;
+        regions = grown;
+    }
+
+    private void writeHeader() throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        header.putInt(MAGIC).putInt(VERSION).putInt(SLOT_SIZE).flip();
+        channel.write(header, 0);
+        channel.force(true);
+    }
+
+    private void checkHeader() throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        channel.read(header, 0);
+        header.flip();
+        if (header.getInt() != MAGIC
+                || header.getInt() != VERSION
+                || header.getInt() != SLOT_SIZE) {
+            throw new IOException("Неизвестный формат файла счетчиков переходов");
+        }
+    }
+
+    private static void closeQuietly(FileChannel channel) {
+        if (channel == null) {
+            return;
+        }
+        try {
+            channel.close();
+        } catch (IOException e) {
+            System.err.println("Ошибка закрытия файла счетчиков: " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,241 @@
+package com.example.urlshortener.core;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.ObjIntConsumer;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * Журнал счетчиков переходов для хранилищ без отображенного в память clicks.dat.
+ *
+ * <p>Переход только отмечает ссылку как измененную в памяти. Накопленные изменения пишутся одной
+ * пачкой раз в интервал или досрочно, когда переходов набралось maxPendingClicks. Запись пачки -
+ * [число записей int][CRC32 int], затем по записи на ссылку: [код 8 байт][счетчик int]. В журнал
+ * попадает значение счетчика после всех накопленных переходов, а не само приращение, поэтому при
+ * загрузке записи сливаются максимумом и повторное проигрывание ничего не портит. При сбое теряются
+ * только переходы за последний интервал.
+ *
+ * <p>Журнал разбит на сегменты clicks-NNNNNNNNN.journal. Хранилище вызывает {@link #rotate}, когда
+ * фиксирует свое состояние на диске, и удаляет запечатанные сегменты после того, как оно записано.
+ */
+final class ClickJournal implements Closeable {
+    private static final String PREFIX = "clicks-";
+    private static final String SUFFIX = ".journal";
+    private static final int BATCH_HEADER_SIZE = 8;
+    private static final int RECORD_SIZE = LinkCodec.SHORT_CODE_BYTES + 4;
+
+    private final Path directory;
+    private final int maxPendingClicks;
+    private final ConcurrentHashMap<String, Link> pending = new ConcurrentHashMap<>();
+    private final AtomicInteger pendingClicks = new AtomicInteger();
+    private final AtomicBoolean flushScheduled = new AtomicBoolean();
+    private final ScheduledExecutorService flusher;
+
+    // Сегменты, оставшиеся от прошлых запусков и от ротаций, ждут удаления хранилищем
+    private final List<Path> sealed;
+    private Path segment;
+    private FileChannel channel;
+    private long nextNumber;
+
+    ClickJournal(Path directory, long flushIntervalMillis, int maxPendingClicks) {
+        this.directory = directory;
+        this.maxPendingClicks = maxPendingClicks;
+        this.sealed = new ArrayList<>(listSegments());
+        this.nextNumber = sealed.isEmpty() ? 1 : segmentNumber(sealed.get(sealed.size() - 1)) + 1;
+        openNextSegment();
+        this.flusher =
+                Executors.newSingleThreadScheduledExecutor(
+                        runnable -> {
+                            Thread thread = new Thread(runnable, "click-journal-flush");
+                            thread.setDaemon(true);
+                            return thread;
+                        });
+        flusher.scheduleWithFixedDelay(
+                this::flushQuietly,
+                flushIntervalMillis,
+                flushIntervalMillis,
+                TimeUnit.MILLISECONDS);
+    }
+
+    /** Проигрывает сегменты прошлых запусков: код и последнее записанное значение счетчика. */
+    int replay(ObjIntConsumer<String> target) {
+        int applied = 0;
+        for (Path file : sealed) {
+            try {
+                ByteBuffer in = ByteBuffer.wrap(Files.readAllBytes(file));
+                while (in.remaining() >= BATCH_HEADER_SIZE) {
+                    int count = in.getInt();
+                    int checksum = in.getInt();
+                    if (count < 0 || in.remaining() < count * RECORD_SIZE) {
+                        break; // Недописанный хвост после сбоя
+                    }
+                    ByteBuffer records = in.slice(in.position(), count * RECORD_SIZE);
+                    CRC32 crc = new CRC32();
+                    crc.update(records.duplicate());
+                    if ((int) crc.getValue() != checksum) {
+                        break;
+                    }
+                    for (int i = 0; i < count; i++) {
+                        target.accept(LinkCodec.readShortCode(records), records.getInt());
+                    }
+                    in.position(in.position() + count * RECORD_SIZE);
+                    applied += count;
+                }
+            } catch (IOException e) {
+                Logger.logError("Ошибка чтения журнала переходов " + file.getFileName(), e);
+            }
+        }
+        return applied;
+    }
+
+    // Вызывается после увеличения счетчика ссылки; сам переход на диск не пишет
+    void record(Link link) {
+        pending.put(link.getShortCode(), link);
+        if (pendingClicks.incrementAndGet() >= maxPendingClicks
+                && flushScheduled.compareAndSet(false, true)) {
+            flusher.execute(
+                    () -> {
+                        flushScheduled.set(false);
+                        flushQuietly();
+                    });
+        }
+    }
+
+    int getPendingLinkCount() {
+        return pending.size();
+    }
+
+    synchronized void flush() throws IOException {
+        if (pending.isEmpty()) {
+            return;
+        }
+        pendingClicks.set(0);
+        List<String> codes = new ArrayList<>(pending.keySet());
+        ByteBuffer records = ByteBuffer.allocate(codes.size() * RECORD_SIZE);
+        int count = 0;
+        for (String code : codes) {
+            Link link = pending.remove(code);
+            if (link == null) {
+                continue;
+            }
+            // Счетчик читается после удаления: переход, пришедший позже, снова отметит ссылку
+            LinkCodec.writeShortCode(code, records);
+            records.putInt(link.getCurrentClicks());
+            count++;
+        }
+        if (count == 0) {
+            return;
+        }
+        records.flip();
+        CRC32 crc = new CRC32();
+        crc.update(records.duplicate());
+        ByteBuffer header = ByteBuffer.allocate(BATCH_HEADER_SIZE);
+        header.putInt(count).putInt((int) crc.getValue()).flip();
+        ByteBuffer[] batch = {header, records};
+        while (records.hasRemaining()) {
+            channel.write(batch);
+        }
+        channel.force(false);
+    }
+
+    private void flushQuietly() {
+        try {
+            flush();
+        } catch (IOException | RuntimeException e) {
+            // Ссылки с несохраненными счетчиками уже сняты с учета, но их значения
+            // попадут в журнал со следующим переходом или в SSTable со сбросом memtable
+            Logger.logError("Ошибка записи журнала переходов", e);
+        }
+    }
+
+    /**
+     * Дописывает накопленное, закрывает текущий сегмент и начинает новый. Возвращает все
+     * запечатанные сегменты: их можно удалить, как только хранилище сохранит состояние, в которое
+     * эти счетчики уже вошли.
+     */
+    synchronized List<Path> rotate() {
+        flushQuietly();
+        closeChannel();
+        sealed.add(segment);
+        List<Path> result = new ArrayList<>(sealed);
+        sealed.clear();
+        openNextSegment();
+        return result;
+    }
+
+    void deleteSegments(List<Path> segments) {
+        for (Path file : segments) {
+            try {
+                Files.deleteIfExists(file);
+            } catch (IOException e) {
+                Logger.logError("Не удалось удалить сегмент журнала переходов", e);
+            }
+        }
+    }
+
+    long getSizeBytes() {
+        return listSegments().stream().mapToLong(file -> file.toFile().length()).sum();
+    }
+
+    @Override
+    public synchronized void close() {
+        flusher.shutdown();
+        flushQuietly();
+        closeChannel();
+    }
+
+    private void openNextSegment() {
+        segment = directory.resolve(String.format("%s%09d%s", PREFIX, nextNumber++, SUFFIX));
+        try {
+            channel =
+                    FileChannel.open(
+                            segment,
+                            StandardOpenOption.CREATE,
+                            StandardOpenOption.WRITE,
+                            StandardOpenOption.APPEND);
+        } catch (IOException e) {
+            throw new RuntimeException("Не удалось открыть журнал переходов", e);
+        }
+    }
+
+    private void closeChannel() {
+        try {
+            channel.close();
+        } catch (IOException e) {
+            Logger.logError("Не удалось закрыть журнал переходов", e);
+        }
+    }
+
+    private List<Path> listSegments() {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(
+                            file -> {
+                                String name = file.getFileName().toString();
+                                return name.startsWith(PREFIX) && name.endsWith(SUFFIX);
+                            })
+                    .sorted(Comparator.comparingLong(ClickJournal::segmentNumber))
+                    .collect(Collectors.toList());
+        } catch (IOException e) {
+            throw new RuntimeException("Не удалось прочитать каталог журнала переходов", e);
+        }
+    }
+
+    private static long segmentNumber(Path file) {
+        String name = file.getFileName().toString();
+        return Long.parseLong(name.substring(PREFIX.length(), name.length() - SUFFIX.length()));
+    }
+}
@@ -0,0 +1,69 @@
+package com.example.urlshortener.core;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * Полосы бюджета переходов для горячей ссылки. Вместо того чтобы все потоки увеличивали один
+ * счетчик, ссылка выдает полосе сразу {@link #CHUNK} переходов из своего лимита, и потоки этой
+ * полосы списывают их из своей ячейки. Общий счетчик ссылки трогается раз в CHUNK переходов.
+ *
+ * <p>Выданный, но не израсходованный бюджет лежит в ячейках, поэтому переходов засчитано ровно
+ * «счетчик ссылки минус сумма ячеек», а лимит не может быть превышен: бюджет выдается только из
+ * него. Когда до лимита остается мало, ссылка снимает полосы ({@link #retire}) и забирает остатки
+ * обратно, а последние переходы считает точным CAS.
+ *
+ * <p>Ячейки разнесены по разным строкам кэша. Снятая ячейка хранит большое отрицательное число:
+ * списать из нее нельзя, а бюджет, положенный в нее запоздавшим потоком, возвращается ссылке.
+ */
+final class ClickStripes {
+    static final int CHUNK = 32;
+    private static final int RETIRED = Integer.MIN_VALUE / 2;
+    // 16 int - 64 байта, одна строка кэша на ячейку
+    private static final int PAD = 16;
+    private static final int COUNT =
+            Math.min(64, Integer.highestOneBit(Runtime.getRuntime().availableProcessors() * 2 - 1));
+
+    private final AtomicIntegerArray cells = new AtomicIntegerArray(COUNT * PAD);
+
+    // Ячейка текущего потока
+    int index() {
+        long id = Thread.currentThread().threadId() * 0x9e3779b97f4a7c15L;
+        return (int) (id >>> 40) & (COUNT - 1);
+    }
+
+    /** Списывает один переход из ячейки; false - ячейка пуста или снята. */
+    boolean tryTake(int index) {
+        int slot = index * PAD;
+        int current;
+        do {
+            current = cells.get(slot);
+            if (current <= 0) {
+                return false;
+            }
+        } while (!cells.compareAndSet(slot, current, current - 1));
+        return true;
+    }
+
+    /** Кладет выданный бюджет в ячейку; false - полосы уже сняты и бюджет нужно вернуть. */
+    boolean deposit(int index, int amount) {
+        return cells.getAndAdd(index * PAD, amount) >= 0;
+    }
+
+    /** Снимает полосы и возвращает сумму неизрасходованного бюджета. */
+    int retire() {
+        int unused = 0;
+        for (int i = 0; i < COUNT; i++) {
+            unused += Math.max(0, cells.getAndSet(i * PAD, RETIRED));
+        }
+        return unused;
+    }
+
+    // Неизрасходованный бюджет; при параллельных переходах - мгновенная оценка
+    int unused() {
+        int unused = 0;
+        for (int i = 0; i < COUNT; i++) {
+            unused += Math.max(0, cells.get(i * PAD));
+        }
+        return unused;
+    }
+}
@@ -0,0 +1,83 @@
+package com.example.urlshortener.core;
+
+/**
+ * Ключевая перестановка чисел [0, 62^8): номер из последовательности превращается в код, который
+ * выглядит случайным, но по построению не совпадает с кодом другого номера.
+ *
+ * <p>Сеть Фейстеля на 48 битах (две половины по 24 бита) - биекция на [0, 2^48). Диапазон кодов
+ * меньше, поэтому результат за его пределами снова пропускается через сеть (cycle walking), пока не
+ * попадет в диапазон; в среднем это 1,3 прохода. Обратная перестановка по коду восстанавливает
+ * номер.
+ */
+final class CodePermutation {
+    private static final int ROUNDS = 6;
+    private static final int HALF_BITS = 24;
+    private static final long HALF_MASK = (1L << HALF_BITS) - 1;
+
+    private final long[] roundKeys = new long[ROUNDS];
+
+    CodePermutation(long key) {
+        long state = key;
+        for (int i = 0; i < ROUNDS; i++) {
+            state += 0x9E3779B97F4A7C15L;
+            roundKeys[i] = mix(state);
+        }
+    }
+
+    long permute(long number) {
+        checkRange(number);
+        long value = encrypt(number);
+        while (value >= Base62.SPACE) {
+            value = encrypt(value);
+        }
+        return value;
+    }
+
+    long inverse(long value) {
+        checkRange(value);
+        long number = decrypt(value);
+        while (number >= Base62.SPACE) {
+            number = decrypt(number);
+        }
+        return number;
+    }
+
+    private long encrypt(long value) {
+        long left = value >>> HALF_BITS;
+        long right = value & HALF_MASK;
+        for (int i = 0; i < ROUNDS; i++) {
+            long next = left ^ round(right, i);
+            left = right;
+            right = next;
+        }
+        return (left << HALF_BITS) | right;
+    }
+
+    private long decrypt(long value) {
+        long left = value >>> HALF_BITS;
+        long right = value & HALF_MASK;
+        for (int i = ROUNDS - 1; i >= 0; i--) {
+            long previous = right ^ round(left, i);
+            right = left;
+            left = previous;
+        }
+        return (left << HALF_BITS) | right;
+    }
+
+    private long round(long half, int index) {
+        return mix(half ^ roundKeys[index]) & HALF_MASK;
+    }
+
+    // Финальное перемешивание splitmix64
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    private static void checkRange(long value) {
+        if (value < 0 || value >= Base62.SPACE) {
+            throw new IllegalArgumentException("Число вне диапазона кодов: " + value);
+        }
+    }
+}
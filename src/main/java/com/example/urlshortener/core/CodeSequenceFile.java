@@ -0,0 +1,160 @@
+package com.example.urlshortener.core;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.SecureRandom;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.CRC32;
+
+/**
+ * Файл последовательности коротких кодов: ключ перестановки и граница уже выданных номеров.
+ *
+ * <p>Номера раздаются арендами: {@link #lease} сдвигает границу на размер блока и возвращает его
+ * начало, а номера внутри блока выдает уже генератор из памяти. После сбоя остаток блока
+ * пропускается, но ни один номер не выдается дважды. Формат: [магическое число][версия][ключ
+ * long][граница long][CRC32], файл заменяется атомарно.
+ *
+ * <p>Файлом могут пользоваться несколько процессов с общим каталогом данных. Каждая аренда
+ * перечитывает границу под блокировкой соседнего файла .lock, поэтому блоки разных процессов не
+ * пересекаются. Блокировка файла действует на весь процесс, так что внутри JVM захват дополнительно
+ * сериализуется монитором на путь.
+ */
+final class CodeSequenceFile implements Closeable {
+    private static final int MAGIC = 0x53455131; // "SEQ1"
+    private static final int VERSION = 1;
+    private static final int SIZE = 4 + 4 + 8 + 8 + 4;
+    private static final ConcurrentHashMap<Path, Object> localLocks = new ConcurrentHashMap<>();
+
+    private final Path file;
+    private final Object localLock;
+    private final FileChannel lockChannel;
+    private final long key;
+
+    private CodeSequenceFile(Path file) throws IOException {
+        this.file = file;
+        this.localLock = localLocks.computeIfAbsent(file.toAbsolutePath().normalize(), p -> p);
+        this.lockChannel =
+                FileChannel.open(
+                        file.resolveSibling(file.getFileName() + ".lock"),
+                        StandardOpenOption.CREATE,
+                        StandardOpenOption.WRITE);
+        synchronized (localLock) {
+            FileLock lock = lockChannel.lock();
+            try {
+                // Файл создает тот процесс, который первым взял блокировку
+                if (!Files.exists(file)) {
+                    write(new SecureRandom().nextLong(), 0);
+                }
+                this.key = read()[0];
+            } finally {
+                lock.release();
+            }
+        }
+    }
+
+    /** Открывает файл или создает новый со случайным ключом. */
+    static CodeSequenceFile open(Path file) {
+        try {
+            return new CodeSequenceFile(file);
+        } catch (IOException e) {
+            throw new RuntimeException("Не удалось открыть " + file.getFileName(), e);
+        }
+    }
+
+    long getKey() {
+        return key;
+    }
+
+    /**
+     * Арендует count номеров: сдвигает границу и дожидается записи на диск. Возвращает первый номер
+     * блока.
+     */
+    long lease(long count) {
+        synchronized (localLock) {
+            try {
+                FileLock lock = lockChannel.lock();
+                try {
+                    long start = read()[1];
+                    write(key, start + count);
+                    return start;
+                } finally {
+                    lock.release();
+                }
+            } catch (IOException e) {
+                throw new RuntimeException("Не удалось арендовать блок номеров", e);
+            }
+        }
+    }
+
+    // Первый номер, который еще не арендован ни одним процессом
+    long getLeasedUpTo() {
+        synchronized (localLock) {
+            try {
+                FileLock lock = lockChannel.lock();
+                try {
+                    return read()[1];
+                } finally {
+                    lock.release();
+                }
+            } catch (IOException e) {
+                throw new RuntimeException("Не удалось прочитать " + file.getFileName(), e);
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        try {
+            lockChannel.close();
+        } catch (IOException e) {
+            Logger.logError("Не удалось закрыть " + file.getFileName(), e);
+        }
+    }
+
+    // Возвращает пару {ключ, граница}
+    private long[] read() throws IOException {
+        ByteBuffer in = ByteBuffer.wrap(Files.readAllBytes(file));
+        if (in.remaining() != SIZE || in.getInt() != MAGIC || in.getInt() != VERSION) {
+            throw new IllegalStateException("Неизвестный формат файла " + file.getFileName());
+        }
+        long storedKey = in.getLong();
+        long leasedUpTo = in.getLong();
+        CRC32 crc = new CRC32();
+        crc.update(in.array(), 0, SIZE - 4);
+        if ((int) crc.getValue() != in.getInt()) {
+            throw new IllegalStateException(
+                    "Контрольная сумма файла " + file.getFileName() + " не совпадает");
+        }
+        return new long[] {storedKey, leasedUpTo};
+    }
+
+    private void write(long storedKey, long leasedUpTo) throws IOException {
+        ByteBuffer out = ByteBuffer.allocate(SIZE);
+        out.putInt(MAGIC).putInt(VERSION).putLong(storedKey).putLong(leasedUpTo);
+        CRC32 crc = new CRC32();
+        crc.update(out.array(), 0, SIZE - 4);
+        out.putInt((int) crc.getValue());
+        Path tempFile = file.resolveSibling(file.getFileName() + ".tmp");
+        try (FileChannel channel =
+                FileChannel.open(
+                        tempFile,
+                        StandardOpenOption.CREATE,
+                        StandardOpenOption.WRITE,
+                        StandardOpenOption.TRUNCATE_EXISTING)) {
+            channel.write(ByteBuffer.wrap(out.array()));
+            channel.force(true);
+        }
+        Files.move(
+                tempFile,
+                file,
+                StandardCopyOption.ATOMIC_MOVE,
+                StandardCopyOption.REPLACE_EXISTING);
+    }
+}
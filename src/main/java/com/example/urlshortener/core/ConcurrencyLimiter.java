@@ -0,0 +1,278 @@
+package com.example.urlshortener.core;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Адаптивный ограничитель одновременных операций сервиса: держит число выполняемых переходов и
+ * созданий ссылок ниже лимита, который подстраивается по измеренной задержке.
+ *
+ * <p>Лимит считается градиентом задержки. За окно копится средняя задержка операции, а медленная
+ * скользящая средняя окон служит базовой. Пока окна не медленнее базовой с запасом TOLERANCE, лимит
+ * растет на корень из себя; когда задержка растет, лимит умножается на отношение базовой к текущей,
+ * но не меньше чем на 0.5. Недогруженный сервис (занято меньше половины лимита) лимит не меняет:
+ * его задержка ничего не говорит о пределе.
+ *
+ * <p>Переходы и создания ждут свободного места в отдельных очередях. Освободившееся место сначала
+ * получает переход, а создания вместе занимают не больше половины лимита, поэтому поток созданий не
+ * вытесняет переходы. Очередь короткая: ее длина не больше лимита, ожидание не дольше
+ * queueTimeoutMillis, после чего операция сразу отклоняется с {@link ServiceOverloadedException}.
+ * Задержка принятых операций остается ограниченной, а лишняя нагрузка получает быстрый отказ.
+ */
+public final class ConcurrencyLimiter {
+    public enum Kind {
+        REDIRECT,
+        CREATE
+    }
+
+    static final int INITIAL_LIMIT = 100;
+    static final int MIN_LIMIT = 32;
+    private static final double TOLERANCE = 1.5;
+    private static final double SMOOTHING = 0.2;
+    // Базовая задержка - скользящая средняя примерно за столько окон
+    private static final int BASELINE_WINDOWS = 100;
+    private static final int WINDOW_MIN_SAMPLES = 20;
+    private static final long DEFAULT_WINDOW_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+    static final int RETRY_AFTER_SECONDS = 1;
+
+    private final int minLimit;
+    private final int maxLimit;
+    private final long queueTimeoutNanos;
+    private final long windowNanos;
+
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicInteger createsInFlight = new AtomicInteger();
+    private volatile int limit;
+
+    // Ожидающие места; счетчики читаются без блокировки, чтобы освобождение будило только нужных
+    private final ReentrantLock queueLock = new ReentrantLock();
+    private final Condition redirectTurn = queueLock.newCondition();
+    private final Condition createTurn = queueLock.newCondition();
+    private final AtomicInteger redirectsWaiting = new AtomicInteger();
+    private final AtomicInteger createsWaiting = new AtomicInteger();
+
+    // Текущее окно измерений; пересчет лимита выполняет один поток
+    private final LongAdder windowLatencySum = new LongAdder();
+    private final AtomicInteger windowSamples = new AtomicInteger();
+    private final AtomicBoolean updating = new AtomicBoolean();
+    private volatile long windowStartNanos = System.nanoTime();
+    private double estimatedLimit;
+    private double baselineNanos;
+
+    private final AtomicLong rejectedRedirects = new AtomicLong();
+    private final AtomicLong rejectedCreates = new AtomicLong();
+
+    public ConcurrencyLimiter(int maxLimit, long queueTimeoutMillis) {
+        this(
+                Math.min(MIN_LIMIT, maxLimit),
+                maxLimit,
+                Math.min(INITIAL_LIMIT, maxLimit),
+                queueTimeoutMillis,
+                DEFAULT_WINDOW_NANOS);
+    }
+
+    ConcurrencyLimiter(
+            int minLimit,
+            int maxLimit,
+            int initialLimit,
+            long queueTimeoutMillis,
+            long windowNanos) {
+        if (minLimit <= 0 || maxLimit < minLimit) {
+            throw new IllegalArgumentException(
+                    "Некорректные границы лимита одновременных операций");
+        }
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.queueTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(queueTimeoutMillis);
+        this.windowNanos = windowNanos;
+        this.limit = Math.max(minLimit, Math.min(maxLimit, initialLimit));
+        this.estimatedLimit = limit;
+    }
+
+    /**
+     * Занимает место для операции и возвращает время начала для {@link #release}. Если места нет и
+     * в очереди не дождаться, бросает {@link ServiceOverloadedException}.
+     */
+    public long acquire(Kind kind) {
+        if (!tryAdmit(kind)) {
+            awaitTurn(kind);
+        }
+        return System.nanoTime();
+    }
+
+    /**
+     * Как {@link #acquire}, но без очереди: если места нет, сразу бросает {@link
+     * ServiceOverloadedException}. Для потоков цикла событий, которым нельзя ждать.
+     */
+    public long tryAcquire(Kind kind) {
+        if (!tryAdmit(kind)) {
+            throw reject(kind);
+        }
+        return System.nanoTime();
+    }
+
+    public void release(Kind kind, long startNanos) {
+        long now = System.nanoTime();
+        if (kind == Kind.CREATE) {
+            createsInFlight.decrementAndGet();
+        }
+        int busy = inFlight.getAndDecrement();
+        if (redirectsWaiting.get() > 0 || createsWaiting.get() > 0) {
+            queueLock.lock();
+            try {
+                if (redirectsWaiting.get() > 0) {
+                    redirectTurn.signal();
+                } else {
+                    createTurn.signal();
+                }
+            } finally {
+                queueLock.unlock();
+            }
+        }
+        record(now - startNanos, busy, now);
+    }
+
+    // Создания не проходят вперед ждущих переходов и занимают не больше половины лимита
+    private boolean tryAdmit(Kind kind) {
+        int current = limit;
+        if (kind == Kind.CREATE) {
+            if (redirectsWaiting.get() > 0) {
+                return false;
+            }
+            int creates = createsInFlight.incrementAndGet();
+            if (creates > Math.max(1, current / 2) || !tryIncrementBelow(current)) {
+                createsInFlight.decrementAndGet();
+                return false;
+            }
+            return true;
+        }
+        return tryIncrementBelow(current);
+    }
+
+    private boolean tryIncrementBelow(int current) {
+        while (true) {
+            int busy = inFlight.get();
+            if (busy >= current) {
+                return false;
+            }
+            if (inFlight.compareAndSet(busy, busy + 1)) {
+                return true;
+            }
+        }
+    }
+
+    private void awaitTurn(Kind kind) {
+        AtomicInteger waiting = kind == Kind.REDIRECT ? redirectsWaiting : createsWaiting;
+        Condition turn = kind == Kind.REDIRECT ? redirectTurn : createTurn;
+        queueLock.lock();
+        try {
+            // Ожидающий отмечается до повторной проверки: освобождение после нее его разбудит
+            if (waiting.incrementAndGet() > limit) {
+                waiting.decrementAndGet();
+                throw reject(kind);
+            }
+            long remaining = queueTimeoutNanos;
+            try {
+                while (!tryAdmit(kind)) {
+                    if (remaining <= 0) {
+                        throw reject(kind);
+                    }
+                    remaining = turn.awaitNanos(remaining);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw reject(kind);
+            } finally {
+                waiting.decrementAndGet();
+            }
+        } finally {
+            queueLock.unlock();
+        }
+    }
+
+    private ServiceOverloadedException reject(Kind kind) {
+        (kind == Kind.REDIRECT ? rejectedRedirects : rejectedCreates).incrementAndGet();
+        return new ServiceOverloadedException(RETRY_AFTER_SECONDS);
+    }
+
+    private void record(long latencyNanos, int busy, long now) {
+        windowLatencySum.add(latencyNanos);
+        if (windowSamples.incrementAndGet() < WINDOW_MIN_SAMPLES
+                || now - windowStartNanos < windowNanos
+                || !updating.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            int samples = windowSamples.getAndSet(0);
+            long sum = windowLatencySum.sumThenReset();
+            windowStartNanos = now;
+            if (samples > 0) {
+                update((double) sum / samples, busy);
+            }
+        } finally {
+            updating.set(false);
+        }
+    }
+
+    // Пересчет лимита по средней задержке окна; busy - сколько операций шло в момент замера
+    void update(double windowLatencyNanos, int busy) {
+        if (baselineNanos == 0) {
+            baselineNanos = windowLatencyNanos;
+        } else {
+            baselineNanos += (windowLatencyNanos - baselineNanos) / BASELINE_WINDOWS;
+        }
+        // Базовая задержка, сильно отставшая от текущей, быстрее догоняет ее вниз
+        if (baselineNanos > 2 * windowLatencyNanos) {
+            baselineNanos *= 0.95;
+        }
+        if (busy < estimatedLimit / 2) {
+            return;
+        }
+        double gradient =
+                Math.max(0.5, Math.min(1.0, TOLERANCE * baselineNanos / windowLatencyNanos));
+        double target = estimatedLimit * gradient + Math.sqrt(estimatedLimit);
+        estimatedLimit = estimatedLimit * (1 - SMOOTHING) + target * SMOOTHING;
+        estimatedLimit = Math.max(minLimit, Math.min(maxLimit, estimatedLimit));
+        limit = (int) estimatedLimit;
+    }
+
+    public Stats getStats() {
+        return new Stats(limit, inFlight.get(), rejectedRedirects.get(), rejectedCreates.get());
+    }
+
+    /** Снимок состояния ограничителя. */
+    public static final class Stats {
+        private final int limit;
+        private final int inFlight;
+        private final long rejectedRedirects;
+        private final long rejectedCreates;
+
+        Stats(int limit, int inFlight, long rejectedRedirects, long rejectedCreates) {
+            this.limit = limit;
+            this.inFlight = inFlight;
+            this.rejectedRedirects = rejectedRedirects;
+            this.rejectedCreates = rejectedCreates;
+        }
+
+        public int getLimit() {
+            return limit;
+        }
+
+        public int getInFlight() {
+            return inFlight;
+        }
+
+        public long getRejectedRedirects() {
+            return rejectedRedirects;
+        }
+
+        public long getRejectedCreates() {
+            return rejectedCreates;
+        }
+    }
+}
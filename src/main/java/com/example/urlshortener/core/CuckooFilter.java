@@ -0,0 +1,232 @@
+package com.example.urlshortener.core;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * Фильтр кукушки по коротким кодам: как и {@link BloomFilter}, отвечает «кода точно нет» или «код
+ * может быть», но поддерживает удаление, поэтому годится для множества живых ссылок, из которого
+ * постоянно уходят просроченные.
+ *
+ * <p>Корзина - одно long с четырьмя 16-битными отпечатками, у каждого кода две корзины: вторая
+ * вычисляется из первой и отпечатка. При 95% заполнения ложных срабатываний около 0,01%. Если
+ * вставке не хватило места даже после перекладываний, последний вытесненный отпечаток остается в
+ * запасной ячейке, а следующая вставка возвращает false: фильтр нужно пересобрать с большей
+ * емкостью по настоящему набору кодов.
+ *
+ * <p>Изменения идут под блокировкой записи. Проверка читает две корзины оптимистично и берет
+ * блокировку чтения, только если в это время шла вставка: посреди перекладываний отпечаток может
+ * ненадолго отсутствовать в обеих своих корзинах.
+ */
+final class CuckooFilter {
+    private static final int SLOTS = 4;
+    private static final int MAX_KICKS = 500;
+    private static final double MAX_LOAD = 0.95;
+
+    private final long[] buckets;
+    private final int mask;
+    private final StampedLock lock = new StampedLock();
+    private int size;
+    // Отпечаток, которому не нашлось места, и его корзина; 0 - запасная ячейка свободна
+    private int victimFingerprint;
+    private int victimBucket;
+    private int kick;
+
+    private CuckooFilter(int bucketCount) {
+        this.buckets = new long[bucketCount];
+        this.mask = bucketCount - 1;
+    }
+
+    static CuckooFilter forKeys(int expectedKeys) {
+        long needed = (long) Math.ceil(Math.max(expectedKeys, 1) / (SLOTS * MAX_LOAD));
+        int bucketCount = (int) Math.min(1 << 30, Math.max(8, Long.highestOneBit(needed - 1) << 1));
+        return new CuckooFilter(bucketCount);
+    }
+
+    /** Добавляет код; false - места нет, фильтр не изменился. */
+    boolean add(String code) {
+        long hash = BloomFilter.hash(code);
+        int fingerprint = fingerprint(hash);
+        int first = (int) hash & mask;
+        long stamp = lock.writeLock();
+        try {
+            if (victimFingerprint != 0) {
+                return false;
+            }
+            if (insert(first, fingerprint) || insert(alternate(first, fingerprint), fingerprint)) {
+                size++;
+                return true;
+            }
+            // Вытесняем случайный отпечаток в его другую корзину, и так до MAX_KICKS раз
+            int bucket = (kick++ & 1) == 0 ? first : alternate(first, fingerprint);
+            for (int i = 0; i < MAX_KICKS; i++) {
+                int slot = (kick++ * 0x9e3779b9 >>> 30) & (SLOTS - 1);
+                int displaced = get(bucket, slot);
+                set(bucket, slot, fingerprint);
+                fingerprint = displaced;
+                bucket = alternate(bucket, fingerprint);
+                if (insert(bucket, fingerprint)) {
+                    size++;
+                    return true;
+                }
+            }
+            victimFingerprint = fingerprint;
+            victimBucket = bucket;
+            size++;
+            return true;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /** Удаляет код. Удалять можно только то, что было добавлено, иначе появятся ложные промахи. */
+    boolean remove(String code) {
+        long hash = BloomFilter.hash(code);
+        int fingerprint = fingerprint(hash);
+        int first = (int) hash & mask;
+        int second = alternate(first, fingerprint);
+        long stamp = lock.writeLock();
+        try {
+            if (victimFingerprint == fingerprint
+                    && (victimBucket == first || victimBucket == second)) {
+                victimFingerprint = 0;
+                size--;
+                return true;
+            }
+            if (delete(first, fingerprint) || delete(second, fingerprint)) {
+                size--;
+                // Освободилось место - запасной отпечаток возвращается в таблицу
+                if (victimFingerprint != 0) {
+                    int victim = victimFingerprint;
+                    int bucket = victimBucket;
+                    if (insert(bucket, victim) || insert(alternate(bucket, victim), victim)) {
+                        victimFingerprint = 0;
+                    }
+                }
+                return true;
+            }
+            return false;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    boolean mightContain(String code) {
+        long hash = BloomFilter.hash(code);
+        int fingerprint = fingerprint(hash);
+        int first = (int) hash & mask;
+        int second = alternate(first, fingerprint);
+        long stamp = lock.tryOptimisticRead();
+        boolean found = contains(first, second, fingerprint);
+        if (lock.validate(stamp)) {
+            return found;
+        }
+        stamp = lock.readLock();
+        try {
+            return contains(first, second, fingerprint);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    int size() {
+        long stamp = lock.readLock();
+        try {
+            return size;
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    int capacity() {
+        return buckets.length * SLOTS;
+    }
+
+    void writeTo(DataOutput out) throws IOException {
+        long stamp = lock.readLock();
+        try {
+            out.writeInt(buckets.length);
+            out.writeInt(size);
+            out.writeInt(victimFingerprint);
+            out.writeInt(victimBucket);
+            for (long bucket : buckets) {
+                out.writeLong(bucket);
+            }
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    static CuckooFilter readFrom(DataInput in) throws IOException {
+        int bucketCount = in.readInt();
+        if (bucketCount < 8 || Integer.bitCount(bucketCount) != 1) {
+            throw new IOException("Некорректное число корзин фильтра: " + bucketCount);
+        }
+        CuckooFilter filter = new CuckooFilter(bucketCount);
+        filter.size = in.readInt();
+        filter.victimFingerprint = in.readInt();
+        filter.victimBucket = in.readInt() & filter.mask;
+        for (int i = 0; i < bucketCount; i++) {
+            filter.buckets[i] = in.readLong();
+        }
+        return filter;
+    }
+
+    private boolean contains(int first, int second, int fingerprint) {
+        return hasFingerprint(buckets[first], fingerprint)
+                || hasFingerprint(buckets[second], fingerprint)
+                || (victimFingerprint == fingerprint
+                        && (victimBucket == first || victimBucket == second));
+    }
+
+    private static boolean hasFingerprint(long bucket, int fingerprint) {
+        for (int slot = 0; slot < SLOTS; slot++) {
+            if ((int) (bucket >>> (slot * 16) & 0xFFFF) == fingerprint) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean insert(int bucket, int fingerprint) {
+        for (int slot = 0; slot < SLOTS; slot++) {
+            if (get(bucket, slot) == 0) {
+                set(bucket, slot, fingerprint);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean delete(int bucket, int fingerprint) {
+        for (int slot = 0; slot < SLOTS; slot++) {
+            if (get(bucket, slot) == fingerprint) {
+                set(bucket, slot, 0);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private int get(int bucket, int slot) {
+        return (int) (buckets[bucket] >>> (slot * 16) & 0xFFFF);
+    }
+
+    private void set(int bucket, int slot, int fingerprint) {
+        int shift = slot * 16;
+        buckets[bucket] = buckets[bucket] & ~(0xFFFFL << shift) | ((long) fingerprint << shift);
+    }
+
+    // Вторая корзина: переход обратим, из любой корзины отпечатка получается другая
+    private int alternate(int bucket, int fingerprint) {
+        return (bucket ^ (fingerprint * 0x5bd1e995)) & mask;
+    }
+
+    // Отпечаток берется из старших бит хеша, номер корзины - из младших; 0 означает пустую ячейку
+    private static int fingerprint(long hash) {
+        int fingerprint = (int) (hash >>> 48);
+        return fingerprint != 0 ? fingerprint : 1;
+    }
+}
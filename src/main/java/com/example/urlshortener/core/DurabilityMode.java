@@ -0,0 +1,7 @@
+package com.example.urlshortener.core;
+
+public enum DurabilityMode {
+    SYNC, // fsync после каждой записи в журнал
+    GROUP, // Записи за короткое окно сбрасываются на диск одним fsync
+    ASYNC // Только кэш страниц ОС, без fsync
+}
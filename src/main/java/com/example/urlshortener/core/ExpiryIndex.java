@@ -0,0 +1,96 @@
+package com.example.urlshortener.core;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.time.Instant;
+import java.util.*;
+
+/**
+ * Индекс ссылок по времени истечения: корзины по секундам, упорядоченные по времени. Очистка
+ * забирает только корзины, срок которых уже наступил, и не трогает остальные ссылки, поэтому ее
+ * можно запускать хоть каждую секунду.
+ *
+ * <p>Корзина текущей секунды может содержать еще живые ссылки: хранилище перепроверяет срок каждой
+ * ссылки и возвращает живые обратно через {@link #add}. Изменения индекса идут под его монитором:
+ * запись в хранилища и так сериализована, а очистка держит его только на время снятия корзин.
+ */
+final class ExpiryIndex {
+    private final TreeMap<Long, Set<String>> buckets = new TreeMap<>();
+    private int size;
+
+    synchronized void add(Link link) {
+        if (buckets.computeIfAbsent(bucketOf(link), second -> new HashSet<>())
+                .add(link.getShortCode())) {
+            size++;
+        }
+    }
+
+    // Ссылка с тем же кодом заменила прежнюю; прежний срок больше не действует
+    synchronized void replace(Link previous, Link current) {
+        if (previous != null && previous != current) {
+            remove(previous);
+        }
+        add(current);
+    }
+
+    synchronized void remove(Link link) {
+        Long bucket = bucketOf(link);
+        Set<String> codes = buckets.get(bucket);
+        if (codes != null && codes.remove(link.getShortCode())) {
+            size--;
+            if (codes.isEmpty()) {
+                buckets.remove(bucket);
+            }
+        }
+    }
+
+    /** Снимает и возвращает коды из всех корзин не позже текущей секунды. */
+    synchronized List<String> pollDue(Instant now) {
+        List<String> due = new ArrayList<>();
+        NavigableMap<Long, Set<String>> head = buckets.headMap(now.getEpochSecond(), true);
+        for (Set<String> codes : head.values()) {
+            due.addAll(codes);
+        }
+        head.clear();
+        size -= due.size();
+        return due;
+    }
+
+    synchronized int size() {
+        return size;
+    }
+
+    synchronized void writeTo(DataOutput out) throws IOException {
+        out.writeInt(buckets.size());
+        for (Map.Entry<Long, Set<String>> bucket : buckets.entrySet()) {
+            out.writeLong(bucket.getKey());
+            out.writeInt(bucket.getValue().size());
+            for (String code : bucket.getValue()) {
+                out.writeUTF(code);
+            }
+        }
+    }
+
+    static ExpiryIndex readFrom(DataInput in) throws IOException {
+        ExpiryIndex index = new ExpiryIndex();
+        int bucketCount = in.readInt();
+        for (int i = 0; i < bucketCount; i++) {
+            long second = in.readLong();
+            int codeCount = in.readInt();
+            Set<String> codes = new HashSet<>();
+            for (int j = 0; j < codeCount; j++) {
+                codes.add(in.readUTF());
+            }
+            if (!codes.isEmpty()) {
+                index.buckets.put(second, codes);
+                index.size += codes.size();
+            }
+        }
+        return index;
+    }
+
+    private static Long bucketOf(Link link) {
+        return link.getExpirationTime().getEpochSecond();
+    }
+}
@@ -1,38 +1,135 @@
 package com.example.urlshortener.core;
 
 import java.io.*;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.time.Instant;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.stream.Collectors;
+import java.util.concurrent.TimeUnit;
 
-public class FileLinkRepository {
-    private final Map<String, Link> links = new ConcurrentHashMap<>();
+public class FileLinkRepository implements LinkRepository {
+    private final Map<String, Link> links;
+    private final OwnerIndex ownerIndex = new OwnerIndex();
+    private final ExpiryIndex expiryIndex = new ExpiryIndex();
     private static final String LINKS_FILE = "links.dat";
+    private static final String CLICKS_FILE = "clicks.dat";
+    // Запас на ссылки из журнала и новые ссылки сверх числа записей в снимке
+    private static final double CAPACITY_HEADROOM = 1.25;
+
+    private final File linksFile;
+    private final File clicksFile;
+    private final LinkLog log;
+    private final LinkCompactor compactor;
+    // null, если clicks.dat занят другим экземпляром: тогда переходы пишутся в журнал
+    private final ClickCounterFile clickCounters;
 
     public FileLinkRepository() {
-        loadLinksFromFile();
-        initializeShortCodes();
+        this(Paths.get(""), new SystemSettings());
+    }
+
+    public FileLinkRepository(Path dataDirectory) {
+        this(dataDirectory, new SystemSettings());
+    }
+
+    public FileLinkRepository(Path dataDirectory, SystemSettings settings) {
+        this(dataDirectory, settings, true);
+    }
+
+    // Шард не трогает общий набор кодов: его заполняет ShardedLinkRepository по всем шардам сразу
+    FileLinkRepository(Path dataDirectory, SystemSettings settings, boolean initializeCodes) {
+        this.linksFile = dataDirectory.resolve(LINKS_FILE).toFile();
+        this.clicksFile = dataDirectory.resolve(CLICKS_FILE).toFile();
+        long startNanos = System.nanoTime();
+
+        // Размер карты берем из заголовка снимка, чтобы не перестраивать ее во время загрузки
+        int expectedLinks =
+                linksFile.exists() ? LinkSnapshot.peekLinkCount(linksFile.toPath()) : -1;
+        this.links =
+                new ConcurrentHashMap<>(Math.max(16, (int) (expectedLinks * CAPACITY_HEADROOM)));
+        boolean legacySnapshot = loadLinksFromFile();
+        long snapshotNanos = System.nanoTime();
+
+        this.log =
+                new LinkLog(
+                        dataDirectory,
+                        settings.getDurabilityMode(),
+                        settings.getGroupCommitMaxDelayMillis(),
+                        settings.getGroupCommitMaxRecords());
+        boolean replayed = replayLog();
+        for (Link link : links.values()) {
+            ownerIndex.add(link);
+            expiryIndex.add(link);
+        }
+        this.clickCounters =
+                ClickCounterFile.open(clicksFile.toPath(), settings.getClickFlushIntervalMillis());
+        if (clickCounters != null) {
+            clickCounters.attachAll(links.values());
+        }
+        long replayNanos = System.nanoTime();
+
+        if (initializeCodes) {
+            initializeShortCodes();
+        }
+        long codesNanos = System.nanoTime();
+        Logger.log(
+                String.format(
+                        "Хранилище ссылок загружено за %d мс: снимок %d мс, журнал %d мс,"
+                                + " коды %d мс, ссылок %d",
+                        toMillis(codesNanos - startNanos),
+                        toMillis(snapshotNanos - startNanos),
+                        toMillis(replayNanos - snapshotNanos),
+                        toMillis(codesNanos - replayNanos),
+                        links.size()));
+        this.compactor =
+                new LinkCompactor(
+                        links,
+                        log,
+                        linksFile.toPath(),
+                        settings.getSnapshotIntervalSeconds(),
+                        settings.getLogSegmentMaxBytes());
+        if (replayed || legacySnapshot) {
+            // Проигранный журнал или снимок старого формата сразу переписываем в фоне
+            compactor.requestCompaction();
+        }
+    }
+
+    private static long toMillis(long nanos) {
+        return TimeUnit.NANOSECONDS.toMillis(nanos);
     }
 
-    private void loadLinksFromFile() {
-        File file = new File(LINKS_FILE);
+    private boolean replayLog() {
+        int applied = log.replay(links);
+        if (applied > 0) {
+            System.out.println(
+                    "Применено записей журнала: " + applied + ", ссылок: " + links.size());
+        }
+        return applied > 0;
+    }
+
+    // Возвращает true, если links.dat записан в старом формате и его нужно переписать
+    private boolean loadLinksFromFile() {
+        File file = linksFile;
         if (!file.exists()) {
             System.out.println("Файл ссылок не найден, будет создан новый.");
-            return;
+            return false;
         }
 
-        try (ObjectInputStream ois = new ObjectInputStream(new FileInputStream(file))) {
-            @SuppressWarnings("unchecked")
-            List<Link> loadedLinks = (List<Link>) ois.readObject();
-
-            for (Link link : loadedLinks) {
-                links.put(link.getShortCode(), link);
+        try {
+            LinkSnapshot.LoadResult result = LinkSnapshot.read(file.toPath(), links);
+            System.out.println(
+                    "Загружено ссылок: "
+                            + links.size()
+                            + " (фрагментов: "
+                            + result.getChunks()
+                            + ")");
+            if (result.isLegacyFormat()) {
+                Logger.log("Файл ссылок в старом формате будет перезаписан в двоичном формате");
             }
-
-            System.out.println("Загружено ссылок: " + links.size());
+            return result.isLegacyFormat();
         } catch (EOFException e) {
             System.err.println("Файл ссылок пуст или поврежден: " + e.getMessage());
+            preserveBrokenFile();
         } catch (ClassNotFoundException e) {
             System.err.println("Ошибка загрузки классов: " + e.getMessage());
             Logger.logError("Ошибка загрузки классов ссылок", e);
@@ -43,6 +140,15 @@ public class FileLinkRepository {
             System.err.println("Неизвестная ошибка загрузки ссылок: " + e.getMessage());
             Logger.logError("Неизвестная ошибка загрузки ссылок", e);
         }
+        return false;
+    }
+
+    // Поврежденный снимок откладываем в сторону, чтобы следующий снимок его не затер
+    private void preserveBrokenFile() {
+        File broken = new File(linksFile.getPath() + ".broken-" + System.currentTimeMillis());
+        if (linksFile.renameTo(broken)) {
+            Logger.log("Поврежденный файл ссылок сохранен как " + broken.getName());
+        }
     }
 
     private void initializeShortCodes() {
@@ -50,25 +156,90 @@ public class FileLinkRepository {
         ShortCodeGenerator.initializeWithExistingCodes(existingCodes);
     }
 
-    private void saveLinksToFile() {
-        try (ObjectOutputStream oos = new ObjectOutputStream(new FileOutputStream(LINKS_FILE))) {
-            oos.writeObject(new ArrayList<>(links.values()));
-            System.out.println("Ссылки успешно сохранены: " + links.size() + " записей");
-        } catch (IOException e) {
-            System.err.println("Критическая ошибка сохранения ссылок: " + e.getMessage());
-            Logger.logError("Критическая ошибка сохранения ссылок", e);
-            throw new RuntimeException("Не удалось сохранить данные ссылок", e);
+    @Override
+    public void save(Link link) {
+        if (link == null) {
+            throw new IllegalArgumentException("Ссылка не может быть null");
+        }
+        if (clickCounters != null) {
+            clickCounters.attach(link);
+        }
+        long sequence;
+        synchronized (log) {
+            Link previous = links.put(link.getShortCode(), link);
+            ownerIndex.replace(previous, link);
+            expiryIndex.replace(previous, link);
+            releaseReplaced(previous, link);
+            sequence = log.appendPut(link);
         }
+        log.awaitDurable(sequence);
+        compactor.onAppend();
     }
 
-    public void save(Link link) {
+    // Все ссылки пачки попадают в журнал подряд и ждут одного общего сброса на диск
+    @Override
+    public void saveAll(Collection<Link> batch) {
+        for (Link link : batch) {
+            if (link == null) {
+                throw new IllegalArgumentException("Ссылка не может быть null");
+            }
+            if (clickCounters != null) {
+                clickCounters.attach(link);
+            }
+        }
+        long sequence = 0;
+        synchronized (log) {
+            for (Link link : batch) {
+                Link previous = links.put(link.getShortCode(), link);
+                ownerIndex.replace(previous, link);
+                expiryIndex.replace(previous, link);
+                releaseReplaced(previous, link);
+                sequence = log.appendPut(link);
+            }
+        }
+        log.awaitDurable(sequence);
+        compactor.onAppend();
+    }
+
+    // Вызывается под блокировкой журнала: новый объект ссылки уже получил свой слот, прежний
+    // слот освобождается, иначе он остался бы в clicks.dat навсегда
+    private void releaseReplaced(Link previous, Link link) {
+        if (clickCounters != null && previous != null && previous != link) {
+            clickCounters.release(previous);
+        }
+    }
+
+    // Переход по ссылке: счетчик уже обновлен в clicks.dat, иначе пишем его значение в журнал
+    @Override
+    public void recordClick(Link link) {
         if (link == null) {
             throw new IllegalArgumentException("Ссылка не может быть null");
         }
-        links.put(link.getShortCode(), link);
-        saveLinksToFile();
+        if (clickCounters != null && link.isAttachedTo(clickCounters)) {
+            return;
+        }
+        long sequence = log.appendClicks(link.getShortCode(), link.getCurrentClicks());
+        log.awaitDurable(sequence);
+        compactor.onAppend();
+    }
+
+    // Синхронно сворачивает журнал в снимок, не дожидаясь фонового потока
+    public void checkpoint() {
+        compactor.compact();
     }
 
+    @Override
+    public void close() {
+        // Остатки полос горячих ссылок возвращаются в счетчики до записи снимка и clicks.dat
+        links.values().forEach(Link::settleClicks);
+        compactor.close();
+        if (clickCounters != null) {
+            clickCounters.close();
+        }
+        log.close();
+    }
+
+    @Override
     public Optional<Link> findByShortCode(String shortCode) {
         if (shortCode == null || shortCode.trim().isEmpty()) {
             return Optional.empty();
@@ -76,42 +247,75 @@ public class FileLinkRepository {
         return Optional.ofNullable(links.get(shortCode));
     }
 
+    @Override
     public List<Link> findByOwnerId(UUID ownerId) {
         if (ownerId == null) {
             return Collections.emptyList();
         }
-        return links.values().stream()
-                .filter(link -> ownerId.equals(link.getOwnerId()))
-                .collect(Collectors.toList());
+        return ownerIndex.find(ownerId, links::get);
+    }
+
+    @Override
+    public LinkPage findPageByOwnerId(
+            UUID ownerId, LinkSort sort, LinkFilter filter, String cursor, int pageSize) {
+        return ownerIndex.page(ownerId, sort, filter, cursor, pageSize, links::get);
     }
 
+    @Override
+    public int countByOwnerId(UUID ownerId) {
+        return ownerIndex.count(ownerId);
+    }
+
+    @Override
     public Set<String> getAllShortCodes() {
         return Set.copyOf(links.keySet());
     }
 
-    public void removeExpiredLinks() {
+    @Override
+    public int count() {
+        return links.size();
+    }
+
+    // Снимок, сегменты журнала и файл счетчиков
+    @Override
+    public long getStorageSizeBytes() {
+        long size = linksFile.length() + clicksFile.length();
+        for (Path segment : log.listSegments()) {
+            size += segment.toFile().length();
+        }
+        return size;
+    }
+
+    // Смотрит только ссылки из наступивших корзин индекса сроков, а не всю карту
+    @Override
+    public List<Link> removeExpiredLinks() {
         Instant now = Instant.now();
-        boolean removed =
-                links.entrySet()
-                        .removeIf(
-                                entry -> {
-                                    Link link = entry.getValue();
-                                    if (link == null) {
-                                        return true; // Удаляем null ссылки
-                                    }
-                                    boolean expired = now.isAfter(link.getExpirationTime());
-                                    if (expired) {
-                                        // Освобождаем код для конкретного пользователя
-                                        ShortCodeGenerator.releaseCodeForUser(
-                                                link.getOwnerId(), entry.getKey());
-                                        Logger.log(
-                                                "Автоматически удалена просроченная ссылка: "
-                                                        + entry.getKey());
-                                    }
-                                    return expired;
-                                });
-        if (removed) {
-            saveLinksToFile();
+        List<Link> removed = new ArrayList<>();
+        long lastSequence = 0;
+        for (String shortCode : expiryIndex.pollDue(now)) {
+            Link link = links.get(shortCode);
+            if (link == null) {
+                continue;
+            }
+            if (!now.isAfter(link.getExpirationTime())) {
+                expiryIndex.add(link); // Истекает позже в эту же секунду
+                continue;
+            }
+            synchronized (log) {
+                if (!links.remove(shortCode, link)) {
+                    continue;
+                }
+                ownerIndex.remove(link);
+                lastSequence = log.appendDelete(shortCode);
+            }
+            removed.add(link);
+            if (clickCounters != null) {
+                clickCounters.release(link);
+            }
+            Logger.log("Автоматически удалена просроченная ссылка: " + shortCode);
         }
+        log.awaitDurable(lastSequence);
+        compactor.onAppend();
+        return removed;
     }
 }
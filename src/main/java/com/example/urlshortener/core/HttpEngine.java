@@ -0,0 +1,6 @@
+package com.example.urlshortener.core;
+
+public enum HttpEngine {
+    VIRTUAL, // com.sun.net.httpserver, запрос на виртуальном потоке
+    NIO // Свой неблокирующий сервер: цикл событий на ядро и готовые ответы ссылок
+}
@@ -2,35 +2,89 @@ package com.example.urlshortener.core;
 
 import java.time.Instant;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 
-public class InMemoryLinkRepository {
-    private final Map<String, Link> links = new HashMap<>();
+public class InMemoryLinkRepository implements LinkRepository {
+    private final Map<String, Link> links = new ConcurrentHashMap<>();
+    private final OwnerIndex ownerIndex = new OwnerIndex();
+    private final ExpiryIndex expiryIndex = new ExpiryIndex();
 
+    // Индексы меняются внутри compute, пока запись ссылки заблокирована
+    @Override
     public void save(Link link) {
-        links.put(link.getShortCode(), link);
+        links.compute(
+                link.getShortCode(),
+                (code, previous) -> {
+                    ownerIndex.replace(previous, link);
+                    expiryIndex.replace(previous, link);
+                    return link;
+                });
     }
 
+    @Override
     public Optional<Link> findByShortCode(String shortCode) {
         return Optional.ofNullable(links.get(shortCode));
     }
 
+    @Override
     public List<Link> findByOwnerId(UUID ownerId) {
-        return links.values().stream()
-                .filter(link -> link.getOwnerId().equals(ownerId))
-                .collect(java.util.stream.Collectors.toList());
+        if (ownerId == null) {
+            return Collections.emptyList();
+        }
+        return ownerIndex.find(ownerId, links::get);
     }
 
-    public void removeExpiredLinks() {
+    @Override
+    public LinkPage findPageByOwnerId(
+            UUID ownerId, LinkSort sort, LinkFilter filter, String cursor, int pageSize) {
+        return ownerIndex.page(ownerId, sort, filter, cursor, pageSize, links::get);
+    }
+
+    @Override
+    public int countByOwnerId(UUID ownerId) {
+        return ownerIndex.count(ownerId);
+    }
+
+    @Override
+    public void recordClick(Link link) {
+        // Счетчик хранится в самой ссылке, сохранять нечего
+    }
+
+    @Override
+    public List<Link> removeExpiredLinks() {
         Instant now = Instant.now();
-        links.entrySet()
-                .removeIf(
-                        entry -> {
-                            boolean expired = now.isAfter(entry.getValue().getExpirationTime());
-                            if (expired) {
-                                // Освобождаем код при удалении ссылки
-                                ShortCodeGenerator.releaseCode(entry.getKey());
-                            }
-                            return expired;
-                        });
+        List<Link> removed = new ArrayList<>();
+        for (String shortCode : expiryIndex.pollDue(now)) {
+            links.computeIfPresent(
+                    shortCode,
+                    (code, link) -> {
+                        if (!now.isAfter(link.getExpirationTime())) {
+                            expiryIndex.add(link);
+                            return link;
+                        }
+                        ownerIndex.remove(link);
+                        removed.add(link);
+                        return null;
+                    });
+        }
+        return removed;
     }
+
+    @Override
+    public Set<String> getAllShortCodes() {
+        return Set.copyOf(links.keySet());
+    }
+
+    @Override
+    public int count() {
+        return links.size();
+    }
+
+    @Override
+    public long getStorageSizeBytes() {
+        return 0;
+    }
+
+    @Override
+    public void close() {}
 }
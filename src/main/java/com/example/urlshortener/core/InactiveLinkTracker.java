@@ -0,0 +1,94 @@
+package com.example.urlshortener.core;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Очередь уведомлений о ссылках, ставших неактивными, отдельно для каждого владельца.
+ *
+ * <p>Переходы в неактивное состояние фиксируются в момент, когда происходят: переход, на котором
+ * счетчик достиг лимита, и удаление просроченной ссылки очисткой. Проверка уведомлений забирает
+ * только новые события пользователя и не перебирает его ссылки. Очередь хранится в памяти и
+ * ограничена MAX_EVENTS_PER_OWNER последними событиями.
+ */
+public class InactiveLinkTracker {
+    private static final int MAX_EVENTS_PER_OWNER = 1000;
+
+    public enum Reason {
+        CLICK_LIMIT_REACHED, // Исчерпан лимит переходов
+        EXPIRED // Истек срок действия
+    }
+
+    public static final class Event {
+        private final String shortCode;
+        private final Reason reason;
+        private final int clicks;
+        private final int clickLimit;
+
+        Event(String shortCode, Reason reason, int clicks, int clickLimit) {
+            this.shortCode = shortCode;
+            this.reason = reason;
+            this.clicks = clicks;
+            this.clickLimit = clickLimit;
+        }
+
+        public String getShortCode() {
+            return shortCode;
+        }
+
+        public Reason getReason() {
+            return reason;
+        }
+
+        public int getClicks() {
+            return clicks;
+        }
+
+        public int getClickLimit() {
+            return clickLimit;
+        }
+    }
+
+    private final Map<UUID, ArrayDeque<Event>> events = new ConcurrentHashMap<>();
+
+    // Ровно один переход увеличивает счетчик до лимита, поэтому событие публикуется один раз
+    public void onClick(Link link, int clicks) {
+        if (clicks == link.getClickLimit()) {
+            publish(link, Reason.CLICK_LIMIT_REACHED, clicks);
+        }
+    }
+
+    // О ссылке, исчерпавшей лимит, владелец уже знает - повторно не сообщаем
+    public void onExpired(Collection<Link> removed) {
+        for (Link link : removed) {
+            int clicks = link.getCurrentClicks();
+            if (clicks < link.getClickLimit()) {
+                publish(link, Reason.EXPIRED, clicks);
+            }
+        }
+    }
+
+    /** Забирает накопленные события владельца; следующий вызов вернет только новые. */
+    public List<Event> drain(UUID ownerId) {
+        ArrayDeque<Event> queue = events.get(ownerId);
+        if (queue == null) {
+            return Collections.emptyList();
+        }
+        synchronized (queue) {
+            List<Event> result = new ArrayList<>(queue);
+            queue.clear();
+            return result;
+        }
+    }
+
+    private void publish(Link link, Reason reason, int clicks) {
+        ArrayDeque<Event> queue =
+                events.computeIfAbsent(link.getOwnerId(), owner -> new ArrayDeque<>());
+        synchronized (queue) {
+            if (queue.size() == MAX_EVENTS_PER_OWNER) {
+                queue.poll(); // Владелец давно не заходил - старые события теряются
+            }
+            queue.add(new Event(link.getShortCode(), reason, clicks, link.getClickLimit()));
+        }
+    }
+}
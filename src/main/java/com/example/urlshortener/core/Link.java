@@ -1,12 +1,28 @@
 package com.example.urlshortener.core;
 
 import java.io.Serializable;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
 import java.time.Instant;
 import java.util.UUID;
 import java.util.concurrent.atomic.AtomicInteger;
 
 public class Link implements Serializable {
     private static final long serialVersionUID = 1L;
+    // Лимит ссылки без ограничения переходов; только такая ссылка может быть постоянной
+    public static final int NO_CLICK_LIMIT = Integer.MAX_VALUE;
+    // Полосы заводятся, только если до лимита еще много переходов
+    private static final int STRIPES_MIN_REMAINING = 4 * ClickStripes.CHUNK;
+    private static final VarHandle STRIPES;
+
+    static {
+        try {
+            STRIPES =
+                    MethodHandles.lookup().findVarHandle(Link.class, "stripes", ClickStripes.class);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
 
     private final String originalUrl;
     private final String shortCode;
@@ -15,20 +31,87 @@ public class Link implements Serializable {
     private final AtomicInteger currentClicks; // Изменено на AtomicInteger
     private final Instant creationTime;
     private final Instant expirationTime;
+    // Переход отвечает 301 с кэшированием до конца срока ссылки, а не 302 без кэширования
+    private final boolean permanent;
+
+    // Слот в clicks.dat; пока ссылка не привязана к файлу, счетчик живет в currentClicks
+    private transient volatile ClickCounterFile counterFile;
+    private transient int counterSlot = -1;
+    // Полосы бюджета при высокой конкуренции за счетчик; в этом режиме currentClicks (или слот
+    // в clicks.dat) хранит выданный бюджет, а засчитанные переходы - это он минус остаток в полосах
+    private transient volatile ClickStripes stripes;
+    // Готовый результат перехода с закодированным ответом; строится при первом переходе
+    private transient volatile RedirectResult redirect;
+
+    public Link(
+            String originalUrl,
+            String shortCode,
+            UUID ownerId,
+            int clickLimit,
+            Instant expirationTime) {
+        this(originalUrl, shortCode, ownerId, clickLimit, expirationTime, false);
+    }
 
     public Link(
             String originalUrl,
             String shortCode,
             UUID ownerId,
             int clickLimit,
+            Instant expirationTime,
+            boolean permanent) {
+        this(
+                originalUrl,
+                shortCode,
+                ownerId,
+                clickLimit,
+                0,
+                Instant.now(),
+                expirationTime,
+                permanent);
+    }
+
+    // Восстановление ссылки из журнала с сохраненным счетчиком и временем создания
+    Link(
+            String originalUrl,
+            String shortCode,
+            UUID ownerId,
+            int clickLimit,
+            int currentClicks,
+            Instant creationTime,
             Instant expirationTime) {
+        this(
+                originalUrl,
+                shortCode,
+                ownerId,
+                clickLimit,
+                currentClicks,
+                creationTime,
+                expirationTime,
+                false);
+    }
+
+    Link(
+            String originalUrl,
+            String shortCode,
+            UUID ownerId,
+            int clickLimit,
+            int currentClicks,
+            Instant creationTime,
+            Instant expirationTime,
+            boolean permanent) {
+        if (permanent && clickLimit != NO_CLICK_LIMIT) {
+            // Закэшированный клиентом 301 не дошел бы до сервиса, и лимит перестал бы работать
+            throw new IllegalArgumentException(
+                    "Постоянной может быть только ссылка без лимита переходов");
+        }
         this.originalUrl = originalUrl;
         this.shortCode = shortCode;
         this.ownerId = ownerId;
         this.clickLimit = clickLimit;
-        this.currentClicks = new AtomicInteger(0); // Инициализация AtomicInteger
-        this.creationTime = Instant.now();
+        this.currentClicks = new AtomicInteger(currentClicks);
+        this.creationTime = creationTime;
         this.expirationTime = expirationTime;
+        this.permanent = permanent;
     }
 
     // Геттеры остаются прежними, кроме getCurrentClicks
@@ -49,7 +132,9 @@ public class Link implements Serializable {
     }
 
     public int getCurrentClicks() {
-        return currentClicks.get();
+        ClickStripes current = stripes;
+        int clicks = counter();
+        return current != null ? clicks - current.unused() : clicks;
     } // Получение значения
 
     public Instant getCreationTime() {
@@ -60,8 +145,145 @@ public class Link implements Serializable {
         return expirationTime;
     }
 
-    // Атомарное увеличение счетчика
-    public void incrementClicks() {
-        this.currentClicks.incrementAndGet();
+    public boolean isPermanent() {
+        return permanent;
+    }
+
+    // Гонка двух первых переходов лишь построит одинаковый результат дважды
+    RedirectResult redirectResult() {
+        RedirectResult result = redirect;
+        if (result == null) {
+            result = RedirectResult.found(this);
+            redirect = result;
+        }
+        return result;
+    }
+
+    // Атомарное увеличение счетчика; возвращает новое значение
+    public int incrementClicks() {
+        ClickCounterFile file = counterFile;
+        if (file != null) {
+            return file.incrementAndGet(counterSlot);
+        }
+        return this.currentClicks.incrementAndGet();
+    }
+
+    /**
+     * Засчитывает переход, если лимит еще не исчерпан: проверка и увеличение - одна операция CAS,
+     * поэтому параллельные переходы не превысят лимит. Возвращает новое значение счетчика или -1,
+     * если лимит уже достигнут.
+     *
+     * <p>Когда за счетчик борются много потоков, а до лимита далеко, переходы списываются из полос
+     * {@link ClickStripes}. Тогда возвращается верхняя оценка счетчика, заведомо меньшая лимита;
+     * переход, исчерпавший лимит, всегда засчитывается точным CAS и возвращает ровно clickLimit.
+     */
+    public int tryConsumeClick() {
+        ClickStripes current = stripes;
+        if (current != null) {
+            int clicks = consumeFromStripes(current);
+            if (clicks > 0) {
+                return clicks;
+            }
+        }
+        while (true) {
+            int clicks = counter();
+            if (clicks >= clickLimit) {
+                return -1;
+            }
+            if (compareAndSetCounter(clicks, clicks + 1)) {
+                return clicks + 1;
+            }
+            if (stripes == null && clickLimit - clicks >= STRIPES_MIN_REMAINING) {
+                // Счетчик оспаривается: дальше переходы идут через полосы
+                STRIPES.compareAndSet(this, null, new ClickStripes());
+                return tryConsumeClick();
+            }
+        }
+    }
+
+    // Переход из полосы потока; 0 - полосы сняты и переход нужно засчитать точно
+    private int consumeFromStripes(ClickStripes current) {
+        int index = current.index();
+        if (current.tryTake(index)) {
+            // Лимит исчерпывает только точный CAS, даже если полосы успели снять
+            return Math.min(counter(), clickLimit - 1);
+        }
+        while (true) {
+            int granted = counter();
+            if (clickLimit - granted < 2 * ClickStripes.CHUNK) {
+                settleClicks();
+                return 0;
+            }
+            if (compareAndSetCounter(granted, granted + ClickStripes.CHUNK)) {
+                // Один переход из выданного бюджета засчитан сразу, остальные - в ячейку
+                if (!current.deposit(index, ClickStripes.CHUNK - 1)) {
+                    addToCounter(-(ClickStripes.CHUNK - 1));
+                }
+                return granted + ClickStripes.CHUNK;
+            }
+        }
+    }
+
+    /**
+     * Снимает полосы и возвращает их остаток в счетчик, после чего он снова точный. Вызывается у
+     * лимита и перед сохранением счетчиков на диск при закрытии хранилища.
+     */
+    void settleClicks() {
+        ClickStripes current = stripes;
+        if (current != null) {
+            addToCounter(-current.retire());
+            STRIPES.compareAndSet(this, current, null);
+        }
+    }
+
+    private int counter() {
+        ClickCounterFile file = counterFile;
+        return file != null ? file.get(counterSlot) : currentClicks.get();
+    }
+
+    private boolean compareAndSetCounter(int expected, int clicks) {
+        ClickCounterFile file = counterFile;
+        return file != null
+                ? file.compareAndSet(counterSlot, expected, clicks)
+                : currentClicks.compareAndSet(expected, clicks);
+    }
+
+    private void addToCounter(int delta) {
+        ClickCounterFile file = counterFile;
+        if (file != null) {
+            file.add(counterSlot, delta);
+        } else {
+            currentClicks.addAndGet(delta);
+        }
+    }
+
+    // Счетчик только растет, поэтому при восстановлении берем максимум
+    void restoreClicks(int clicks) {
+        ClickCounterFile file = counterFile;
+        if (file != null) {
+            file.accumulateMax(counterSlot, clicks);
+        } else {
+            this.currentClicks.accumulateAndGet(clicks, Math::max);
+        }
+    }
+
+    boolean isAttachedTo(ClickCounterFile file) {
+        return counterFile == file;
+    }
+
+    void attachCounter(ClickCounterFile file, int slot) {
+        file.accumulateMax(slot, currentClicks.get());
+        this.counterSlot = slot;
+        this.counterFile = file;
+    }
+
+    // Возвращает освободившийся слот или -1, если ссылка не была привязана к файлу
+    int detachCounter(ClickCounterFile file) {
+        if (counterFile != file) {
+            return -1;
+        }
+        currentClicks.accumulateAndGet(file.get(counterSlot), Math::max);
+        this.counterFile = null;
+        return counterSlot;
     }
 }
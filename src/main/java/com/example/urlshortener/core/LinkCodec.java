@@ -0,0 +1,113 @@
+package com.example.urlshortener.core;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.UUID;
+
+/**
+ * Двоичный формат записи ссылки вместо стандартной сериализации Java.
+ *
+ * <p>Запись версии 2: версия (1 байт), флаги (1 байт, бит 0 - постоянная ссылка), короткий код (8
+ * байт ASCII, дополняется нулями), владелец (два long), лимит и счетчик переходов (по int), время
+ * создания и истечения (epoch millis) и исходный URL в UTF-8 с длиной (2 байта) впереди. Записи
+ * версии 1 отличаются только отсутствием флагов и по-прежнему читаются.
+ */
+public final class LinkCodec {
+    public static final byte VERSION = 2;
+    private static final byte VERSION_WITHOUT_FLAGS = 1;
+    private static final byte FLAG_PERMANENT = 1;
+    public static final int SHORT_CODE_BYTES = 8;
+
+    // Все поля, кроме URL
+    private static final int FIXED_SIZE = 1 + 1 + SHORT_CODE_BYTES + 16 + 4 + 4 + 8 + 8 + 2;
+    private static final int MAX_URL_BYTES = 0xFFFF;
+    public static final int MAX_RECORD_SIZE = FIXED_SIZE + MAX_URL_BYTES;
+
+    private LinkCodec() {}
+
+    public static int encodedSize(Link link) {
+        return FIXED_SIZE + urlBytes(link).length;
+    }
+
+    public static void encode(Link link, ByteBuffer buffer) {
+        byte[] url = urlBytes(link);
+        buffer.put(VERSION);
+        buffer.put(link.isPermanent() ? FLAG_PERMANENT : 0);
+        writeShortCode(link.getShortCode(), buffer);
+        buffer.putLong(link.getOwnerId().getMostSignificantBits());
+        buffer.putLong(link.getOwnerId().getLeastSignificantBits());
+        buffer.putInt(link.getClickLimit());
+        buffer.putInt(link.getCurrentClicks());
+        buffer.putLong(link.getCreationTime().toEpochMilli());
+        buffer.putLong(link.getExpirationTime().toEpochMilli());
+        buffer.putShort((short) url.length);
+        buffer.put(url);
+    }
+
+    public static Link decode(ByteBuffer buffer) {
+        try {
+            byte version = buffer.get();
+            if (version != VERSION && version != VERSION_WITHOUT_FLAGS) {
+                throw new IllegalArgumentException(
+                        "Неподдерживаемая версия записи ссылки: " + version);
+            }
+            byte flags = version == VERSION ? buffer.get() : 0;
+            String shortCode = readShortCode(buffer);
+            UUID ownerId = new UUID(buffer.getLong(), buffer.getLong());
+            int clickLimit = buffer.getInt();
+            int currentClicks = buffer.getInt();
+            Instant creationTime = Instant.ofEpochMilli(buffer.getLong());
+            Instant expirationTime = Instant.ofEpochMilli(buffer.getLong());
+            byte[] url = new byte[Short.toUnsignedInt(buffer.getShort())];
+            buffer.get(url);
+            return new Link(
+                    new String(url, StandardCharsets.UTF_8),
+                    shortCode,
+                    ownerId,
+                    clickLimit,
+                    currentClicks,
+                    creationTime,
+                    expirationTime,
+                    (flags & FLAG_PERMANENT) != 0);
+        } catch (BufferUnderflowException e) {
+            throw new IllegalArgumentException("Запись ссылки обрезана", e);
+        }
+    }
+
+    public static void writeShortCode(String shortCode, ByteBuffer buffer) {
+        if (shortCode.length() > SHORT_CODE_BYTES) {
+            throw new IllegalArgumentException(
+                    "Короткий код длиннее " + SHORT_CODE_BYTES + " символов: " + shortCode);
+        }
+        for (int i = 0; i < SHORT_CODE_BYTES; i++) {
+            char c = i < shortCode.length() ? shortCode.charAt(i) : 0;
+            if (c > 0x7F || (c == 0 && i < shortCode.length())) {
+                throw new IllegalArgumentException(
+                        "Недопустимый символ в коротком коде: " + shortCode);
+            }
+            buffer.put((byte) c);
+        }
+    }
+
+    public static String readShortCode(ByteBuffer buffer) {
+        char[] chars = new char[SHORT_CODE_BYTES];
+        int length = 0;
+        for (int i = 0; i < SHORT_CODE_BYTES; i++) {
+            byte b = buffer.get();
+            if (b != 0) {
+                chars[length++] = (char) b;
+            }
+        }
+        return new String(chars, 0, length);
+    }
+
+    private static byte[] urlBytes(Link link) {
+        byte[] url = link.getOriginalUrl().getBytes(StandardCharsets.UTF_8);
+        if (url.length > MAX_URL_BYTES) {
+            throw new IllegalArgumentException("URL слишком длинный для сохранения");
+        }
+        return url;
+    }
+}
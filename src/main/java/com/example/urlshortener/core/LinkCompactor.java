@@ -0,0 +1,145 @@
+package com.example.urlshortener.core;
+
+import java.io.*;
+import java.nio.file.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Фоновое сворачивание журнала ссылок в снимок.
+ *
+ * <p>Снимок пишется во временный файл и атомарно переименовывается поверх links.dat, после чего
+ * запечатанные сегменты журнала удаляются. Потоки, создающие ссылки и обрабатывающие переходы, на
+ * запись снимка не ждут.
+ */
+public final class LinkCompactor implements Closeable {
+    // Как часто проверять, не пора ли писать снимок
+    private static final long CHECK_INTERVAL_MILLIS = 1000;
+
+    private final Map<String, Link> links;
+    private final LinkLog log;
+    private final Path linksFile;
+    private final long snapshotIntervalMillis;
+    private final long segmentMaxBytes;
+    private final ScheduledExecutorService executor;
+    private final AtomicBoolean compactionRequested = new AtomicBoolean();
+    private volatile long lastSnapshotMillis = System.currentTimeMillis();
+
+    public LinkCompactor(
+            Map<String, Link> links,
+            LinkLog log,
+            Path linksFile,
+            long snapshotIntervalSeconds,
+            long segmentMaxBytes) {
+        this.links = links;
+        this.log = log;
+        this.linksFile = linksFile;
+        this.snapshotIntervalMillis = TimeUnit.SECONDS.toMillis(snapshotIntervalSeconds);
+        this.segmentMaxBytes = segmentMaxBytes;
+        this.executor =
+                Executors.newSingleThreadScheduledExecutor(
+                        runnable -> {
+                            Thread thread = new Thread(runnable, "link-compactor");
+                            thread.setDaemon(true);
+                            return thread;
+                        });
+        executor.scheduleWithFixedDelay(
+                this::compactIfDue,
+                CHECK_INTERVAL_MILLIS,
+                CHECK_INTERVAL_MILLIS,
+                TimeUnit.MILLISECONDS);
+    }
+
+    // Вызывается после каждой дозаписи в журнал; сама ничего не пишет
+    public void onAppend() {
+        if (log.getSegmentSize() >= segmentMaxBytes
+                && compactionRequested.compareAndSet(false, true)) {
+            executor.execute(this::compactIfDue);
+        }
+    }
+
+    // Запланировать запись снимка вне очереди, например после проигрывания журнала при старте
+    public void requestCompaction() {
+        executor.execute(
+                () -> {
+                    try {
+                        compact();
+                    } catch (RuntimeException e) {
+                        System.err.println(
+                                "Ошибка фоновой записи снимка ссылок: " + e.getMessage());
+                    }
+                });
+    }
+
+    private void compactIfDue() {
+        compactionRequested.set(false);
+        boolean segmentFull = log.getSegmentSize() >= segmentMaxBytes;
+        boolean intervalElapsed =
+                System.currentTimeMillis() - lastSnapshotMillis >= snapshotIntervalMillis;
+        if (segmentFull || (intervalElapsed && log.getSegmentSize() > 0)) {
+            try {
+                compact();
+            } catch (RuntimeException e) {
+                // Журнал остается на месте, попробуем при следующей проверке
+                System.err.println("Ошибка фоновой записи снимка ссылок: " + e.getMessage());
+            }
+        }
+    }
+
+    /** Пишет снимок и удаляет учтенные в нем сегменты журнала. */
+    public synchronized void compact() {
+        // Все изменения из запечатанных сегментов к этому моменту уже есть в карте
+        List<Path> sealedSegments = log.rotate();
+        List<Link> snapshot = new ArrayList<>(links.values());
+
+        writeSnapshot(snapshot);
+        log.deleteSegments(sealedSegments);
+        lastSnapshotMillis = System.currentTimeMillis();
+        System.out.println("Снимок ссылок записан: " + snapshot.size() + " записей");
+    }
+
+    private void writeSnapshot(List<Link> snapshot) {
+        Path tempFile;
+        try {
+            tempFile =
+                    Files.createTempFile(
+                            linksFile.toAbsolutePath().getParent(),
+                            linksFile.getFileName().toString(),
+                            ".tmp");
+        } catch (IOException e) {
+            throw new RuntimeException("Не удалось создать временный файл снимка", e);
+        }
+        try {
+            LinkSnapshot.write(tempFile, snapshot);
+        } catch (IOException e) {
+            Logger.logError("Критическая ошибка сохранения ссылок", e);
+            throw new RuntimeException("Не удалось сохранить снимок ссылок", e);
+        }
+
+        try {
+            Files.move(
+                    tempFile,
+                    linksFile,
+                    StandardCopyOption.ATOMIC_MOVE,
+                    StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            Logger.logError("Не удалось заменить файл снимка ссылок", e);
+            throw new RuntimeException("Не удалось сохранить снимок ссылок", e);
+        }
+    }
+
+    @Override
+    public void close() {
+        executor.shutdown();
+        try {
+            executor.awaitTermination(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,19 @@
+package com.example.urlshortener.core;
+
+public enum LinkFilter {
+    ALL, // Все ссылки
+    ACTIVE, // Срок не истек и лимит переходов не исчерпан
+    INACTIVE; // Истекшие или исчерпавшие лимит
+
+    boolean matches(Link link) {
+        switch (this) {
+            case ACTIVE:
+                return LinkValidator.isLinkActive(link);
+            case INACTIVE:
+                return !LinkValidator.isLinkActive(link);
+            case ALL:
+            default:
+                return true;
+        }
+    }
+}
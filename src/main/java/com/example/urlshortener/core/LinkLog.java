@@ -0,0 +1,554 @@
+package com.example.urlshortener.core;
+
+import java.io.*;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.time.Instant;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * Журнал изменений ссылок (write-ahead log).
+ *
+ * <p>Каждое изменение дописывается в конец текущего сегмента небольшой записью: создание ссылки,
+ * новое значение счетчика переходов или удаление. При старте сегменты проигрываются поверх
+ * последнего снимка links.dat. Записи идемпотентны, поэтому повторное проигрывание сегмента, уже
+ * вошедшего в снимок, не портит состояние.
+ *
+ * <p>Когда запись считается сохраненной, определяет {@link DurabilityMode}: после fsync каждой
+ * записи, после общего fsync пачки записей или сразу после передачи в кэш страниц ОС.
+ */
+public final class LinkLog implements Closeable {
+    static final String SEGMENT_PREFIX = "links-";
+    static final String SEGMENT_SUFFIX = ".log";
+
+    private static final byte RECORD_PUT = 4;
+    private static final byte RECORD_CLICKS = 5;
+    private static final byte RECORD_DELETE = 6;
+
+    // Типы записей первой версии журнала, их еще можно встретить в старых сегментах
+    private static final byte LEGACY_RECORD_PUT = 1;
+    private static final byte LEGACY_RECORD_CLICKS = 2;
+    private static final byte LEGACY_RECORD_DELETE = 3;
+
+    // Заголовок записи: длина полезной нагрузки + контрольная сумма
+    private static final int HEADER_SIZE = 8;
+    private static final int MAX_RECORD_SIZE = 1 << 20;
+
+    private final Path directory;
+    // Сегменты, которые этот журнал проиграл или записал сам и может удалить после снимка
+    private final List<Path> ownSegments = new ArrayList<>();
+    private final ByteBuffer recordBuffer =
+            ByteBuffer.allocate(HEADER_SIZE + 1 + LinkCodec.MAX_RECORD_SIZE);
+    private final DurabilityMode durability;
+    private final long groupCommitMaxDelayNanos;
+    private final int groupCommitMaxRecords;
+    private long segmentNumber;
+    private FileChannel channel;
+    private volatile long segmentSize;
+    private boolean closed;
+
+    // Состояние группового коммита: записи, ждущие fsync, и номер последней записи на диске
+    private final ReentrantLock commitLock = new ReentrantLock();
+    private final Object durableMonitor = new Object();
+    private List<ByteBuffer> pending = new ArrayList<>();
+    private long firstPendingNanos;
+    private long appendedSequence;
+    private long durableSequence;
+    private IOException commitFailure;
+    private Thread groupCommitThread;
+
+    public LinkLog(Path directory) {
+        this(directory, DurabilityMode.ASYNC, 0, 1);
+    }
+
+    public LinkLog(
+            Path directory,
+            DurabilityMode durability,
+            long groupCommitMaxDelayMillis,
+            int groupCommitMaxRecords) {
+        this.directory = directory;
+        this.durability = durability;
+        this.groupCommitMaxDelayNanos = TimeUnit.MILLISECONDS.toNanos(groupCommitMaxDelayMillis);
+        this.groupCommitMaxRecords = Math.max(1, groupCommitMaxRecords);
+        List<Path> existingSegments = listSegments();
+        ownSegments.addAll(existingSegments);
+        this.segmentNumber =
+                existingSegments.stream().mapToLong(LinkLog::segmentNumber).max().orElse(0);
+        openNextSegment();
+        if (durability == DurabilityMode.GROUP) {
+            groupCommitThread = new Thread(this::runGroupCommit, "link-log-group-commit");
+            groupCommitThread.setDaemon(true);
+            groupCommitThread.start();
+        }
+    }
+
+    /** Куда применяются записи журнала при проигрывании. */
+    public interface ReplayTarget {
+        void put(Link link);
+
+        void clicks(String shortCode, int clicks);
+
+        void delete(String shortCode);
+    }
+
+    /** Проигрывает все сегменты журнала по порядку поверх уже загруженных ссылок. */
+    public int replay(Map<String, Link> links) {
+        return replay(new MapReplayTarget(links));
+    }
+
+    public synchronized int replay(ReplayTarget links) {
+        int applied = 0;
+        for (Path segment : new ArrayList<>(ownSegments)) {
+            if (segmentNumber(segment) == segmentNumber) {
+                continue; // Текущий сегмент только что создан и пуст
+            }
+            applied += replaySegment(segment, links);
+        }
+        return applied;
+    }
+
+    private int replaySegment(Path segment, ReplayTarget links) {
+        int applied = 0;
+        try (DataInputStream in =
+                new DataInputStream(new BufferedInputStream(Files.newInputStream(segment)))) {
+            while (true) {
+                byte[] payload = readRecord(in);
+                if (payload == null) {
+                    break;
+                }
+                applyRecord(payload, links);
+                applied++;
+            }
+        } catch (EOFException e) {
+            // Оборванная запись в конце сегмента - результат сбоя во время дозаписи
+            System.err.println("Журнал " + segment.getFileName() + " обрезан, хвост пропущен");
+        } catch (IOException e) {
+            System.err.println("Ошибка чтения журнала ссылок: " + e.getMessage());
+            Logger.logError("Ошибка чтения журнала ссылок " + segment.getFileName(), e);
+        }
+        return applied;
+    }
+
+    private byte[] readRecord(DataInputStream in) throws IOException {
+        int length;
+        try {
+            length = in.readInt();
+        } catch (EOFException e) {
+            return null; // Штатный конец сегмента
+        }
+        if (length <= 0 || length > MAX_RECORD_SIZE) {
+            throw new EOFException("Некорректная длина записи: " + length);
+        }
+        int checksum = in.readInt();
+        byte[] payload = new byte[length];
+        in.readFully(payload);
+        if (checksum != checksum(payload)) {
+            throw new EOFException("Контрольная сумма записи не совпадает");
+        }
+        return payload;
+    }
+
+    private void applyRecord(byte[] payload, ReplayTarget links) throws IOException {
+        ByteBuffer in = ByteBuffer.wrap(payload);
+        byte type = in.get();
+        try {
+            switch (type) {
+                case RECORD_PUT:
+                    links.put(LinkCodec.decode(in));
+                    break;
+                case RECORD_CLICKS:
+                    links.clicks(LinkCodec.readShortCode(in), in.getInt());
+                    break;
+                case RECORD_DELETE:
+                    links.delete(LinkCodec.readShortCode(in));
+                    break;
+                case LEGACY_RECORD_PUT:
+                case LEGACY_RECORD_CLICKS:
+                case LEGACY_RECORD_DELETE:
+                    applyLegacyRecord(type, payload, links);
+                    break;
+                default:
+                    throw new EOFException("Неизвестный тип записи: " + type);
+            }
+        } catch (IllegalArgumentException | BufferUnderflowException e) {
+            throw new EOFException("Запись журнала повреждена: " + e.getMessage());
+        }
+    }
+
+    // Проигрывание в обычную карту ссылок, как ее держит FileLinkRepository
+    private static final class MapReplayTarget implements ReplayTarget {
+        private final Map<String, Link> links;
+
+        MapReplayTarget(Map<String, Link> links) {
+            this.links = links;
+        }
+
+        @Override
+        public void put(Link link) {
+            Link existing = links.get(link.getShortCode());
+            if (existing != null) {
+                // Счетчик переходов только растет - не откатываем его старой записью
+                link.restoreClicks(existing.getCurrentClicks());
+            }
+            links.put(link.getShortCode(), link);
+        }
+
+        @Override
+        public void clicks(String shortCode, int clicks) {
+            Link target = links.get(shortCode);
+            if (target != null) {
+                target.restoreClicks(clicks);
+            }
+        }
+
+        @Override
+        public void delete(String shortCode) {
+            links.remove(shortCode);
+        }
+    }
+
+    // Записи, сделанные до перехода на LinkCodec (DataOutputStream)
+    private static void applyLegacyRecord(byte type, byte[] payload, ReplayTarget links)
+            throws IOException {
+        DataInputStream in =
+                new DataInputStream(new ByteArrayInputStream(payload, 1, payload.length));
+        if (type == LEGACY_RECORD_CLICKS) {
+            links.clicks(in.readUTF(), in.readInt());
+        } else if (type == LEGACY_RECORD_DELETE) {
+            links.delete(in.readUTF());
+        } else {
+            String shortCode = in.readUTF();
+            String originalUrl = in.readUTF();
+            UUID ownerId = new UUID(in.readLong(), in.readLong());
+            int clickLimit = in.readInt();
+            int currentClicks = in.readInt();
+            Instant creationTime = Instant.ofEpochMilli(in.readLong());
+            Instant expirationTime = Instant.ofEpochMilli(in.readLong());
+            links.put(
+                    new Link(
+                            originalUrl,
+                            shortCode,
+                            ownerId,
+                            clickLimit,
+                            currentClicks,
+                            creationTime,
+                            expirationTime));
+        }
+    }
+
+    public synchronized long appendPut(Link link) {
+        return append(RECORD_PUT, buffer -> LinkCodec.encode(link, buffer));
+    }
+
+    public synchronized long appendClicks(String shortCode, int clicks) {
+        return append(
+                RECORD_CLICKS,
+                buffer -> {
+                    LinkCodec.writeShortCode(shortCode, buffer);
+                    buffer.putInt(clicks);
+                });
+    }
+
+    public synchronized long appendDelete(String shortCode) {
+        return append(RECORD_DELETE, buffer -> LinkCodec.writeShortCode(shortCode, buffer));
+    }
+
+    private long append(byte type, RecordWriter writer) {
+        ByteBuffer record = encodeRecord(type, writer);
+        int recordSize = record.remaining();
+        long sequence = ++appendedSequence;
+        try {
+            switch (durability) {
+                case GROUP:
+                    // Запись уйдет на диск вместе с соседними, ждать ее будет вызывающий.
+                    // Общий буфер переиспользуется, поэтому в очередь кладем копию
+                    if (pending.isEmpty()) {
+                        firstPendingNanos = System.nanoTime();
+                        notifyAll();
+                    }
+                    pending.add(ByteBuffer.allocate(recordSize).put(record).flip());
+                    if (pending.size() >= groupCommitMaxRecords) {
+                        notifyAll();
+                    }
+                    break;
+                case SYNC:
+                    writeFully(channel, new ByteBuffer[] {record});
+                    channel.force(false);
+                    break;
+                default:
+                    writeFully(channel, new ByteBuffer[] {record});
+            }
+        } catch (IOException e) {
+            Logger.logError("Ошибка записи в журнал ссылок", e);
+            throw new RuntimeException("Не удалось записать изменение ссылки в журнал", e);
+        }
+        segmentSize += recordSize;
+        return sequence;
+    }
+
+    // Кодирует запись в переиспользуемый буфер: заголовок, затем тип и тело записи
+    private ByteBuffer encodeRecord(byte type, RecordWriter writer) {
+        recordBuffer.clear();
+        recordBuffer.position(HEADER_SIZE);
+        recordBuffer.put(type);
+        writer.write(recordBuffer);
+        int payloadLength = recordBuffer.position() - HEADER_SIZE;
+
+        CRC32 crc = new CRC32();
+        crc.update(recordBuffer.array(), HEADER_SIZE, payloadLength);
+        recordBuffer.putInt(0, payloadLength).putInt(4, (int) crc.getValue());
+        return recordBuffer.flip();
+    }
+
+    /**
+     * Ждет, пока запись с указанным номером окажется на диске. В режиме GROUP вызывается вне
+     * блокировки журнала, чтобы другие потоки успели добавить свои записи в ту же пачку.
+     */
+    public void awaitDurable(long sequence) {
+        if (durability != DurabilityMode.GROUP) {
+            return;
+        }
+        synchronized (durableMonitor) {
+            while (durableSequence < sequence) {
+                if (commitFailure != null) {
+                    throw new RuntimeException(
+                            "Не удалось записать изменение ссылки в журнал", commitFailure);
+                }
+                try {
+                    durableMonitor.wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new RuntimeException("Ожидание записи в журнал прервано", e);
+                }
+            }
+        }
+    }
+
+    // Поток группового коммита: копит записи до окна или лимита и пишет их одним fsync
+    private void runGroupCommit() {
+        while (true) {
+            synchronized (this) {
+                while (pending.isEmpty() && !closed) {
+                    waitQuietly(0);
+                }
+                if (pending.isEmpty() && closed) {
+                    return;
+                }
+                long deadline = firstPendingNanos + groupCommitMaxDelayNanos;
+                long remaining;
+                while (pending.size() < groupCommitMaxRecords
+                        && !closed
+                        && (remaining = deadline - System.nanoTime()) > 0) {
+                    waitQuietly(Math.max(1, TimeUnit.NANOSECONDS.toMillis(remaining)));
+                }
+            }
+            try {
+                commitPending();
+            } catch (IOException e) {
+                Logger.logError("Ошибка группового коммита журнала ссылок", e);
+                synchronized (durableMonitor) {
+                    commitFailure = e;
+                    durableMonitor.notifyAll();
+                }
+                return;
+            }
+        }
+    }
+
+    private void commitPending() throws IOException {
+        commitLock.lock();
+        try {
+            List<ByteBuffer> batch;
+            long batchSequence;
+            FileChannel target;
+            synchronized (this) {
+                if (pending.isEmpty()) {
+                    return;
+                }
+                batch = pending;
+                pending = new ArrayList<>();
+                batchSequence = appendedSequence;
+                target = channel;
+            }
+            writeFully(target, batch.toArray(new ByteBuffer[0]));
+            target.force(false);
+            synchronized (durableMonitor) {
+                durableSequence = batchSequence;
+                durableMonitor.notifyAll();
+            }
+        } finally {
+            commitLock.unlock();
+        }
+    }
+
+    private static void writeFully(FileChannel target, ByteBuffer[] buffers) throws IOException {
+        long remaining = 0;
+        for (ByteBuffer buffer : buffers) {
+            remaining += buffer.remaining();
+        }
+        while (remaining > 0) {
+            remaining -= target.write(buffers);
+        }
+    }
+
+    private void waitQuietly(long millis) {
+        try {
+            wait(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /** Размер текущего сегмента в байтах. */
+    public long getSegmentSize() {
+        return segmentSize;
+    }
+
+    /**
+     * Закрывает текущий сегмент и начинает новый. Возвращает все сегменты, запечатанные к этому
+     * моменту: их изменения уже видны в памяти и после записи снимка их можно удалить.
+     */
+    public List<Path> rotate() {
+        commitLock.lock();
+        try {
+            commitPending();
+            synchronized (this) {
+                closeSegment();
+                openNextSegment();
+                List<Path> sealed = new ArrayList<>(ownSegments.subList(0, ownSegments.size() - 1));
+                ownSegments.removeAll(sealed);
+                return sealed;
+            }
+        } catch (IOException e) {
+            Logger.logError("Ошибка записи журнала ссылок перед сменой сегмента", e);
+            throw new RuntimeException("Не удалось сменить сегмент журнала", e);
+        } finally {
+            commitLock.unlock();
+        }
+    }
+
+    public void deleteSegments(List<Path> segments) {
+        for (Path segment : segments) {
+            try {
+                Files.deleteIfExists(segment);
+            } catch (IOException e) {
+                Logger.logError("Не удалось удалить сегмент журнала " + segment.getFileName(), e);
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            notifyAll();
+        }
+        if (groupCommitThread != null) {
+            try {
+                groupCommitThread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        commitLock.lock();
+        try {
+            commitPending();
+        } catch (IOException e) {
+            Logger.logError("Ошибка записи журнала ссылок при закрытии", e);
+        } finally {
+            commitLock.unlock();
+        }
+        synchronized (this) {
+            closeSegment();
+        }
+    }
+
+    private void openNextSegment() {
+        segmentNumber++;
+        Path segment = directory.resolve(segmentName(segmentNumber));
+        ownSegments.add(segment);
+        try {
+            channel =
+                    FileChannel.open(
+                            segment,
+                            StandardOpenOption.CREATE,
+                            StandardOpenOption.WRITE,
+                            StandardOpenOption.APPEND);
+            segmentSize = channel.size();
+        } catch (IOException e) {
+            Logger.logError("Не удалось открыть сегмент журнала " + segment.getFileName(), e);
+            throw new RuntimeException("Не удалось открыть журнал ссылок", e);
+        }
+    }
+
+    private void closeSegment() {
+        if (channel == null) {
+            return;
+        }
+        try {
+            if (durability != DurabilityMode.ASYNC) {
+                channel.force(false);
+            }
+            channel.close();
+        } catch (IOException e) {
+            Logger.logError("Ошибка закрытия сегмента журнала", e);
+        }
+        channel = null;
+    }
+
+    List<Path> listSegments() {
+        return listSegments(directory);
+    }
+
+    static List<Path> listSegments(Path directory) {
+        if (!Files.isDirectory(directory)) {
+            return Collections.emptyList();
+        }
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(LinkLog::isSegment)
+                    .sorted(Comparator.comparingLong(LinkLog::segmentNumber))
+                    .collect(Collectors.toList());
+        } catch (IOException e) {
+            throw new RuntimeException("Не удалось прочитать каталог журнала ссылок", e);
+        }
+    }
+
+    private static boolean isSegment(Path file) {
+        String name = file.getFileName().toString();
+        return name.startsWith(SEGMENT_PREFIX)
+                && name.endsWith(SEGMENT_SUFFIX)
+                && name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length())
+                        .matches("\\d+");
+    }
+
+    private static long segmentNumber(Path file) {
+        String name = file.getFileName().toString();
+        return Long.parseLong(
+                name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+    }
+
+    private static String segmentName(long number) {
+        return String.format("%s%06d%s", SEGMENT_PREFIX, number, SEGMENT_SUFFIX);
+    }
+
+    private static int checksum(byte[] bytes) {
+        CRC32 crc = new CRC32();
+        crc.update(bytes);
+        return (int) crc.getValue();
+    }
+
+    @FunctionalInterface
+    private interface RecordWriter {
+        void write(ByteBuffer buffer);
+    }
+}
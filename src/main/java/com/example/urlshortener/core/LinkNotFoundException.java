@@ -2,6 +2,7 @@ package com.example.urlshortener.core;
 
 public class LinkNotFoundException extends RuntimeException {
     public LinkNotFoundException(String message) {
-        super(message);
+        // Промах - ожидаемый исход, стек вызовов для него не собираем
+        super(message, null, false, false);
     }
 }
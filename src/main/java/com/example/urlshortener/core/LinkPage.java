@@ -0,0 +1,114 @@
+package com.example.urlshortener.core;
+
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * Страница ссылок владельца и курсор следующей страницы.
+ *
+ * <p>Курсор - позиция последней ссылки страницы: ключ сортировки и короткий код. Следующая страница
+ * начинается строго после этой позиции, поэтому новые и удаленные ссылки не сдвигают страницы, как
+ * сдвигали бы смещение. Курсор привязан к сортировке, с которой получен.
+ */
+public class LinkPage {
+    private final List<Link> links;
+    private final String nextCursor;
+
+    public LinkPage(List<Link> links, String nextCursor) {
+        this.links = Collections.unmodifiableList(links);
+        this.nextCursor = nextCursor;
+    }
+
+    public List<Link> getLinks() {
+        return links;
+    }
+
+    // null, если страница последняя
+    public String getNextCursor() {
+        return nextCursor;
+    }
+
+    public boolean hasNext() {
+        return nextCursor != null;
+    }
+
+    /**
+     * Собирает страницу из кандидатов, уже упорядоченных по позиции. Кандидатов должно быть на один
+     * больше размера страницы, если за ней есть еще ссылки.
+     */
+    static LinkPage of(LinkSort sort, List<Link> candidates, int pageSize) {
+        if (candidates.size() <= pageSize) {
+            return new LinkPage(new ArrayList<>(candidates), null);
+        }
+        List<Link> page = new ArrayList<>(candidates.subList(0, pageSize));
+        Link last = page.get(pageSize - 1);
+        return new LinkPage(page, encodeCursor(sort, new Position(sort.keyOf(last), last)));
+    }
+
+    // Слияние страниц, полученных с одним курсором из разных шардов. Шард отдает не больше
+    // pageSize ссылок, поэтому полная общая страница продолжается, если продолжается любая из них
+    static LinkPage merge(LinkSort sort, List<LinkPage> pages, int pageSize) {
+        List<Link> candidates = new ArrayList<>();
+        pages.forEach(page -> candidates.addAll(page.getLinks()));
+        candidates.sort(
+                Comparator.comparing(
+                        (Link link) -> new Position(sort.keyOf(link), link.getShortCode())));
+        if (candidates.size() == pageSize && pages.stream().anyMatch(LinkPage::hasNext)) {
+            Link last = candidates.get(pageSize - 1);
+            return new LinkPage(
+                    candidates, encodeCursor(sort, new Position(sort.keyOf(last), last)));
+        }
+        return of(sort, candidates.subList(0, Math.min(candidates.size(), pageSize + 1)), pageSize);
+    }
+
+    static String encodeCursor(LinkSort sort, Position position) {
+        String raw = sort.name() + ":" + position.key + ":" + position.shortCode;
+        return Base64.getUrlEncoder()
+                .withoutPadding()
+                .encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    static Position decodeCursor(LinkSort sort, String cursor) {
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            String[] parts = raw.split(":", 3);
+            if (parts.length != 3 || !parts[0].equals(sort.name())) {
+                throw new IllegalArgumentException("Курсор получен для другой сортировки");
+            }
+            return new Position(Long.parseLong(parts[1]), parts[2]);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Некорректный курсор страницы: " + cursor, e);
+        }
+    }
+
+    /** Позиция ссылки в выдаче: ключ сортировки, затем код. */
+    static final class Position implements Comparable<Position> {
+        final long key;
+        final String shortCode;
+
+        Position(long key, String shortCode) {
+            this.key = key;
+            this.shortCode = shortCode;
+        }
+
+        Position(long key, Link link) {
+            this(key, link.getShortCode());
+        }
+
+        @Override
+        public int compareTo(Position other) {
+            int cmp = Long.compare(key, other.key);
+            return cmp != 0 ? cmp : shortCode.compareTo(other.shortCode);
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            return other instanceof Position && compareTo((Position) other) == 0;
+        }
+
+        @Override
+        public int hashCode() {
+            return Long.hashCode(key) * 31 + shortCode.hashCode();
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package com.example.urlshortener.core;
+
+import java.io.Closeable;
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * Хранилище ссылок. Реализация выбирается настройкой link.storage.backend, см. {@link #create(Path,
+ * SystemSettings)}.
+ */
+public interface LinkRepository extends Closeable {
+
+    static LinkRepository create(Path dataDirectory, SystemSettings settings) {
+        switch (settings.getStorageBackend()) {
+            case MEMORY:
+                return new InMemoryLinkRepository();
+            case LSM:
+                return new LsmLinkRepository(dataDirectory, settings);
+            case SHARDED:
+                return new ShardedLinkRepository(dataDirectory, settings);
+            case FILE:
+            default:
+                return new FileLinkRepository(dataDirectory, settings);
+        }
+    }
+
+    void save(Link link);
+
+    // Сохранение пачки ссылок; реализации могут делать это дешевле, чем по одной
+    default void saveAll(Collection<Link> links) {
+        for (Link link : links) {
+            save(link);
+        }
+    }
+
+    Optional<Link> findByShortCode(String shortCode);
+
+    List<Link> findByOwnerId(UUID ownerId);
+
+    // Страница ссылок владельца после курсора; null вместо курсора - первая страница
+    LinkPage findPageByOwnerId(
+            UUID ownerId, LinkSort sort, LinkFilter filter, String cursor, int pageSize);
+
+    int countByOwnerId(UUID ownerId);
+
+    // Вызывается после засчитанного перехода, чтобы хранилище могло сохранить новый счетчик
+    void recordClick(Link link);
+
+    // Удаляет просроченные ссылки и возвращает удаленные
+    List<Link> removeExpiredLinks();
+
+    Set<String> getAllShortCodes();
+
+    int count();
+
+    // Сколько байт хранилище занимает на диске
+    long getStorageSizeBytes();
+
+    @Override
+    void close();
+}
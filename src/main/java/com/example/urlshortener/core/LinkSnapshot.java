@@ -0,0 +1,362 @@
+package com.example.urlshortener.core;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.zip.CRC32;
+
+/**
+ * Чтение и запись снимка links.dat.
+ *
+ * <p>Формат версии 2: заголовок (магическое число, версия, число записей, число фрагментов,
+ * смещение оглавления), фрагменты с записями {@link LinkCodec} и оглавление в конце файла. Для
+ * каждого фрагмента в оглавлении хранятся смещение, длина, число записей и CRC32, поэтому фрагменты
+ * читаются и проверяются независимо и параллельно.
+ *
+ * <p>Снимки версии 1 (один сплошной блок записей) и старые файлы, записанные через
+ * ObjectOutputStream, по-прежнему читаются; при следующем снимке они перезаписываются в текущем
+ * формате.
+ */
+public final class LinkSnapshot {
+    private static final int MAGIC = 0x4C4E4B53; // "LNKS"
+    private static final byte FORMAT_VERSION = 2;
+    private static final byte FORMAT_VERSION_SINGLE_BLOCK = 1;
+    private static final int HEADER_SIZE = 4 + 1 + 4 + 4 + 8;
+    private static final int HEADER_SIZE_SINGLE_BLOCK = 4 + 1 + 4;
+    private static final int INDEX_ENTRY_SIZE = 8 + 4 + 4 + 4;
+    private static final int BUFFER_SIZE = 256 * 1024;
+
+    // Фрагмент закрывается по числу записей или по размеру, что наступит раньше
+    private static final int CHUNK_MAX_RECORDS = 64 * 1024;
+    private static final long CHUNK_MAX_BYTES = 8L * 1024 * 1024;
+
+    // Первые байты потока ObjectOutputStream
+    private static final short JAVA_SERIALIZATION_MAGIC = (short) 0xACED;
+
+    // Что разрешено десериализовать из старого links.dat
+    private static final String LEGACY_FILTER =
+            "maxdepth=10;java.util.ArrayList;java.lang.Object;java.util.UUID;java.lang.Number;"
+                    + "java.util.concurrent.atomic.AtomicInteger;java.time.Ser;java.time.Instant;"
+                    + "com.example.urlshortener.core.Link;!*";
+
+    private LinkSnapshot() {}
+
+    /** Результат чтения снимка: сколько ссылок и фрагментов загружено, устарел ли формат. */
+    public static final class LoadResult {
+        private final int loaded;
+        private final int chunks;
+        private final boolean legacyFormat;
+
+        LoadResult(int loaded, int chunks, boolean legacyFormat) {
+            this.loaded = loaded;
+            this.chunks = chunks;
+            this.legacyFormat = legacyFormat;
+        }
+
+        public int getLoaded() {
+            return loaded;
+        }
+
+        public int getChunks() {
+            return chunks;
+        }
+
+        public boolean isLegacyFormat() {
+            return legacyFormat;
+        }
+    }
+
+    public static void write(Path file, Collection<Link> links) throws IOException {
+        try (FileChannel channel =
+                FileChannel.open(
+                        file,
+                        StandardOpenOption.CREATE,
+                        StandardOpenOption.WRITE,
+                        StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+            ChunkWriter chunks = new ChunkWriter(channel, buffer);
+
+            // Карта меняется во время записи, поэтому заголовок с числом записей пишем в конце
+            channel.position(HEADER_SIZE);
+            for (Link link : links) {
+                chunks.append(link);
+            }
+            chunks.finishChunk();
+
+            long indexOffset = channel.position();
+            for (ChunkInfo chunk : chunks.index) {
+                if (buffer.remaining() < INDEX_ENTRY_SIZE) {
+                    writeFully(channel, buffer);
+                }
+                buffer.putLong(chunk.offset)
+                        .putInt(chunk.length)
+                        .putInt(chunk.records)
+                        .putInt(chunk.checksum);
+            }
+            writeFully(channel, buffer);
+
+            buffer.putInt(MAGIC)
+                    .put(FORMAT_VERSION)
+                    .putInt(chunks.totalRecords)
+                    .putInt(chunks.index.size())
+                    .putLong(indexOffset)
+                    .flip();
+            channel.write(buffer, 0);
+            channel.force(true);
+        }
+    }
+
+    // Пишет записи фрагментами и запоминает для каждого смещение, длину и CRC32
+    private static final class ChunkWriter {
+        private final FileChannel channel;
+        private final ByteBuffer buffer;
+        private final List<ChunkInfo> index = new ArrayList<>();
+        private final CRC32 crc = new CRC32();
+        private long chunkOffset;
+        private int chunkRecords;
+        private int totalRecords;
+
+        ChunkWriter(FileChannel channel, ByteBuffer buffer) {
+            this.channel = channel;
+            this.buffer = buffer;
+            this.chunkOffset = HEADER_SIZE;
+        }
+
+        void append(Link link) throws IOException {
+            if (buffer.remaining() < LinkCodec.encodedSize(link)) {
+                flush();
+            }
+            LinkCodec.encode(link, buffer);
+            chunkRecords++;
+            totalRecords++;
+            if (chunkRecords >= CHUNK_MAX_RECORDS
+                    || channel.position() + buffer.position() - chunkOffset >= CHUNK_MAX_BYTES) {
+                finishChunk();
+            }
+        }
+
+        void finishChunk() throws IOException {
+            flush();
+            if (chunkRecords == 0) {
+                return;
+            }
+            long end = channel.position();
+            index.add(
+                    new ChunkInfo(
+                            chunkOffset,
+                            (int) (end - chunkOffset),
+                            chunkRecords,
+                            (int) crc.getValue()));
+            chunkOffset = end;
+            chunkRecords = 0;
+            crc.reset();
+        }
+
+        private void flush() throws IOException {
+            buffer.flip();
+            crc.update(buffer.duplicate());
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            buffer.clear();
+        }
+    }
+
+    private static final class ChunkInfo {
+        final long offset;
+        final int length;
+        final int records;
+        final int checksum;
+
+        ChunkInfo(long offset, int length, int records, int checksum) {
+            this.offset = offset;
+            this.length = length;
+            this.records = records;
+            this.checksum = checksum;
+        }
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    /**
+     * Возвращает число ссылок по заголовку снимка, не читая записи, чтобы заранее задать размер
+     * карты. Для старых форматов и поврежденных файлов возвращает -1.
+     */
+    public static int peekLinkCount(Path file) {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer header = readHeader(channel);
+            if (header.remaining() >= HEADER_SIZE_SINGLE_BLOCK && header.getInt() == MAGIC) {
+                header.get();
+                return header.getInt();
+            }
+        } catch (IOException e) {
+            // Ошибку покажет основное чтение снимка
+        }
+        return -1;
+    }
+
+    public static LoadResult read(Path file, Map<String, Link> links)
+            throws IOException, ClassNotFoundException {
+        return read(file, links, ForkJoinPool.commonPool());
+    }
+
+    /** Читает снимок; фрагменты формата версии 2 декодируются параллельно в пуле {@code pool}. */
+    public static LoadResult read(Path file, Map<String, Link> links, ForkJoinPool pool)
+            throws IOException, ClassNotFoundException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer header = readHeader(channel);
+            if (header.remaining() >= 2 && header.getShort(0) == JAVA_SERIALIZATION_MAGIC) {
+                return new LoadResult(readLegacy(file, links), 1, true);
+            }
+            if (header.remaining() < HEADER_SIZE_SINGLE_BLOCK || header.getInt() != MAGIC) {
+                throw new EOFException("Файл ссылок пуст или имеет неизвестный формат");
+            }
+            byte version = header.get();
+            int count = header.getInt();
+            if (version == FORMAT_VERSION_SINGLE_BLOCK) {
+                channel.position(HEADER_SIZE_SINGLE_BLOCK);
+                return new LoadResult(readSingleBlock(channel, count, links), 1, true);
+            }
+            if (version != FORMAT_VERSION
+                    || header.remaining() < HEADER_SIZE - HEADER_SIZE_SINGLE_BLOCK) {
+                throw new IOException("Неподдерживаемая версия файла ссылок: " + version);
+            }
+            int chunkCount = header.getInt();
+            long indexOffset = header.getLong();
+            List<ChunkInfo> index = readIndex(channel, chunkCount, indexOffset);
+            return new LoadResult(readChunks(channel, index, links, pool), chunkCount, false);
+        }
+    }
+
+    private static ByteBuffer readHeader(FileChannel channel) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        while (header.hasRemaining() && channel.read(header) >= 0) {}
+        return header.flip();
+    }
+
+    private static List<ChunkInfo> readIndex(FileChannel channel, int chunkCount, long indexOffset)
+            throws IOException {
+        if (chunkCount < 0 || indexOffset + (long) chunkCount * INDEX_ENTRY_SIZE > channel.size()) {
+            throw new EOFException("Оглавление файла ссылок повреждено");
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(chunkCount * INDEX_ENTRY_SIZE);
+        while (buffer.hasRemaining()
+                && channel.read(buffer, indexOffset + buffer.position()) > 0) {}
+        buffer.flip();
+        List<ChunkInfo> index = new ArrayList<>(chunkCount);
+        for (int i = 0; i < chunkCount; i++) {
+            index.add(
+                    new ChunkInfo(
+                            buffer.getLong(), buffer.getInt(), buffer.getInt(), buffer.getInt()));
+        }
+        return index;
+    }
+
+    private static int readChunks(
+            FileChannel channel, List<ChunkInfo> index, Map<String, Link> links, ForkJoinPool pool)
+            throws IOException {
+        List<ForkJoinTask<Integer>> tasks = new ArrayList<>(index.size());
+        for (ChunkInfo chunk : index) {
+            tasks.add(pool.submit(() -> readChunk(channel, chunk, links)));
+        }
+        int loaded = 0;
+        for (ForkJoinTask<Integer> task : tasks) {
+            try {
+                loaded += task.join();
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+        }
+        return loaded;
+    }
+
+    private static int readChunk(FileChannel channel, ChunkInfo chunk, Map<String, Link> links) {
+        try {
+            if (chunk.offset + chunk.length > channel.size()) {
+                throw new EOFException("Фрагмент файла ссылок обрезан");
+            }
+            ByteBuffer buffer =
+                    channel.map(FileChannel.MapMode.READ_ONLY, chunk.offset, chunk.length);
+            CRC32 crc = new CRC32();
+            crc.update(buffer.duplicate());
+            if ((int) crc.getValue() != chunk.checksum) {
+                throw new EOFException("Контрольная сумма фрагмента файла ссылок не совпадает");
+            }
+            for (int i = 0; i < chunk.records; i++) {
+                Link link = LinkCodec.decode(buffer);
+                links.put(link.getShortCode(), link);
+            }
+            return chunk.records;
+        } catch (IllegalArgumentException e) {
+            throw new UncheckedIOException(
+                    new EOFException("Файл ссылок поврежден: " + e.getMessage()));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // Формат версии 1: все записи одним блоком и общая CRC32 в конце
+    private static int readSingleBlock(FileChannel channel, int count, Map<String, Link> links)
+            throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        buffer.flip();
+        CRC32 crc = new CRC32();
+        for (int i = 0; i < count; i++) {
+            if (buffer.remaining() < LinkCodec.MAX_RECORD_SIZE) {
+                fill(channel, buffer);
+            }
+            int start = buffer.position();
+            Link link;
+            try {
+                link = LinkCodec.decode(buffer);
+            } catch (IllegalArgumentException e) {
+                throw new EOFException("Файл ссылок поврежден: " + e.getMessage());
+            }
+            ByteBuffer record = buffer.duplicate();
+            record.position(start).limit(buffer.position());
+            crc.update(record);
+            links.put(link.getShortCode(), link);
+        }
+        if (buffer.remaining() < 4) {
+            fill(channel, buffer);
+        }
+        if (buffer.remaining() < 4 || buffer.getInt() != (int) crc.getValue()) {
+            throw new EOFException("Контрольная сумма файла ссылок не совпадает");
+        }
+        return count;
+    }
+
+    // Переносит непрочитанный остаток в начало буфера и дочитывает файл
+    private static void fill(FileChannel channel, ByteBuffer buffer) throws IOException {
+        buffer.compact();
+        while (buffer.hasRemaining() && channel.read(buffer) > 0) {}
+        buffer.flip();
+    }
+
+    private static int readLegacy(Path file, Map<String, Link> links)
+            throws IOException, ClassNotFoundException {
+        try (ObjectInputStream ois =
+                new ObjectInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            ois.setObjectInputFilter(ObjectInputFilter.Config.createFilter(LEGACY_FILTER));
+            @SuppressWarnings("unchecked")
+            List<Link> loadedLinks = (List<Link>) ois.readObject();
+            for (Link link : loadedLinks) {
+                links.put(link.getShortCode(), link);
+            }
+            return loadedLinks.size();
+        }
+    }
+}
@@ -0,0 +1,20 @@
+package com.example.urlshortener.core;
+
+public enum LinkSort {
+    CREATED, // Сначала новые
+    EXPIRES, // Сначала те, что истекают раньше
+    CLICKS; // Сначала самые посещаемые
+
+    // Выдача идет по возрастанию ключа, при равных ключах - по коду
+    long keyOf(Link link) {
+        switch (this) {
+            case CREATED:
+                return -link.getCreationTime().toEpochMilli();
+            case EXPIRES:
+                return link.getExpirationTime().toEpochMilli();
+            case CLICKS:
+            default:
+                return -link.getCurrentClicks();
+        }
+    }
+}
@@ -0,0 +1,207 @@
+package com.example.urlshortener.core;
+
+import java.util.Arrays;
+import java.util.function.LongConsumer;
+
+/**
+ * Множество неотрицательных long с открытой адресацией: значения лежат прямо в массиве long, без
+ * упаковки в объекты, поэтому элемент занимает около 12 байт вместо сотни с лишним у строки в
+ * ConcurrentHashMap.
+ *
+ * <p>Множество разбито на сегменты по старшим битам хеша, у каждого сегмента свой массив и свой
+ * монитор. Потоки, работающие с разными сегментами, друг друга не ждут; таблица сегмента растет
+ * удвоением под его же монитором. Внутри сегмента - линейное пробирование, удаленные ячейки
+ * помечаются и переиспользуются при вставке и при перестройке.
+ */
+final class LongHashSet {
+    private static final long EMPTY = -1;
+    private static final long REMOVED = -2;
+    private static final int MIN_CAPACITY = 8;
+
+    private final Segment[] segments;
+    private final int segmentShift;
+
+    private static final class Segment {
+        long[] slots;
+        int size;
+        // Занятые и помеченные удаленными ячейки: от них зависит длина пробирования
+        int used;
+
+        Segment(int capacity) {
+            slots = newSlots(capacity);
+        }
+    }
+
+    /**
+     * @param expectedSize сколько элементов ожидается, чтобы не перестраивать таблицы при загрузке
+     * @param concurrency сколько потоков обычно меняют множество одновременно
+     */
+    LongHashSet(int expectedSize, int concurrency) {
+        int segmentCount = Integer.highestOneBit(Math.max(1, concurrency) * 2 - 1);
+        segments = new Segment[segmentCount];
+        segmentShift = 64 - Integer.numberOfTrailingZeros(segmentCount);
+        int perSegment = Math.max(1, expectedSize) / segmentCount + 1;
+        for (int i = 0; i < segmentCount; i++) {
+            segments[i] = new Segment(capacityFor(perSegment));
+        }
+    }
+
+    boolean add(long value) {
+        checkValue(value);
+        long hash = mix(value);
+        Segment segment = segmentFor(hash);
+        synchronized (segment) {
+            long[] slots = segment.slots;
+            int mask = slots.length - 1;
+            int free = -1;
+            for (int i = (int) hash & mask; ; i = (i + 1) & mask) {
+                long slot = slots[i];
+                if (slot == value) {
+                    return false;
+                }
+                if (slot == REMOVED && free < 0) {
+                    free = i;
+                } else if (slot == EMPTY) {
+                    if (free < 0) {
+                        free = i;
+                        segment.used++;
+                    }
+                    break;
+                }
+            }
+            slots[free] = value;
+            segment.size++;
+            if (segment.used > slots.length - (slots.length >>> 2)) {
+                rehash(segment);
+            }
+            return true;
+        }
+    }
+
+    boolean remove(long value) {
+        if (value < 0) {
+            return false;
+        }
+        long hash = mix(value);
+        Segment segment = segmentFor(hash);
+        synchronized (segment) {
+            int index = indexOf(segment.slots, value, hash);
+            if (index < 0) {
+                return false;
+            }
+            segment.slots[index] = REMOVED;
+            segment.size--;
+            return true;
+        }
+    }
+
+    boolean contains(long value) {
+        if (value < 0) {
+            return false;
+        }
+        long hash = mix(value);
+        Segment segment = segmentFor(hash);
+        synchronized (segment) {
+            return indexOf(segment.slots, value, hash) >= 0;
+        }
+    }
+
+    int size() {
+        int size = 0;
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                size += segment.size;
+            }
+        }
+        return size;
+    }
+
+    boolean isEmpty() {
+        return size() == 0;
+    }
+
+    void clear() {
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                segment.slots = newSlots(MIN_CAPACITY);
+                segment.size = 0;
+                segment.used = 0;
+            }
+        }
+    }
+
+    // Обходит элементы посегментно; изменения, идущие параллельно, могут быть не видны
+    void forEach(LongConsumer action) {
+        for (Segment segment : segments) {
+            long[] copy;
+            synchronized (segment) {
+                copy = segment.slots.clone();
+            }
+            for (long slot : copy) {
+                if (slot >= 0) {
+                    action.accept(slot);
+                }
+            }
+        }
+    }
+
+    private Segment segmentFor(long hash) {
+        return segments.length == 1 ? segments[0] : segments[(int) (hash >>> segmentShift)];
+    }
+
+    private static int indexOf(long[] slots, long value, long hash) {
+        int mask = slots.length - 1;
+        for (int i = (int) hash & mask; ; i = (i + 1) & mask) {
+            long slot = slots[i];
+            if (slot == value) {
+                return i;
+            }
+            if (slot == EMPTY) {
+                return -1;
+            }
+        }
+    }
+
+    // Удвоение, если таблица заполнена живыми элементами, иначе просто очистка от пометок
+    private static void rehash(Segment segment) {
+        long[] old = segment.slots;
+        int capacity = segment.size * 2 > old.length ? old.length * 2 : old.length;
+        long[] slots = newSlots(capacity);
+        int mask = capacity - 1;
+        for (long value : old) {
+            if (value >= 0) {
+                int i = (int) mix(value) & mask;
+                while (slots[i] != EMPTY) {
+                    i = (i + 1) & mask;
+                }
+                slots[i] = value;
+            }
+        }
+        segment.slots = slots;
+        segment.used = segment.size;
+    }
+
+    private static long[] newSlots(int capacity) {
+        long[] slots = new long[capacity];
+        Arrays.fill(slots, EMPTY);
+        return slots;
+    }
+
+    private static int capacityFor(int expectedSize) {
+        // Ожидаемые элементы занимают не больше двух третей таблицы и не вызывают перестройку
+        int needed = Math.max(MIN_CAPACITY, expectedSize + expectedSize / 2);
+        return Integer.highestOneBit(needed - 1) << 1;
+    }
+
+    private static long mix(long value) {
+        value = (value ^ (value >>> 33)) * 0xff51afd7ed558ccdL;
+        value = (value ^ (value >>> 33)) * 0xc4ceb9fe1a85ec53L;
+        return value ^ (value >>> 33);
+    }
+
+    private static void checkValue(long value) {
+        if (value < 0) {
+            throw new IllegalArgumentException("Значение должно быть неотрицательным: " + value);
+        }
+    }
+}
@@ -0,0 +1,119 @@
+package com.example.urlshortener.core;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * Снимок индексов LSM-хранилища: фильтр живых кодов, индекс владельцев и индекс сроков. Пишется при
+ * закрытии хранилища, чтобы следующее открытие загрузило индексы, а не сливало ради них все
+ * SSTable.
+ *
+ * <p>Снимок годится только для тех файлов, при которых записан: в нем хранится отметка состояния -
+ * MANIFEST и размеры сегментов журнала изменений. При открытии снимок читается и сразу удаляется,
+ * поэтому после падения процесса его нет и индексы строятся обходом SSTable. Формат: магическое
+ * число, версия, отметка, фильтр, индекс владельцев, индекс сроков и CRC32 всего предыдущего.
+ */
+final class LsmIndexSnapshot {
+    static final String FILE = "INDEXES";
+    private static final int MAGIC = 0x4C494458; // "LIDX"
+    private static final byte FORMAT_VERSION = 1;
+    private static final int BUFFER_SIZE = 256 * 1024;
+
+    final CuckooFilter liveCodes;
+    final OwnerIndex ownerIndex;
+    final ExpiryIndex expiryIndex;
+
+    private LsmIndexSnapshot(
+            CuckooFilter liveCodes, OwnerIndex ownerIndex, ExpiryIndex expiryIndex) {
+        this.liveCodes = liveCodes;
+        this.ownerIndex = ownerIndex;
+        this.expiryIndex = expiryIndex;
+    }
+
+    static void write(
+            Path file,
+            String stamp,
+            CuckooFilter liveCodes,
+            OwnerIndex ownerIndex,
+            ExpiryIndex expiryIndex)
+            throws IOException {
+        Path tempFile = file.resolveSibling(file.getFileName() + ".tmp");
+        CheckedOutputStream checked =
+                new CheckedOutputStream(
+                        new BufferedOutputStream(Files.newOutputStream(tempFile), BUFFER_SIZE),
+                        new CRC32());
+        try (DataOutputStream out = new DataOutputStream(checked)) {
+            out.writeInt(MAGIC);
+            out.writeByte(FORMAT_VERSION);
+            byte[] stampBytes = stamp.getBytes(StandardCharsets.UTF_8);
+            out.writeInt(stampBytes.length);
+            out.write(stampBytes);
+            liveCodes.writeTo(out);
+            ownerIndex.writeTo(out);
+            expiryIndex.writeTo(out);
+            out.writeLong(checked.getChecksum().getValue());
+        }
+        Files.move(
+                tempFile,
+                file,
+                StandardCopyOption.ATOMIC_MOVE,
+                StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /**
+     * Читает и удаляет снимок. null - снимка нет, он записан при другом состоянии файлов или
+     * поврежден; тогда индексы нужно строить обходом.
+     */
+    static LsmIndexSnapshot readAndDelete(Path file, String stamp) {
+        if (!Files.exists(file)) {
+            return null;
+        }
+        try {
+            return read(file, stamp);
+        } catch (IOException | RuntimeException e) {
+            Logger.logError(
+                    "Снимок индексов LSM-хранилища поврежден, индексы будут построены заново", e);
+            return null;
+        } finally {
+            try {
+                Files.deleteIfExists(file);
+            } catch (IOException e) {
+                Logger.logError("Не удалось удалить снимок индексов LSM-хранилища", e);
+            }
+        }
+    }
+
+    private static LsmIndexSnapshot read(Path file, String stamp) throws IOException {
+        CheckedInputStream checked =
+                new CheckedInputStream(
+                        new BufferedInputStream(Files.newInputStream(file), BUFFER_SIZE),
+                        new CRC32());
+        try (DataInputStream in = new DataInputStream(checked)) {
+            if (in.readInt() != MAGIC || in.readByte() != FORMAT_VERSION) {
+                throw new IOException("Неизвестный формат снимка индексов");
+            }
+            int stampLength = in.readInt();
+            if (stampLength < 0 || stampLength > Files.size(file)) {
+                throw new IOException("Некорректная длина отметки снимка индексов");
+            }
+            byte[] stampBytes = new byte[stampLength];
+            in.readFully(stampBytes);
+            if (!stamp.equals(new String(stampBytes, StandardCharsets.UTF_8))) {
+                Logger.log("Снимок индексов LSM-хранилища устарел, индексы будут построены заново");
+                return null;
+            }
+            CuckooFilter liveCodes = CuckooFilter.readFrom(in);
+            OwnerIndex ownerIndex = OwnerIndex.readFrom(in);
+            ExpiryIndex expiryIndex = ExpiryIndex.readFrom(in);
+            long checksum = checked.getChecksum().getValue();
+            if (in.readLong() != checksum) {
+                throw new IOException("Не совпала контрольная сумма снимка индексов");
+            }
+            return new LsmIndexSnapshot(liveCodes, ownerIndex, expiryIndex);
+        }
+    }
+}
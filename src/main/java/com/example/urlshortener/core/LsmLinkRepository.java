@@ -0,0 +1,1149 @@
+package com.example.urlshortener.core;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.time.Instant;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Хранилище ссылок на LSM-дереве: в памяти держатся только свежие изменения и горячие ссылки,
+ * остальное лежит на диске в отсортированных неизменяемых файлах {@link SsTable}.
+ *
+ * <p>Изменение пишется в журнал {@link LinkLog} и в memtable. Заполненная memtable сбрасывается в
+ * SSTable уровня 0, после чего ее сегменты журнала удаляются. Фоновое уплотнение сливает уровень 0
+ * в уровень 1, а переполненный уровень - по одному файлу в следующий. Внутри уровней начиная с 1
+ * диапазоны кодов файлов не пересекаются, поэтому чтение проверяет не больше L0_COMPACTION_TRIGGER
+ * файлов уровня 0 и по одному файлу на каждом следующем уровне, а лишние обращения отсекают фильтры
+ * Блума.
+ *
+ * <p>Переходы по ссылкам не пишутся в журнал изменений и не берут блокировку записи: ссылка
+ * отмечается как кликнутая, а счетчики пачками сохраняются в {@link ClickJournal}. При сбросе
+ * кликнутые ссылки ложатся в memtable вместе со своими счетчиками, после чего сегменты журнала
+ * переходов удаляются вместе с сегментами журнала изменений.
+ *
+ * <p>Список живых SSTable с их уровнями хранится в файле MANIFEST, который заменяется атомарно.
+ * Индексы и фильтр живых кодов при закрытии сохраняются в {@link LsmIndexSnapshot}; без снимка
+ * (после падения) они строятся одним обходом SSTable.
+ */
+public class LsmLinkRepository implements LinkRepository {
+    static final String DIRECTORY = "lsm";
+    private static final String MANIFEST = "MANIFEST";
+    private static final String TABLE_PREFIX = "table-";
+    private static final String TABLE_SUFFIX = ".sst";
+    private static final int MAX_LEVELS = 7;
+    private static final int L0_COMPACTION_TRIGGER = 4;
+    // Каждый следующий уровень в столько раз больше предыдущего
+    private static final int LEVEL_SIZE_MULTIPLIER = 10;
+    // Размер уровня 1 в файлах максимального размера
+    private static final int LEVEL1_MAX_TABLES = 10;
+    private static final int MIN_FILTER_KEYS = 1024;
+
+    private final Path directory;
+    private final LinkLog log;
+    private final ClickJournal clickJournal;
+    private final long memtableMaxBytes;
+    private final long tableMaxBytes;
+    private final HotLinkCache cache;
+    private final OwnerIndex ownerIndex;
+    private final ExpiryIndex expiryIndex;
+    // Фильтр по живым кодам: промах по несуществующему коду не доходит до memtable и SSTable.
+    // Меняется под writeLock. При переполнении пересобирается фоновым потоком с удвоенной
+    // емкостью; пока идет пересборка, фильтра нет (null) и каждый код ищется в таблицах
+    private volatile CuckooFilter liveCodes;
+    // Коды, добавленные (true) и удаленные (false) во время пересборки фильтра; под writeLock
+    private Map<String, Boolean> liveCodeChanges;
+
+    // Запись в memtable и журнал идет под этой блокировкой, чтобы смена memtable и сегмента
+    // журнала при сбросе была атомарной для пишущих потоков
+    private final Object writeLock = new Object();
+    private volatile ConcurrentSkipListMap<String, Link> memtable = new ConcurrentSkipListMap<>();
+    // Memtable, которая сейчас пишется в SSTable; читается, пока файл не появится в levels
+    private volatile ConcurrentSkipListMap<String, Link> flushing;
+    private final AtomicLong memtableBytes = new AtomicLong();
+    // Ссылки, по которым были переходы с прошлого сброса; попадают в memtable при сбросе
+    private final ConcurrentHashMap<String, Link> clicked = new ConcurrentHashMap<>();
+    private final AtomicLong clickedBytes = new AtomicLong();
+
+    // Уровень 0 - от новых файлов к старым, остальные уровни - по возрастанию первого кода.
+    // Меняется только фоновым потоком, читатели берут неизменяемую копию
+    private volatile List<List<SsTable>> levels;
+    private final String[] compactPointers = new String[MAX_LEVELS];
+    private long nextTableNumber;
+
+    private final ExecutorService background;
+    private final AtomicBoolean flushScheduled = new AtomicBoolean();
+
+    public LsmLinkRepository(Path dataDirectory, SystemSettings settings) {
+        long startNanos = System.nanoTime();
+        this.directory = dataDirectory.resolve(DIRECTORY);
+        this.memtableMaxBytes = settings.getLsmMemtableMaxBytes();
+        this.tableMaxBytes = settings.getLsmTableMaxBytes();
+        this.cache = new HotLinkCache(settings.getLsmCacheMaxLinks());
+        try {
+            Files.createDirectories(directory);
+        } catch (IOException e) {
+            throw new RuntimeException("Не удалось создать каталог LSM-хранилища", e);
+        }
+        this.levels = loadManifest();
+        deleteOrphanTables();
+        // Снимок сверяется с файлами до того, как журнал откроет новый сегмент
+        LsmIndexSnapshot snapshot =
+                LsmIndexSnapshot.readAndDelete(
+                        directory.resolve(LsmIndexSnapshot.FILE), storeStamp());
+
+        this.log =
+                new LinkLog(
+                        directory,
+                        settings.getDurabilityMode(),
+                        settings.getGroupCommitMaxDelayMillis(),
+                        settings.getGroupCommitMaxRecords());
+        int applied = log.replay(new MemtableReplayTarget());
+        this.clickJournal =
+                new ClickJournal(
+                        directory,
+                        settings.getClickFlushIntervalMillis(),
+                        settings.getClickFlushMaxPending());
+        applied += clickJournal.replay(this::restoreClicks);
+
+        if (snapshot != null) {
+            // Журнал уже отражен в снимке: он записан после последнего изменения
+            this.ownerIndex = snapshot.ownerIndex;
+            this.expiryIndex = snapshot.expiryIndex;
+            this.liveCodes = snapshot.liveCodes;
+            ownerIndex.forEachCode(ShortCodeGenerator::excludeExistingCode);
+        } else {
+            this.ownerIndex = new OwnerIndex();
+            this.expiryIndex = new ExpiryIndex();
+            // Емкость по числу записей с запасом: версии одного кода на разных уровнях
+            // и надгробия только завышают оценку
+            long records = memtable.size();
+            for (List<SsTable> level : levels) {
+                for (SsTable table : level) {
+                    records += table.getRecordCount();
+                }
+            }
+            int capacity = (int) Math.min(1 << 30, Math.max(MIN_FILTER_KEYS, records * 2));
+            CuckooFilter filter = CuckooFilter.forKeys(capacity);
+            boolean[] overflow = new boolean[1];
+            forEachLive(
+                    link -> {
+                        ownerIndex.add(link);
+                        expiryIndex.add(link);
+                        ShortCodeGenerator.excludeExistingCode(link.getShortCode());
+                        overflow[0] |= !filter.add(link.getShortCode());
+                    });
+            CuckooFilter built = filter;
+            while (overflow[0]) {
+                capacity *= 2;
+                built = buildLiveCodes(capacity);
+                overflow[0] = built == null;
+            }
+            this.liveCodes = built;
+        }
+
+        this.background =
+                Executors.newSingleThreadExecutor(
+                        runnable -> {
+                            Thread thread = new Thread(runnable, "lsm-compactor");
+                            thread.setDaemon(true);
+                            return thread;
+                        });
+        Logger.log(
+                String.format(
+                        "LSM-хранилище открыто за %d мс: таблиц %d, записей журнала %d, ссылок %d,"
+                                + " индексы %s",
+                        TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos),
+                        levels.stream().mapToInt(List::size).sum(),
+                        applied,
+                        expiryIndex.size(),
+                        snapshot != null ? "из снимка" : "построены обходом"));
+        // Проигранный журнал сразу сбрасываем в SSTable, чтобы не проигрывать его снова
+        scheduleFlush();
+    }
+
+    @Override
+    public void save(Link link) {
+        if (link == null) {
+            throw new IllegalArgumentException("Ссылка не может быть null");
+        }
+        long sequence;
+        synchronized (writeLock) {
+            updateIndexes(link);
+            putToMemtable(link);
+            sequence = log.appendPut(link);
+        }
+        cache.invalidate(link.getShortCode());
+        log.awaitDurable(sequence);
+        maybeScheduleFlush();
+    }
+
+    @Override
+    public void saveAll(Collection<Link> batch) {
+        long sequence = 0;
+        synchronized (writeLock) {
+            for (Link link : batch) {
+                if (link == null) {
+                    throw new IllegalArgumentException("Ссылка не может быть null");
+                }
+                updateIndexes(link);
+                putToMemtable(link);
+                sequence = log.appendPut(link);
+            }
+        }
+        for (Link link : batch) {
+            cache.invalidate(link.getShortCode());
+        }
+        log.awaitDurable(sequence);
+        maybeScheduleFlush();
+    }
+
+    // Без блокировки записи: ссылка отмечается как кликнутая и уйдет на диск со следующим сбросом
+    // memtable, а до него счетчик сохранит журнал переходов
+    @Override
+    public void recordClick(Link link) {
+        if (link == null) {
+            throw new IllegalArgumentException("Ссылка не может быть null");
+        }
+        String shortCode = link.getShortCode();
+        if (!mightBeLive(shortCode)) {
+            return; // Ссылку уже удалили, не воскрешаем ее
+        }
+        Link current = lookup(shortCode);
+        if (current == null || current == SsTable.TOMBSTONE) {
+            return; // Надгробие могло уже уйти из memtable в SSTable
+        }
+        // Сначала отметка, потом журнал: см. flushMemtable
+        if (clicked.put(shortCode, link) == null) {
+            clickedBytes.addAndGet(LinkCodec.encodedSize(link));
+        }
+        clickJournal.record(link);
+        maybeScheduleFlush();
+    }
+
+    // Счетчик из журнала переходов ложится поверх ссылки из журнала изменений и SSTable
+    private void restoreClicks(String shortCode, int clicks) {
+        Link existing = lookup(shortCode);
+        if (existing != null && existing != SsTable.TOMBSTONE) {
+            existing.restoreClicks(clicks);
+            putToMemtable(existing);
+        }
+    }
+
+    // Вызывается под writeLock до записи в memtable: прежняя версия ссылки снимается с индексов.
+    // Для нового кода поиск обычно отсекается фильтрами Блума
+    private void updateIndexes(Link link) {
+        String shortCode = link.getShortCode();
+        Link previous = mightBeLive(shortCode) ? lookup(shortCode) : null;
+        if (previous == SsTable.TOMBSTONE) {
+            previous = null;
+        }
+        if (previous == null) {
+            addLiveCode(shortCode);
+        }
+        ownerIndex.replace(previous, link);
+        expiryIndex.replace(previous, link);
+    }
+
+    private boolean mightBeLive(String shortCode) {
+        CuckooFilter filter = liveCodes;
+        return filter == null || filter.mightContain(shortCode);
+    }
+
+    // Вызывается под writeLock
+    private void addLiveCode(String shortCode) {
+        if (liveCodeChanges != null) {
+            liveCodeChanges.put(shortCode, true);
+        } else if (liveCodes != null && !liveCodes.add(shortCode)) {
+            int capacity = liveCodes.capacity() * 2;
+            liveCodeChanges = new HashMap<>();
+            liveCodeChanges.put(shortCode, true);
+            liveCodes = null;
+            background.execute(() -> rebuildLiveCodes(capacity));
+        }
+    }
+
+    // Вызывается под writeLock
+    private void removeLiveCode(String shortCode) {
+        if (liveCodeChanges != null) {
+            liveCodeChanges.put(shortCode, false);
+        } else if (liveCodes != null) {
+            liveCodes.remove(shortCode);
+        }
+    }
+
+    /**
+     * Пересборка фильтра в фоновом потоке, без блокировки записи. Сброс и уплотнение идут в этом же
+     * потоке, поэтому набор SSTable во время обхода не меняется, а изменения memtable, которые
+     * обход мог пропустить, копятся в liveCodeChanges. Удаленные коды из нового фильтра не
+     * убираются: удалять из фильтра кукушки можно только добавленное, а лишний код дает лишь ложное
+     * срабатывание.
+     */
+    private void rebuildLiveCodes(int capacity) {
+        long startNanos = System.nanoTime();
+        CuckooFilter rebuilt;
+        try {
+            rebuilt = buildLiveCodes(capacity);
+        } catch (RuntimeException e) {
+            // Без фильтра хранилище работает, только каждый промах доходит до таблиц
+            synchronized (writeLock) {
+                liveCodeChanges = null;
+            }
+            Logger.logError("Не удалось пересобрать фильтр живых кодов", e);
+            return;
+        }
+        synchronized (writeLock) {
+            if (rebuilt != null) {
+                for (Map.Entry<String, Boolean> change : liveCodeChanges.entrySet()) {
+                    if (change.getValue() && !rebuilt.add(change.getKey())) {
+                        rebuilt = null;
+                        break;
+                    }
+                }
+            }
+            if (rebuilt == null) {
+                background.execute(() -> rebuildLiveCodes(capacity * 2));
+                return;
+            }
+            liveCodes = rebuilt;
+            liveCodeChanges = null;
+        }
+        Logger.log(
+                String.format(
+                        "Фильтр живых кодов пересобран за %d мс: кодов %d, емкость %d",
+                        TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos),
+                        rebuilt.size(),
+                        rebuilt.capacity()));
+    }
+
+    // Фильтр по всем живым кодам; null - емкости не хватило
+    private CuckooFilter buildLiveCodes(int capacity) {
+        CuckooFilter filter = CuckooFilter.forKeys(capacity);
+        boolean[] overflow = new boolean[1];
+        forEachLive(link -> overflow[0] |= !filter.add(link.getShortCode()));
+        return overflow[0] ? null : filter;
+    }
+
+    private void putToMemtable(Link link) {
+        if (memtable.put(link.getShortCode(), link) != link) {
+            memtableBytes.addAndGet(LinkCodec.encodedSize(link));
+        }
+    }
+
+    @Override
+    public Optional<Link> findByShortCode(String shortCode) {
+        if (shortCode == null || shortCode.trim().isEmpty() || !mightBeLive(shortCode)) {
+            return Optional.empty();
+        }
+        Link link = lookup(shortCode);
+        return link == null || link == SsTable.TOMBSTONE ? Optional.empty() : Optional.of(link);
+    }
+
+    // Memtable, затем сбрасываемая memtable, кликнутые ссылки, кэш горячих ссылок и SSTable от
+    // новых к старым. Прочитанная из SSTable ссылка возвращается только через кэш, чтобы
+    // параллельные читатели получили один объект; если набор SSTable сменился во время чтения,
+    // поиск повторяется
+    private Link lookup(String shortCode) {
+        while (true) {
+            List<List<SsTable>> version = levels;
+            Link link = memtable.get(shortCode);
+            if (link != null) {
+                return link;
+            }
+            Map<String, Link> frozen = flushing;
+            if (frozen != null && (link = frozen.get(shortCode)) != null) {
+                return link;
+            }
+            link = clicked.get(shortCode);
+            if (link != null) {
+                return link;
+            }
+            link = cache.get(shortCode);
+            if (link != null) {
+                return link;
+            }
+            link = readTables(version, shortCode);
+            if (link == null || link == SsTable.TOMBSTONE) {
+                return link;
+            }
+            link = cache.putIfCurrent(shortCode, link, () -> levels == version);
+            if (link != null) {
+                return link;
+            }
+        }
+    }
+
+    private static Link readTables(List<List<SsTable>> version, String shortCode) {
+        for (SsTable table : version.get(0)) {
+            Link link = table.get(shortCode);
+            if (link != null) {
+                return link;
+            }
+        }
+        for (int level = 1; level < version.size(); level++) {
+            SsTable table = findTable(version.get(level), shortCode);
+            if (table != null) {
+                Link link = table.get(shortCode);
+                if (link != null) {
+                    return link;
+                }
+            }
+        }
+        return null;
+    }
+
+    // Файлы уровня не пересекаются и отсортированы, поэтому ищем единственный подходящий
+    private static SsTable findTable(List<SsTable> tables, String shortCode) {
+        int low = 0;
+        int high = tables.size() - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            SsTable table = tables.get(middle);
+            if (shortCode.compareTo(table.getFirstKey()) < 0) {
+                high = middle - 1;
+            } else if (shortCode.compareTo(table.getLastKey()) > 0) {
+                low = middle + 1;
+            } else {
+                return table;
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public List<Link> findByOwnerId(UUID ownerId) {
+        if (ownerId == null) {
+            return Collections.emptyList();
+        }
+        // Индекс дает коды владельца, сами ссылки читаются точечно через memtable, кэш и SSTable
+        return ownerIndex.find(ownerId, this::lookupLive);
+    }
+
+    @Override
+    public LinkPage findPageByOwnerId(
+            UUID ownerId, LinkSort sort, LinkFilter filter, String cursor, int pageSize) {
+        return ownerIndex.page(ownerId, sort, filter, cursor, pageSize, this::lookupLive);
+    }
+
+    @Override
+    public int countByOwnerId(UUID ownerId) {
+        return ownerIndex.count(ownerId);
+    }
+
+    private Link lookupLive(String shortCode) {
+        Link link = lookup(shortCode);
+        return link == SsTable.TOMBSTONE ? null : link;
+    }
+
+    @Override
+    public List<Link> removeExpiredLinks() {
+        Instant now = Instant.now();
+        // Кандидаты берутся из наступивших корзин индекса сроков без обхода SSTable
+        List<Link> expired = new ArrayList<>();
+        for (String shortCode : expiryIndex.pollDue(now)) {
+            Link link = lookup(shortCode);
+            if (link == null || link == SsTable.TOMBSTONE) {
+                continue;
+            }
+            if (now.isAfter(link.getExpirationTime())) {
+                expired.add(link);
+            } else {
+                expiryIndex.add(link);
+            }
+        }
+        long lastSequence = 0;
+        for (Link link : expired) {
+            synchronized (writeLock) {
+                memtable.put(link.getShortCode(), SsTable.TOMBSTONE);
+                memtableBytes.addAndGet(LinkCodec.SHORT_CODE_BYTES);
+                unmarkClicked(link.getShortCode());
+                ownerIndex.remove(link);
+                removeLiveCode(link.getShortCode());
+                lastSequence = log.appendDelete(link.getShortCode());
+            }
+            cache.invalidate(link.getShortCode());
+            Logger.log("Автоматически удалена просроченная ссылка: " + link.getShortCode());
+        }
+        log.awaitDurable(lastSequence);
+        maybeScheduleFlush();
+        return expired;
+    }
+
+    @Override
+    public Set<String> getAllShortCodes() {
+        Set<String> codes = new HashSet<>();
+        forEachLive(link -> codes.add(link.getShortCode()));
+        return Collections.unmodifiableSet(codes);
+    }
+
+    @Override
+    public int count() {
+        int[] count = new int[1];
+        forEachLive(link -> count[0]++);
+        return count[0];
+    }
+
+    @Override
+    public long getStorageSizeBytes() {
+        long size = directory.resolve(MANIFEST).toFile().length();
+        for (List<SsTable> level : levels) {
+            for (SsTable table : level) {
+                size += table.getSizeBytes();
+            }
+        }
+        for (Path segment : log.listSegments()) {
+            size += segment.toFile().length();
+        }
+        return size + clickJournal.getSizeBytes();
+    }
+
+    // Синхронно сбрасывает memtable и уплотняет уровни, не дожидаясь фонового потока
+    public void checkpoint() {
+        try {
+            background
+                    .submit(
+                            () -> {
+                                flushMemtable();
+                                compactWhileNeeded();
+                            })
+                    .get();
+        } catch (Exception e) {
+            throw new RuntimeException("Не удалось сбросить LSM-хранилище на диск", e);
+        }
+    }
+
+    @Override
+    public void close() {
+        background.shutdown();
+        try {
+            background.awaitTermination(30, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        clickJournal.close();
+        log.close();
+        if (background.isTerminated()) {
+            writeIndexSnapshot();
+        }
+    }
+
+    // Снимок пишется после закрытия журнала: отметка состояния должна совпасть при открытии
+    private void writeIndexSnapshot() {
+        synchronized (writeLock) {
+            CuckooFilter filter = liveCodes;
+            if (filter == null) {
+                return;
+            }
+            try {
+                LsmIndexSnapshot.write(
+                        directory.resolve(LsmIndexSnapshot.FILE),
+                        storeStamp(),
+                        filter,
+                        ownerIndex,
+                        expiryIndex);
+            } catch (IOException e) {
+                Logger.logError("Не удалось сохранить снимок индексов LSM-хранилища", e);
+            }
+        }
+    }
+
+    // Отметка состояния файлов для снимка индексов: MANIFEST и размеры сегментов журнала
+    private String storeStamp() {
+        StringBuilder stamp = new StringBuilder();
+        try {
+            Path manifest = directory.resolve(MANIFEST);
+            if (Files.exists(manifest)) {
+                stamp.append(Files.readString(manifest, StandardCharsets.UTF_8));
+            }
+            for (Path segment : LinkLog.listSegments(directory)) {
+                stamp.append(segment.getFileName())
+                        .append(' ')
+                        .append(Files.size(segment))
+                        .append('\n');
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Не удалось прочитать каталог LSM-хранилища", e);
+        }
+        return stamp.toString();
+    }
+
+    /** Число SSTable на каждом уровне, от 0 до последнего. */
+    int[] getTableCounts() {
+        return levels.stream().mapToInt(List::size).toArray();
+    }
+
+    // Обходит живые ссылки по возрастанию кода, сливая memtable и все SSTable
+    private void forEachLive(Consumer<Link> action) {
+        List<List<SsTable>> version = levels;
+        List<Iterator<Map.Entry<String, Link>>> sources = new ArrayList<>();
+        sources.add(memtable.entrySet().iterator());
+        Map<String, Link> frozen = flushing;
+        if (frozen != null) {
+            sources.add(frozen.entrySet().iterator());
+        }
+        for (SsTable table : version.get(0)) {
+            sources.add(table.iterator());
+        }
+        for (int level = 1; level < version.size(); level++) {
+            sources.add(levelIterator(version.get(level)));
+        }
+        merge(
+                sources,
+                (shortCode, link) -> {
+                    if (link != SsTable.TOMBSTONE) {
+                        action.accept(link);
+                    }
+                });
+    }
+
+    private interface MergeConsumer {
+        void accept(String shortCode, Link link) throws IOException;
+    }
+
+    private static final class Cursor {
+        final int rank;
+        final Iterator<Map.Entry<String, Link>> iterator;
+        Map.Entry<String, Link> current;
+
+        Cursor(int rank, Iterator<Map.Entry<String, Link>> iterator) {
+            this.rank = rank;
+            this.iterator = iterator;
+        }
+
+        boolean advance() {
+            current = iterator.hasNext() ? iterator.next() : null;
+            return current != null;
+        }
+    }
+
+    /**
+     * Слияние отсортированных источников. Источники перечислены от новых к старым: для каждого кода
+     * в consumer попадает только самая новая версия.
+     */
+    private static void merge(
+            List<Iterator<Map.Entry<String, Link>>> sources, MergeConsumer consumer) {
+        PriorityQueue<Cursor> queue =
+                new PriorityQueue<>(
+                        Comparator.comparing((Cursor cursor) -> cursor.current.getKey())
+                                .thenComparingInt(cursor -> cursor.rank));
+        for (int i = 0; i < sources.size(); i++) {
+            Cursor cursor = new Cursor(i, sources.get(i));
+            if (cursor.advance()) {
+                queue.add(cursor);
+            }
+        }
+        try {
+            while (!queue.isEmpty()) {
+                Cursor newest = queue.poll();
+                String shortCode = newest.current.getKey();
+                consumer.accept(shortCode, newest.current.getValue());
+                if (newest.advance()) {
+                    queue.add(newest);
+                }
+                while (!queue.isEmpty() && queue.peek().current.getKey().equals(shortCode)) {
+                    Cursor older = queue.poll();
+                    if (older.advance()) {
+                        queue.add(older);
+                    }
+                }
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Ошибка записи SSTable", e);
+        }
+    }
+
+    // Файлы уровня идут по возрастанию кодов, поэтому уровень читается как один файл
+    private static Iterator<Map.Entry<String, Link>> levelIterator(List<SsTable> tables) {
+        Iterator<SsTable> remaining = tables.iterator();
+        return new Iterator<>() {
+            private Iterator<Map.Entry<String, Link>> current = Collections.emptyIterator();
+
+            @Override
+            public boolean hasNext() {
+                while (!current.hasNext() && remaining.hasNext()) {
+                    current = remaining.next().iterator();
+                }
+                return current.hasNext();
+            }
+
+            @Override
+            public Map.Entry<String, Link> next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return current.next();
+            }
+        };
+    }
+
+    private void maybeScheduleFlush() {
+        if (memtableBytes.get() + clickedBytes.get() >= memtableMaxBytes) {
+            scheduleFlush();
+        }
+    }
+
+    private void scheduleFlush() {
+        if (flushScheduled.compareAndSet(false, true)) {
+            background.execute(
+                    () -> {
+                        flushScheduled.set(false);
+                        try {
+                            flushMemtable();
+                            compactWhileNeeded();
+                        } catch (RuntimeException e) {
+                            // Данные остаются в журнале, попробуем при следующем сбросе
+                            System.err.println("Ошибка сброса LSM-хранилища: " + e.getMessage());
+                            Logger.logError("Ошибка сброса LSM-хранилища", e);
+                        }
+                    });
+        }
+    }
+
+    // Выполняется только в фоновом потоке
+    private void flushMemtable() {
+        ConcurrentSkipListMap<String, Link> frozen;
+        List<Path> sealedSegments;
+        List<Path> sealedClicks;
+        synchronized (writeLock) {
+            if (memtable.isEmpty() && clicked.isEmpty()) {
+                return;
+            }
+            // Журнал переходов запечатывается до сбора кликнутых ссылок. Переход отмечает ссылку
+            // раньше, чем пишет журнал: отмеченная до сбора ссылка попадет в SSTable, а отмеченная
+            // после - в новый сегмент журнала, поэтому удаление старых сегментов ничего не теряет
+            sealedClicks = clickJournal.rotate();
+            foldClicks();
+            if (memtable.isEmpty()) {
+                clickJournal.deleteSegments(sealedClicks);
+                return;
+            }
+            frozen = memtable;
+            flushing = frozen;
+            memtable = new ConcurrentSkipListMap<>();
+            memtableBytes.set(0);
+            sealedSegments = log.rotate();
+        }
+
+        SsTable table;
+        try {
+            SsTable.Writer writer = newWriter(frozen.size());
+            try {
+                for (Map.Entry<String, Link> entry : frozen.entrySet()) {
+                    writer.add(entry.getKey(), entry.getValue());
+                }
+                table = writer.finish();
+            } catch (IOException | RuntimeException e) {
+                writer.abort();
+                throw e;
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Не удалось записать SSTable", e);
+        }
+
+        List<List<SsTable>> next = copyLevels(levels);
+        next.get(0).add(0, table);
+        installVersion(next);
+        flushing = null;
+        for (String shortCode : frozen.keySet()) {
+            cache.invalidate(shortCode);
+        }
+        log.deleteSegments(sealedSegments);
+        clickJournal.deleteSegments(sealedClicks);
+    }
+
+    // Вызывается под writeLock: кликнутые ссылки со своими счетчиками переходят в memtable.
+    // Ссылку, которую с тех пор сохранили заново или удалили, прежний объект не перезаписывает
+    private void foldClicks() {
+        for (String shortCode : new ArrayList<>(clicked.keySet())) {
+            Link link = unmarkClicked(shortCode);
+            if (link == null) {
+                continue;
+            }
+            Link current = memtable.get(shortCode);
+            if (current == null) {
+                current = mightBeLive(shortCode) ? lookup(shortCode) : null;
+            } else if (current != link) {
+                continue;
+            }
+            if (current != null && current != SsTable.TOMBSTONE) {
+                putToMemtable(link);
+            }
+        }
+    }
+
+    private Link unmarkClicked(String shortCode) {
+        Link link = clicked.remove(shortCode);
+        if (link != null) {
+            clickedBytes.addAndGet(-LinkCodec.encodedSize(link));
+        }
+        return link;
+    }
+
+    private void compactWhileNeeded() {
+        while (true) {
+            List<List<SsTable>> version = levels;
+            if (version.get(0).size() >= L0_COMPACTION_TRIGGER) {
+                compactLevel0(version);
+                continue;
+            }
+            int level = findOverfullLevel(version);
+            if (level < 0) {
+                return;
+            }
+            compactLevel(version, level);
+        }
+    }
+
+    private int findOverfullLevel(List<List<SsTable>> version) {
+        long maxBytes = tableMaxBytes * LEVEL1_MAX_TABLES;
+        for (int level = 1; level < MAX_LEVELS - 1; level++) {
+            long bytes = version.get(level).stream().mapToLong(SsTable::getSizeBytes).sum();
+            if (bytes > maxBytes) {
+                return level;
+            }
+            maxBytes *= LEVEL_SIZE_MULTIPLIER;
+        }
+        return -1;
+    }
+
+    // Весь уровень 0 вместе с пересекающимися файлами уровня 1 сливается в уровень 1
+    private void compactLevel0(List<List<SsTable>> version) {
+        List<SsTable> upper = version.get(0);
+        String first = upper.stream().map(SsTable::getFirstKey).min(String::compareTo).get();
+        String last = upper.stream().map(SsTable::getLastKey).max(String::compareTo).get();
+        List<SsTable> lower = overlapping(version.get(1), first, last);
+        compact(version, 0, upper, lower);
+    }
+
+    // Из переполненного уровня по кругу берется один файл и сливается со следующим уровнем
+    private void compactLevel(List<List<SsTable>> version, int level) {
+        List<SsTable> tables = version.get(level);
+        String pointer = compactPointers[level];
+        SsTable picked = tables.get(0);
+        if (pointer != null) {
+            for (SsTable table : tables) {
+                if (table.getFirstKey().compareTo(pointer) > 0) {
+                    picked = table;
+                    break;
+                }
+            }
+        }
+        compactPointers[level] = picked.getLastKey();
+        List<SsTable> lower =
+                overlapping(version.get(level + 1), picked.getFirstKey(), picked.getLastKey());
+        compact(version, level, List.of(picked), lower);
+    }
+
+    private static List<SsTable> overlapping(List<SsTable> tables, String first, String last) {
+        return tables.stream()
+                .filter(table -> table.overlaps(first, last))
+                .collect(Collectors.toList());
+    }
+
+    private void compact(
+            List<List<SsTable>> version, int level, List<SsTable> upper, List<SsTable> lower) {
+        int target = level + 1;
+        // Метки удаления нужны, только пока под целевым уровнем есть более старые данные
+        boolean dropTombstones = true;
+        for (int deeper = target + 1; deeper < MAX_LEVELS; deeper++) {
+            dropTombstones &= version.get(deeper).isEmpty();
+        }
+        List<Iterator<Map.Entry<String, Link>>> sources = new ArrayList<>();
+        for (SsTable table : upper) {
+            sources.add(table.iterator());
+        }
+        sources.add(levelIterator(lower));
+        int expectedKeys =
+                Stream.concat(upper.stream(), lower.stream())
+                        .mapToInt(SsTable::getRecordCount)
+                        .sum();
+
+        List<SsTable> outputs = new ArrayList<>();
+        TableSplitter splitter = new TableSplitter(outputs, expectedKeys);
+        boolean drop = dropTombstones;
+        try {
+            merge(
+                    sources,
+                    (shortCode, link) -> {
+                        if (!(drop && link == SsTable.TOMBSTONE)) {
+                            splitter.add(shortCode, link);
+                        }
+                    });
+            splitter.finish();
+        } catch (IOException | RuntimeException e) {
+            splitter.abort();
+            outputs.forEach(table -> deleteQuietly(table.getFile()));
+            throw new RuntimeException("Ошибка уплотнения LSM-хранилища", e);
+        }
+
+        List<List<SsTable>> next = copyLevels(version);
+        next.get(level).removeAll(upper);
+        next.get(target).removeAll(lower);
+        next.get(target).addAll(outputs);
+        next.get(target).sort(Comparator.comparing(SsTable::getFirstKey));
+        installVersion(next);
+        Stream.concat(upper.stream(), lower.stream())
+                .forEach(table -> deleteQuietly(table.getFile()));
+    }
+
+    // Режет результат слияния на файлы не больше tableMaxBytes
+    private final class TableSplitter {
+        private final List<SsTable> outputs;
+        private final int expectedKeys;
+        private SsTable.Writer writer;
+
+        TableSplitter(List<SsTable> outputs, int expectedKeys) {
+            this.outputs = outputs;
+            this.expectedKeys = expectedKeys;
+        }
+
+        void add(String shortCode, Link link) throws IOException {
+            if (writer == null) {
+                writer = newWriter(expectedKeys);
+            }
+            writer.add(shortCode, link);
+            if (writer.getSizeBytes() >= tableMaxBytes) {
+                finish();
+            }
+        }
+
+        void finish() throws IOException {
+            if (writer != null) {
+                SsTable.Writer finished = writer;
+                writer = null;
+                outputs.add(finished.finish());
+            }
+        }
+
+        void abort() {
+            if (writer != null) {
+                writer.abort();
+            }
+        }
+    }
+
+    private SsTable.Writer newWriter(int expectedKeys) throws IOException {
+        long number = nextTableNumber++;
+        return new SsTable.Writer(directory.resolve(tableName(number)), number, expectedKeys);
+    }
+
+    private static List<List<SsTable>> copyLevels(List<List<SsTable>> version) {
+        List<List<SsTable>> copy = new ArrayList<>(version.size());
+        for (List<SsTable> level : version) {
+            copy.add(new ArrayList<>(level));
+        }
+        return copy;
+    }
+
+    // Сначала MANIFEST на диске, потом новая версия для читателей
+    private void installVersion(List<List<SsTable>> next) {
+        writeManifest(next);
+        List<List<SsTable>> frozen = new ArrayList<>(next.size());
+        for (List<SsTable> level : next) {
+            frozen.add(List.copyOf(level));
+        }
+        levels = List.copyOf(frozen);
+    }
+
+    private void writeManifest(List<List<SsTable>> version) {
+        StringBuilder manifest = new StringBuilder();
+        for (int level = 0; level < version.size(); level++) {
+            for (SsTable table : version.get(level)) {
+                manifest.append(level)
+                        .append(' ')
+                        .append(table.getFile().getFileName())
+                        .append('\n');
+            }
+        }
+        Path file = directory.resolve(MANIFEST);
+        Path tempFile = directory.resolve(MANIFEST + ".tmp");
+        try {
+            Files.write(
+                    tempFile,
+                    manifest.toString().getBytes(StandardCharsets.UTF_8),
+                    StandardOpenOption.CREATE,
+                    StandardOpenOption.TRUNCATE_EXISTING,
+                    StandardOpenOption.WRITE,
+                    StandardOpenOption.SYNC);
+            Files.move(
+                    tempFile,
+                    file,
+                    StandardCopyOption.ATOMIC_MOVE,
+                    StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            Logger.logError("Не удалось записать MANIFEST LSM-хранилища", e);
+            throw new RuntimeException("Не удалось записать MANIFEST LSM-хранилища", e);
+        }
+    }
+
+    private List<List<SsTable>> loadManifest() {
+        List<List<SsTable>> loaded = new ArrayList<>();
+        for (int level = 0; level < MAX_LEVELS; level++) {
+            loaded.add(new ArrayList<>());
+        }
+        Path file = directory.resolve(MANIFEST);
+        if (Files.exists(file)) {
+            try {
+                for (String line : Files.readAllLines(file, StandardCharsets.UTF_8)) {
+                    if (line.isBlank()) {
+                        continue;
+                    }
+                    String[] parts = line.trim().split(" ");
+                    String name = parts[1];
+                    long number = tableNumber(name);
+                    loaded.get(Integer.parseInt(parts[0]))
+                            .add(SsTable.open(directory.resolve(name), number));
+                    nextTableNumber = Math.max(nextTableNumber, number + 1);
+                }
+            } catch (IOException | RuntimeException e) {
+                Logger.logError("Не удалось прочитать MANIFEST LSM-хранилища", e);
+                throw new RuntimeException("LSM-хранилище повреждено", e);
+            }
+        }
+        loaded.get(0).sort(Comparator.comparingLong(SsTable::getNumber).reversed());
+        for (int level = 1; level < MAX_LEVELS; level++) {
+            loaded.get(level).sort(Comparator.comparing(SsTable::getFirstKey));
+        }
+        List<List<SsTable>> frozen = new ArrayList<>();
+        for (List<SsTable> level : loaded) {
+            frozen.add(List.copyOf(level));
+        }
+        return List.copyOf(frozen);
+    }
+
+    // Файлы, не попавшие в MANIFEST, остались от прерванного сброса или уплотнения
+    private void deleteOrphanTables() {
+        Set<Path> live = new HashSet<>();
+        levels.forEach(level -> level.forEach(table -> live.add(table.getFile())));
+        try (Stream<Path> files = Files.list(directory)) {
+            files.filter(
+                            file -> {
+                                String name = file.getFileName().toString();
+                                return name.startsWith(TABLE_PREFIX)
+                                        && (name.endsWith(TABLE_SUFFIX) || name.endsWith(".tmp"));
+                            })
+                    .filter(file -> !live.contains(file))
+                    .forEach(
+                            file -> {
+                                String name = file.getFileName().toString();
+                                if (name.endsWith(TABLE_SUFFIX)) {
+                                    nextTableNumber =
+                                            Math.max(nextTableNumber, tableNumber(name) + 1);
+                                }
+                                deleteQuietly(file);
+                            });
+        } catch (IOException e) {
+            throw new RuntimeException("Не удалось прочитать каталог LSM-хранилища", e);
+        }
+    }
+
+    private static String tableName(long number) {
+        return String.format("%s%09d%s", TABLE_PREFIX, number, TABLE_SUFFIX);
+    }
+
+    private static long tableNumber(String name) {
+        return Long.parseLong(
+                name.substring(TABLE_PREFIX.length(), name.length() - TABLE_SUFFIX.length()));
+    }
+
+    private static void deleteQuietly(Path file) {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            Logger.logError("Не удалось удалить файл LSM-хранилища " + file.getFileName(), e);
+        }
+    }
+
+    // Проигрывание журнала: изменения ложатся в memtable поверх данных из SSTable
+    private final class MemtableReplayTarget implements LinkLog.ReplayTarget {
+        @Override
+        public void put(Link link) {
+            Link existing = lookup(link.getShortCode());
+            if (existing != null && existing != SsTable.TOMBSTONE) {
+                // Счетчик переходов только растет - не откатываем его старой записью
+                link.restoreClicks(existing.getCurrentClicks());
+            }
+            putToMemtable(link);
+        }
+
+        @Override
+        public void clicks(String shortCode, int clicks) {
+            restoreClicks(shortCode, clicks);
+        }
+
+        @Override
+        public void delete(String shortCode) {
+            memtable.put(shortCode, SsTable.TOMBSTONE);
+            memtableBytes.addAndGet(LinkCodec.SHORT_CODE_BYTES);
+        }
+    }
+
+    /**
+     * Кэш горячих ссылок, прочитанных из SSTable. Разбит на сегменты с LRU внутри каждого, чтобы
+     * параллельные переходы не упирались в одну блокировку. Пока ссылка в кэше, все переходы идут
+     * через один и тот же объект.
+     */
+    private static final class HotLinkCache {
+        private static final int SEGMENTS = 16;
+        private final List<LinkedHashMap<String, Link>> segments = new ArrayList<>();
+
+        HotLinkCache(int maxLinks) {
+            int perSegment = Math.max(1, maxLinks / SEGMENTS);
+            for (int i = 0; i < SEGMENTS; i++) {
+                segments.add(
+                        new LinkedHashMap<>(16, 0.75f, true) {
+                            @Override
+                            protected boolean removeEldestEntry(Map.Entry<String, Link> eldest) {
+                                return size() > perSegment;
+                            }
+                        });
+            }
+        }
+
+        private LinkedHashMap<String, Link> segment(String shortCode) {
+            return segments.get((shortCode.hashCode() & 0x7fffffff) % SEGMENTS);
+        }
+
+        Link get(String shortCode) {
+            LinkedHashMap<String, Link> segment = segment(shortCode);
+            synchronized (segment) {
+                return segment.get(shortCode);
+            }
+        }
+
+        // Кладет ссылку, только если набор SSTable не поменялся с момента чтения, и возвращает
+        // объект из кэша; null - набор поменялся и ссылку нужно прочитать заново
+        Link putIfCurrent(String shortCode, Link link, BooleanSupplier current) {
+            LinkedHashMap<String, Link> segment = segment(shortCode);
+            synchronized (segment) {
+                Link existing = segment.get(shortCode);
+                if (existing != null) {
+                    return existing;
+                }
+                if (!current.getAsBoolean()) {
+                    return null;
+                }
+                segment.put(shortCode, link);
+                return link;
+            }
+        }
+
+        void invalidate(String shortCode) {
+            LinkedHashMap<String, Link> segment = segment(shortCode);
+            synchronized (segment) {
+                segment.remove(shortCode);
+            }
+        }
+    }
+}
@@ -0,0 +1,596 @@
+package com.example.urlshortener.core;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.*;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Неблокирующий HTTP/1.1 сервер переходов на java.nio для самых высоких нагрузок.
+ *
+ * <p>Отдельный поток принимает соединения и раздает их по кругу циклам событий - по одному на ядро,
+ * у каждого свой Selector. Из запроса разбирается строка запроса - метод и путь до пробела или '?'
+ * - и только те заголовки, от которых зависит судьба соединения. Запрос читается в прямой буфер из
+ * пула цикла, а ответ на переход - это готовые байты ссылки (см. {@link
+ * RedirectResult#getResponseHead()}) и общий хвост с заголовком Connection.
+ *
+ * <p>Соединения постоянные: клиент может слать запросы конвейером, не дожидаясь ответов, и ответы
+ * на все дочитанные запросы уходят одной собирающей записью. Соединение без запросов дольше 30
+ * секунд закрывается. На переход по горячей ссылке создается только строка кода и обертка над
+ * готовыми байтами.
+ *
+ * <p>Переход выполняется прямо в цикле событий: из кэша переходов это доли микросекунды, а промах
+ * кэша задерживает остальные соединения этого цикла на время чтения хранилища.
+ */
+public class NioRedirectServer implements RedirectServer {
+    private static final int BUFFER_SIZE = 4096;
+    private static final int MAX_POOLED_BUFFERS = 256;
+    private static final int MAX_CODE_LENGTH = 64;
+    private static final int BACKLOG = 1024;
+    // Сколько ответов конвейера уходит одной записью; у каждого голова, хвост и тело
+    private static final int MAX_PIPELINED = 16;
+    private static final int RESPONSE_PARTS = 3;
+    private static final long IDLE_TIMEOUT_NANOS = TimeUnit.SECONDS.toNanos(30);
+    private static final long SWEEP_INTERVAL_MILLIS = 1000;
+
+    private static final ByteBuffer EMPTY = ByteBuffer.allocateDirect(0).asReadOnlyBuffer();
+    private static final ByteBuffer KEEP_ALIVE_TAIL =
+            directAscii("Connection: keep-alive\r\nKeep-Alive: timeout=30\r\n\r\n");
+    private static final ByteBuffer CLOSE_TAIL = directAscii("Connection: close\r\n\r\n");
+    private static final Response NOT_FOUND = Response.text("404 Not Found", "Ссылка не найдена\n");
+    private static final Response GONE =
+            Response.text(
+                    "410 Gone", "Ссылка неактивна (истек срок или превышен лимит переходов)\n");
+    private static final Response BAD_REQUEST =
+            Response.text("400 Bad Request", "Некорректный запрос\n");
+    private static final Response METHOD_NOT_ALLOWED =
+            new Response("405 Method Not Allowed", "Allow: GET, HEAD\r\nContent-Length: 0\r\n", "");
+    // Ограничитель советует одну и ту же паузу, поэтому и этот ответ готов заранее
+    private static final Response OVERLOADED =
+            Response.text(
+                    "503 Service Unavailable",
+                    "Retry-After: " + ConcurrencyLimiter.RETRY_AFTER_SECONDS + "\r\n",
+                    "Сервис перегружен, повторите запрос позже\n");
+    private static final Response INTERNAL_ERROR =
+            Response.text("500 Internal Server Error", "Внутренняя ошибка сервера\n");
+
+    private final UrlShortenerService service;
+    private final ServerSocketChannel serverChannel;
+    private final EventLoop[] loops;
+    private final Thread acceptor;
+    private volatile boolean running = true;
+
+    public NioRedirectServer(UrlShortenerService service, int port) throws IOException {
+        this(service, port, Runtime.getRuntime().availableProcessors());
+    }
+
+    NioRedirectServer(UrlShortenerService service, int port, int loopCount) throws IOException {
+        if (loopCount <= 0) {
+            throw new IllegalArgumentException("Число циклов событий должно быть положительным");
+        }
+        this.service = service;
+        this.serverChannel = ServerSocketChannel.open();
+        serverChannel.bind(new InetSocketAddress(port), BACKLOG);
+        this.loops = new EventLoop[loopCount];
+        for (int i = 0; i < loopCount; i++) {
+            loops[i] = new EventLoop(i);
+        }
+        this.acceptor = new Thread(this::acceptConnections, "nio-redirect-accept");
+    }
+
+    @Override
+    public void start() {
+        for (EventLoop loop : loops) {
+            loop.thread.start();
+        }
+        acceptor.start();
+        Logger.log(
+                "NIO-сервер переходов запущен на порту "
+                        + getPort()
+                        + ", циклов событий: "
+                        + loops.length);
+    }
+
+    @Override
+    public int getPort() {
+        return serverChannel.socket().getLocalPort();
+    }
+
+    @Override
+    public void stop() {
+        running = false;
+        try {
+            serverChannel.close();
+        } catch (IOException e) {
+            Logger.logError("Не удалось закрыть серверный сокет", e);
+        }
+        for (EventLoop loop : loops) {
+            loop.selector.wakeup();
+        }
+        try {
+            acceptor.join();
+            for (EventLoop loop : loops) {
+                loop.thread.join();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        Logger.log("NIO-сервер переходов остановлен");
+    }
+
+    private void acceptConnections() {
+        int next = 0;
+        while (running) {
+            try {
+                SocketChannel channel = serverChannel.accept();
+                channel.configureBlocking(false);
+                channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+                loops[next].register(channel);
+                next = (next + 1) % loops.length;
+            } catch (ClosedChannelException e) {
+                return; // Сервер остановлен
+            } catch (IOException e) {
+                Logger.logError("Ошибка приема соединения", e);
+            }
+        }
+    }
+
+    private static final class Connection {
+        final SocketChannel channel;
+        final ByteBuffer in;
+        // Недописанный ответ, когда сокет не принял его целиком
+        ByteBuffer pending;
+        // После отправки ответов соединение закрывается
+        boolean closing;
+        long lastActiveNanos = System.nanoTime();
+
+        Connection(SocketChannel channel, ByteBuffer in) {
+            this.channel = channel;
+            this.in = in;
+        }
+    }
+
+    private final class EventLoop implements Runnable {
+        final Selector selector;
+        final Thread thread;
+        final Queue<SocketChannel> accepted = new ConcurrentLinkedQueue<>();
+        final ArrayDeque<ByteBuffer> freeBuffers = new ArrayDeque<>();
+        final Consumer<SelectionKey> handler = this::process;
+        // Буферы собирающей записи и копии хвостов переиспользуются между ответами цикла:
+        // у каждого ответа пачки свой хвост, потому что запись сдвигает позицию буфера
+        final ByteBuffer[] gather = new ByteBuffer[RESPONSE_PARTS * MAX_PIPELINED];
+        final ByteBuffer[] keepAliveTails = new ByteBuffer[MAX_PIPELINED];
+        final ByteBuffer[] closeTails = new ByteBuffer[MAX_PIPELINED];
+        final byte[] code = new byte[MAX_CODE_LENGTH];
+        long lastSweepNanos = System.nanoTime();
+
+        EventLoop(int index) throws IOException {
+            this.selector = Selector.open();
+            this.thread = new Thread(this, "nio-redirect-loop-" + index);
+            for (int i = 0; i < MAX_PIPELINED; i++) {
+                keepAliveTails[i] = KEEP_ALIVE_TAIL.duplicate();
+                closeTails[i] = CLOSE_TAIL.duplicate();
+            }
+        }
+
+        void register(SocketChannel channel) {
+            accepted.add(channel);
+            selector.wakeup();
+        }
+
+        @Override
+        public void run() {
+            try {
+                while (running) {
+                    selector.select(handler, SWEEP_INTERVAL_MILLIS);
+                    registerAccepted();
+                    closeIdle();
+                }
+            } catch (IOException | RuntimeException e) {
+                Logger.logError("Цикл событий " + thread.getName() + " остановлен", e);
+            } finally {
+                for (SelectionKey key : selector.keys()) {
+                    close(key);
+                }
+                SocketChannel channel;
+                while ((channel = accepted.poll()) != null) {
+                    closeQuietly(channel);
+                }
+                closeQuietly(selector);
+            }
+        }
+
+        private void registerAccepted() {
+            SocketChannel channel;
+            while ((channel = accepted.poll()) != null) {
+                ByteBuffer buffer = freeBuffers.poll();
+                if (buffer == null) {
+                    buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+                }
+                try {
+                    channel.register(
+                            selector, SelectionKey.OP_READ, new Connection(channel, buffer));
+                } catch (ClosedChannelException e) {
+                    release(buffer);
+                }
+            }
+        }
+
+        // Раз в интервал закрывает соединения, простаивающие дольше таймаута keep-alive
+        private void closeIdle() {
+            long now = System.nanoTime();
+            if (now - lastSweepNanos < TimeUnit.MILLISECONDS.toNanos(SWEEP_INTERVAL_MILLIS)) {
+                return;
+            }
+            lastSweepNanos = now;
+            for (SelectionKey key : selector.keys()) {
+                Connection connection = (Connection) key.attachment();
+                if (connection != null && now - connection.lastActiveNanos > IDLE_TIMEOUT_NANOS) {
+                    close(key);
+                }
+            }
+        }
+
+        private void process(SelectionKey key) {
+            Connection connection = (Connection) key.attachment();
+            try {
+                if (key.isValid() && key.isWritable()) {
+                    writePending(key, connection);
+                } else if (key.isValid() && key.isReadable()) {
+                    read(key, connection);
+                }
+            } catch (IOException e) {
+                close(key); // Клиент оборвал соединение
+            }
+        }
+
+        private void read(SelectionKey key, Connection connection) throws IOException {
+            if (connection.channel.read(connection.in) < 0) {
+                close(key);
+                return;
+            }
+            connection.lastActiveNanos = System.nanoTime();
+            serve(key, connection);
+        }
+
+        /**
+         * Отвечает на все запросы, которые уже целиком лежат в буфере соединения, в порядке их
+         * прихода. Ответы конвейера копятся и уходят одной собирающей записью; если сокет принял не
+         * все, чтение приостанавливается до отправки остатка, а непрочитанные запросы ждут в
+         * буфере.
+         */
+        private void serve(SelectionKey key, Connection connection) throws IOException {
+            ByteBuffer in = connection.in;
+            int start = 0;
+            int count = 0;
+            boolean written = true;
+            int end;
+            while (!connection.closing && (end = requestEnd(in, start)) >= 0) {
+                if (count == gather.length) {
+                    written = write(connection, count);
+                    count = 0;
+                    if (!written) {
+                        break;
+                    }
+                }
+                count = handleRequest(connection, in, start, end, count);
+                start = end;
+            }
+            if (start == 0 && count == 0 && written && !in.hasRemaining()) {
+                // Заголовки запроса не помещаются в буфер
+                connection.closing = true;
+                count = append(connection, BAD_REQUEST, false, count);
+            }
+            discard(in, start);
+            if (written && count > 0) {
+                written = write(connection, count);
+            }
+            if (!written) {
+                key.interestOps(SelectionKey.OP_WRITE);
+            } else if (connection.closing) {
+                close(key);
+            } else {
+                key.interestOps(SelectionKey.OP_READ);
+            }
+        }
+
+        // Добавляет в пачку ответ на запрос [start, end) буфера; возвращает новый размер пачки
+        private int handleRequest(
+                Connection connection, ByteBuffer in, int start, int end, int count) {
+            boolean head;
+            int pathStart;
+            if (startsWith(in, start, end, "GET /")) {
+                head = false;
+                pathStart = start + 5;
+            } else if (startsWith(in, start, end, "HEAD /")) {
+                head = true;
+                pathStart = start + 6;
+            } else {
+                // Тело отвергнутого запроса не разбирается, поэтому соединение закрывается
+                connection.closing = true;
+                return append(connection, rejection(in, start, end), false, count);
+            }
+            if (!keepAlive(in, start, end)) {
+                connection.closing = true;
+            }
+
+            int length = 0;
+            for (int i = pathStart; i < end; i++) {
+                byte b = in.get(i);
+                if (b == ' ' || b == '?' || b == '\r') {
+                    break;
+                }
+                if (b == '/' || length == MAX_CODE_LENGTH) {
+                    return append(connection, NOT_FOUND, head, count);
+                }
+                code[length++] = b;
+            }
+            if (length == 0) {
+                return append(connection, NOT_FOUND, head, count);
+            }
+
+            String shortCode = new String(code, 0, length, StandardCharsets.ISO_8859_1);
+            RedirectResult result;
+            try {
+                // Цикл событий не ждет в очереди ограничителя: без места сразу отвечает 503
+                result =
+                        head
+                                ? service.peekRedirect(shortCode)
+                                : service.tryResolveRedirect(shortCode);
+            } catch (ServiceOverloadedException e) {
+                return append(connection, OVERLOADED, head, count);
+            } catch (RuntimeException e) {
+                Logger.logError("Ошибка обработки перехода по коду " + shortCode, e);
+                return append(connection, INTERNAL_ERROR, head, count);
+            }
+            switch (result.getStatus()) {
+                case FOUND:
+                    gather[count] = ByteBuffer.wrap(result.getResponseHead());
+                    gather[count + 1] = tail(connection, count);
+                    gather[count + 2] = EMPTY;
+                    return count + RESPONSE_PARTS;
+                case INACTIVE:
+                    return append(connection, GONE, head, count);
+                default:
+                    return append(connection, NOT_FOUND, head, count);
+            }
+        }
+
+        // Метод, отличный от GET и HEAD, или строка запроса, которую не удалось разобрать
+        private Response rejection(ByteBuffer in, int start, int end) {
+            if (startsWith(in, start, end, "GET ") || startsWith(in, start, end, "HEAD ")) {
+                return BAD_REQUEST;
+            }
+            for (int i = start; i < end; i++) {
+                byte b = in.get(i);
+                if (b == ' ') {
+                    return i > start ? METHOD_NOT_ALLOWED : BAD_REQUEST;
+                }
+                if (b < 'A' || b > 'Z') {
+                    return BAD_REQUEST;
+                }
+            }
+            return BAD_REQUEST;
+        }
+
+        private int append(Connection connection, Response response, boolean head, int count) {
+            gather[count] = response.head.duplicate();
+            gather[count + 1] = tail(connection, count);
+            gather[count + 2] =
+                    head || !response.body.hasRemaining() ? EMPTY : response.body.duplicate();
+            return count + RESPONSE_PARTS;
+        }
+
+        private ByteBuffer tail(Connection connection, int count) {
+            ByteBuffer[] tails = connection.closing ? closeTails : keepAliveTails;
+            return tails[count / RESPONSE_PARTS].rewind();
+        }
+
+        // Одна собирающая запись; остаток, который сокет не принял, копируется в соединение
+        private boolean write(Connection connection, int count) throws IOException {
+            connection.channel.write(gather, 0, count);
+            int remaining = 0;
+            for (int i = 0; i < count; i++) {
+                remaining += gather[i].remaining();
+            }
+            if (remaining == 0) {
+                return true;
+            }
+            ByteBuffer pending = ByteBuffer.allocate(remaining);
+            for (int i = 0; i < count; i++) {
+                pending.put(gather[i]);
+            }
+            connection.pending = pending.flip();
+            return false;
+        }
+
+        private void writePending(SelectionKey key, Connection connection) throws IOException {
+            connection.channel.write(connection.pending);
+            connection.lastActiveNanos = System.nanoTime();
+            if (connection.pending.hasRemaining()) {
+                return;
+            }
+            connection.pending = null;
+            // Запросы конвейера, пришедшие до паузы, уже лежат в буфере
+            serve(key, connection);
+        }
+
+        private void close(SelectionKey key) {
+            Connection connection = (Connection) key.attach(null);
+            key.cancel();
+            if (connection != null) {
+                closeQuietly(connection.channel);
+                release(connection.in);
+            }
+        }
+
+        private void release(ByteBuffer buffer) {
+            if (freeBuffers.size() < MAX_POOLED_BUFFERS) {
+                freeBuffers.add(buffer.clear());
+            }
+        }
+    }
+
+    // Конец запроса, начинающегося с from: позиция после пустой строки или -1, если он не дочитан
+    private static int requestEnd(ByteBuffer in, int from) {
+        for (int i = from; i + 4 <= in.position(); i++) {
+            if (in.get(i) == '\r'
+                    && in.get(i + 1) == '\n'
+                    && in.get(i + 2) == '\r'
+                    && in.get(i + 3) == '\n') {
+                return i + 4;
+            }
+        }
+        return -1;
+    }
+
+    // Сдвигает непрочитанный хвост буфера в начало
+    private static void discard(ByteBuffer in, int consumed) {
+        if (consumed > 0) {
+            in.flip().position(consumed);
+            in.compact();
+        }
+    }
+
+    /**
+     * HTTP/1.1 держит соединение открытым, пока клиент не попросит Connection: close, HTTP/1.0 -
+     * только по Connection: keep-alive. Запрос с телом закрывает соединение: тело не разбирается, и
+     * следующий запрос конвейера было бы не найти.
+     */
+    private static boolean keepAlive(ByteBuffer in, int start, int end) {
+        int lineEnd = indexOf(in, start, end, (byte) '\r');
+        boolean http10 = startsWith(in, lineEnd - 8, end, "HTTP/1.0");
+        int length = headerValue(in, lineEnd, end, "content-length:");
+        if (headerValue(in, lineEnd, end, "transfer-encoding:") >= 0
+                || (length >= 0 && !isZero(in, length, end))) {
+            return false;
+        }
+        int connection = headerValue(in, lineEnd, end, "connection:");
+        if (connection < 0) {
+            return !http10;
+        }
+        int valueEnd = indexOf(in, connection, end, (byte) '\r');
+        if (containsIgnoreCase(in, connection, valueEnd, "close")) {
+            return false;
+        }
+        return !http10 || containsIgnoreCase(in, connection, valueEnd, "keep-alive");
+    }
+
+    // Начало значения заголовка name (в нижнем регистре, с двоеточием) или -1
+    private static int headerValue(ByteBuffer in, int from, int end, String name) {
+        for (int line = from + 2; line < end - 2; ) {
+            if (regionMatchesIgnoreCase(in, line, end, name)) {
+                return line + name.length();
+            }
+            line = indexOf(in, line, end, (byte) '\n') + 1;
+        }
+        return -1;
+    }
+
+    private static boolean isZero(ByteBuffer in, int from, int end) {
+        boolean digits = false;
+        for (int i = from; i < end; i++) {
+            byte b = in.get(i);
+            if (b == '0') {
+                digits = true;
+            } else if (b == '\r') {
+                break;
+            } else if (b != ' ' && b != '\t') {
+                return false;
+            }
+        }
+        return digits;
+    }
+
+    private static int indexOf(ByteBuffer in, int from, int end, byte target) {
+        for (int i = from; i < end; i++) {
+            if (in.get(i) == target) {
+                return i;
+            }
+        }
+        return end;
+    }
+
+    private static boolean containsIgnoreCase(ByteBuffer in, int from, int to, String token) {
+        for (int i = from; i + token.length() <= to; i++) {
+            if (regionMatchesIgnoreCase(in, i, to, token)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean regionMatchesIgnoreCase(
+            ByteBuffer in, int from, int end, String lowerCase) {
+        if (from + lowerCase.length() > end) {
+            return false;
+        }
+        for (int i = 0; i < lowerCase.length(); i++) {
+            if (Character.toLowerCase((char) in.get(from + i)) != lowerCase.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean startsWith(ByteBuffer in, int from, int end, String prefix) {
+        if (from < 0 || from + prefix.length() > end) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length(); i++) {
+            if (in.get(from + i) != prefix.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        try {
+            closeable.close();
+        } catch (IOException e) {
+            // Соединение уже закрыто клиентом
+        }
+    }
+
+    private static ByteBuffer directAscii(String text) {
+        return direct(text.getBytes(StandardCharsets.US_ASCII));
+    }
+
+    private static ByteBuffer direct(byte[] bytes) {
+        return ByteBuffer.allocateDirect(bytes.length).put(bytes).flip().asReadOnlyBuffer();
+    }
+
+    // Готовый ответ без тела или с текстовым телом; хвост с Connection дописывает цикл
+    private static final class Response {
+        final ByteBuffer head;
+        final ByteBuffer body;
+
+        Response(String status, String headers, String body) {
+            this.head = directAscii("HTTP/1.1 " + status + "\r\n" + headers);
+            this.body = direct(body.getBytes(StandardCharsets.UTF_8));
+        }
+
+        static Response text(String status, String body) {
+            return text(status, "", body);
+        }
+
+        static Response text(String status, String headers, String body) {
+            return new Response(
+                    status,
+                    headers
+                            + "Content-Type: text/plain; charset=utf-8\r\nContent-Length: "
+                            + body.getBytes(StandardCharsets.UTF_8).length
+                            + "\r\n",
+                    body);
+        }
+    }
+}
@@ -0,0 +1,222 @@
+package com.example.urlshortener.core;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Вторичный индекс владелец → короткие коды его ссылок. Запрос ссылок пользователя обходит только
+ * его коды, а не все ссылки хранилища.
+ *
+ * <p>Коды владельца лежат в двух упорядоченных наборах - по времени создания и по сроку действия,
+ * поэтому страница в этих сортировках стоит O(размер страницы) плюс пропущенные фильтром ссылки.
+ * Счетчик переходов меняется на каждом переходе, и держать по нему упорядоченный индекс значило бы
+ * переставлять запись на каждый клик, поэтому страница по переходам выбирается ограниченной кучей
+ * за один проход по кодам владельца.
+ *
+ * <p>Наборы владельца меняются внутри compute, поэтому добавление и удаление для одного владельца
+ * не теряют друг друга, а пустая запись удаляется вместе с последним кодом. Хранилище обновляет
+ * индекс там же, где меняет саму ссылку, и при чтении перепроверяет владельца по ссылке.
+ */
+final class OwnerIndex {
+    private final ConcurrentHashMap<UUID, OwnerLinks> linksByOwner = new ConcurrentHashMap<>();
+
+    private static final class OwnerLinks {
+        final NavigableSet<LinkPage.Position> byCreated = new ConcurrentSkipListSet<>();
+        final NavigableSet<LinkPage.Position> byExpires = new ConcurrentSkipListSet<>();
+        // Размер ConcurrentSkipListSet считается обходом, поэтому храним его отдельно
+        volatile int size;
+    }
+
+    void add(Link link) {
+        linksByOwner.compute(
+                link.getOwnerId(),
+                (owner, links) -> {
+                    OwnerLinks result = links != null ? links : new OwnerLinks();
+                    if (result.byCreated.add(position(LinkSort.CREATED, link))) {
+                        result.byExpires.add(position(LinkSort.EXPIRES, link));
+                        result.size++;
+                    }
+                    return result;
+                });
+    }
+
+    // Ссылка с тем же кодом заменила прежнюю; прежние позиции больше не действуют
+    void replace(Link previous, Link current) {
+        if (previous != null && previous != current) {
+            remove(previous);
+        }
+        add(current);
+    }
+
+    void remove(Link link) {
+        linksByOwner.computeIfPresent(
+                link.getOwnerId(),
+                (owner, links) -> {
+                    if (links.byCreated.remove(position(LinkSort.CREATED, link))) {
+                        links.byExpires.remove(position(LinkSort.EXPIRES, link));
+                        links.size--;
+                    }
+                    return links.size == 0 ? null : links;
+                });
+    }
+
+    void forEachCode(Consumer<String> action) {
+        for (OwnerLinks links : linksByOwner.values()) {
+            for (LinkPage.Position position : links.byCreated) {
+                action.accept(position.shortCode);
+            }
+        }
+    }
+
+    // Пишет оба набора каждого владельца; хранилище не должно меняться во время записи
+    void writeTo(DataOutput out) throws IOException {
+        out.writeInt(linksByOwner.size());
+        for (Map.Entry<UUID, OwnerLinks> entry : linksByOwner.entrySet()) {
+            OwnerLinks links = entry.getValue();
+            out.writeLong(entry.getKey().getMostSignificantBits());
+            out.writeLong(entry.getKey().getLeastSignificantBits());
+            out.writeInt(links.byCreated.size());
+            writePositions(out, links.byCreated);
+            writePositions(out, links.byExpires);
+        }
+    }
+
+    private static void writePositions(DataOutput out, Set<LinkPage.Position> positions)
+            throws IOException {
+        for (LinkPage.Position position : positions) {
+            out.writeLong(position.key);
+            out.writeUTF(position.shortCode);
+        }
+    }
+
+    static OwnerIndex readFrom(DataInput in) throws IOException {
+        OwnerIndex index = new OwnerIndex();
+        int ownerCount = in.readInt();
+        for (int i = 0; i < ownerCount; i++) {
+            UUID ownerId = new UUID(in.readLong(), in.readLong());
+            int size = in.readInt();
+            OwnerLinks links = new OwnerLinks();
+            readPositions(in, size, links.byCreated);
+            readPositions(in, size, links.byExpires);
+            if (links.byCreated.size() != size || links.byExpires.size() != size) {
+                throw new IOException("Наборы владельца " + ownerId + " не совпадают по размеру");
+            }
+            links.size = size;
+            if (size > 0) {
+                index.linksByOwner.put(ownerId, links);
+            }
+        }
+        return index;
+    }
+
+    private static void readPositions(DataInput in, int count, Set<LinkPage.Position> positions)
+            throws IOException {
+        for (int i = 0; i < count; i++) {
+            long key = in.readLong();
+            positions.add(new LinkPage.Position(key, in.readUTF()));
+        }
+    }
+
+    /** Ссылки владельца; коды, которых уже нет в хранилище, пропускаются. */
+    List<Link> find(UUID ownerId, Function<String, Link> lookup) {
+        OwnerLinks links = linksByOwner.get(ownerId);
+        if (links == null) {
+            return Collections.emptyList();
+        }
+        List<Link> result = new ArrayList<>(links.size);
+        for (LinkPage.Position position : links.byCreated) {
+            Link link = resolve(ownerId, position, lookup);
+            if (link != null) {
+                result.add(link);
+            }
+        }
+        return result;
+    }
+
+    int count(UUID ownerId) {
+        OwnerLinks links = ownerId != null ? linksByOwner.get(ownerId) : null;
+        return links != null ? links.size : 0;
+    }
+
+    LinkPage page(
+            UUID ownerId,
+            LinkSort sort,
+            LinkFilter filter,
+            String cursor,
+            int pageSize,
+            Function<String, Link> lookup) {
+        LinkPage.Position after = cursor != null ? LinkPage.decodeCursor(sort, cursor) : null;
+        OwnerLinks links = ownerId != null ? linksByOwner.get(ownerId) : null;
+        if (links == null) {
+            return new LinkPage(Collections.emptyList(), null);
+        }
+        if (sort == LinkSort.CLICKS) {
+            return LinkPage.of(
+                    sort, topByClicks(ownerId, links, filter, after, pageSize, lookup), pageSize);
+        }
+
+        NavigableSet<LinkPage.Position> ordered =
+                sort == LinkSort.CREATED ? links.byCreated : links.byExpires;
+        List<Link> candidates = new ArrayList<>(pageSize + 1);
+        for (LinkPage.Position position : after != null ? ordered.tailSet(after, false) : ordered) {
+            Link link = resolve(ownerId, position, lookup);
+            if (link != null && filter.matches(link)) {
+                candidates.add(link);
+                if (candidates.size() > pageSize) {
+                    break;
+                }
+            }
+        }
+        return LinkPage.of(sort, candidates, pageSize);
+    }
+
+    // Первые pageSize + 1 ссылок после курсора по убыванию переходов: куча хранит худшую сверху
+    private static List<Link> topByClicks(
+            UUID ownerId,
+            OwnerLinks links,
+            LinkFilter filter,
+            LinkPage.Position after,
+            int pageSize,
+            Function<String, Link> lookup) {
+        PriorityQueue<Map.Entry<LinkPage.Position, Link>> heap =
+                new PriorityQueue<>(
+                        pageSize + 2,
+                        Map.Entry.<LinkPage.Position, Link>comparingByKey().reversed());
+        for (LinkPage.Position created : links.byCreated) {
+            Link link = resolve(ownerId, created, lookup);
+            if (link == null || !filter.matches(link)) {
+                continue;
+            }
+            LinkPage.Position position = position(LinkSort.CLICKS, link);
+            if (after != null && position.compareTo(after) <= 0) {
+                continue;
+            }
+            heap.add(Map.entry(position, link));
+            if (heap.size() > pageSize + 1) {
+                heap.poll();
+            }
+        }
+        List<Link> result = new ArrayList<>(heap.size());
+        while (!heap.isEmpty()) {
+            result.add(heap.poll().getValue());
+        }
+        Collections.reverse(result);
+        return result;
+    }
+
+    private static Link resolve(
+            UUID ownerId, LinkPage.Position position, Function<String, Link> lookup) {
+        Link link = lookup.apply(position.shortCode);
+        return link != null && ownerId.equals(link.getOwnerId()) ? link : null;
+    }
+
+    private static LinkPage.Position position(LinkSort sort, Link link) {
+        return new LinkPage.Position(sort.keyOf(link), link);
+    }
+}
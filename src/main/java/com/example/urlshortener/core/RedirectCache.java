@@ -0,0 +1,336 @@
+package com.example.urlshortener.core;
+
+import java.time.Instant;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Кэш переходов между сервисом и хранилищем: короткий код → неизменяемая запись с целевым URL,
+ * лимитом и сроком. Горячие ссылки отдаются из памяти при любом хранилище.
+ *
+ * <p>Вытеснение и допуск - по схеме W-TinyLFU. Новые записи попадают в маленькое окно LRU (1%
+ * емкости); вытесненная из окна запись попадает в основную часть, только если по частотному эскизу
+ * к ней обращались чаще, чем к кандидату на вытеснение оттуда. Поэтому поток разовых промахов
+ * (сканеры, редкие ссылки) не вымывает горячий набор. Основная часть - сегментный LRU:
+ * испытательный сегмент и защищенный (80%), куда запись переходит при повторном обращении.
+ *
+ * <p>Чтение идет без блокировок через ConcurrentHashMap. Перестановку в очередях и учет частоты
+ * чтение делает, только если блокировка политики свободна: под нагрузкой часть обращений не
+ * учитывается, но читатели никогда не ждут друг друга. Вставка и удаление берут блокировку всегда.
+ */
+public class RedirectCache {
+    private static final int WINDOW = 0;
+    private static final int PROBATION = 1;
+    private static final int PROTECTED = 2;
+
+    private final int maxEntries;
+    private final int maxWindow;
+    private final int maxProtected;
+    private final ConcurrentHashMap<String, Node> nodes = new ConcurrentHashMap<>();
+    private final ReentrantLock policyLock = new ReentrantLock();
+    private final FrequencySketch sketch;
+    // Головы очередей - самые давние записи, хвосты - самые свежие
+    private final Node[] heads = new Node[3];
+    private final Node[] tails = new Node[3];
+    private final int[] sizes = new int[3];
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    /** Неизменяемая запись кэша. Счетчик переходов остается в самой ссылке. */
+    public static final class Entry {
+        private final String originalUrl;
+        private final int clickLimit;
+        private final Instant expirationTime;
+        final Link link;
+
+        Entry(Link link) {
+            this.originalUrl = link.getOriginalUrl();
+            this.clickLimit = link.getClickLimit();
+            this.expirationTime = link.getExpirationTime();
+            this.link = link;
+        }
+
+        public String getOriginalUrl() {
+            return originalUrl;
+        }
+
+        public int getClickLimit() {
+            return clickLimit;
+        }
+
+        public Instant getExpirationTime() {
+            return expirationTime;
+        }
+    }
+
+    /** Снимок счетчиков кэша. */
+    public static final class Stats {
+        private final long hits;
+        private final long misses;
+        private final long evictions;
+        private final int size;
+
+        Stats(long hits, long misses, long evictions, int size) {
+            this.hits = hits;
+            this.misses = misses;
+            this.evictions = evictions;
+            this.size = size;
+        }
+
+        public long getHits() {
+            return hits;
+        }
+
+        public long getMisses() {
+            return misses;
+        }
+
+        public long getEvictions() {
+            return evictions;
+        }
+
+        public int getSize() {
+            return size;
+        }
+
+        public double getHitRate() {
+            long requests = hits + misses;
+            return requests == 0 ? 0 : (double) hits / requests;
+        }
+    }
+
+    private static final class Node {
+        final String key;
+        final Entry entry;
+        int queue = WINDOW;
+        Node prev;
+        Node next;
+        // false - запись уже удалена из очередей
+        boolean linked;
+
+        Node(String key, Entry entry) {
+            this.key = key;
+            this.entry = entry;
+        }
+    }
+
+    public RedirectCache(int maxEntries) {
+        if (maxEntries <= 0) {
+            throw new IllegalArgumentException("Размер кэша переходов должен быть положительным");
+        }
+        this.maxEntries = maxEntries;
+        this.maxWindow = Math.max(1, maxEntries / 100);
+        this.maxProtected = (int) ((maxEntries - maxWindow) * 0.8);
+        this.sketch = new FrequencySketch(maxEntries);
+    }
+
+    /** Запись по коду или null; промах учитывается в частоте, чтобы код мог попасть в кэш. */
+    public Entry get(String shortCode) {
+        Node node = nodes.get(shortCode);
+        if (node == null) {
+            misses.increment();
+            if (policyLock.tryLock()) {
+                try {
+                    sketch.increment(shortCode);
+                } finally {
+                    policyLock.unlock();
+                }
+            }
+            return null;
+        }
+        hits.increment();
+        if (policyLock.tryLock()) {
+            try {
+                sketch.increment(shortCode);
+                onAccess(node);
+            } finally {
+                policyLock.unlock();
+            }
+        }
+        return node.entry;
+    }
+
+    /**
+     * Кладет ссылку, прочитанную из хранилища, и возвращает ее запись. Если параллельный промах уже
+     * положил запись по этому коду, возвращает ее: переходы по коду считаются на одном объекте.
+     */
+    public Entry put(Link link) {
+        policyLock.lock();
+        try {
+            Node existing = nodes.get(link.getShortCode());
+            if (existing != null) {
+                return existing.entry;
+            }
+            Node node = new Node(link.getShortCode(), new Entry(link));
+            nodes.put(node.key, node);
+            link(node, WINDOW);
+            evictFromWindow();
+            return node.entry;
+        } finally {
+            policyLock.unlock();
+        }
+    }
+
+    // Ссылка сохранена заново, удалена, истекла или исчерпала лимит
+    public void invalidate(String shortCode) {
+        policyLock.lock();
+        try {
+            Node node = nodes.remove(shortCode);
+            if (node != null) {
+                unlink(node);
+            }
+        } finally {
+            policyLock.unlock();
+        }
+    }
+
+    public Stats getStats() {
+        return new Stats(hits.sum(), misses.sum(), evictions.sum(), nodes.size());
+    }
+
+    private void onAccess(Node node) {
+        if (!node.linked) {
+            return;
+        }
+        if (node.queue == PROBATION) {
+            // Повторное обращение - запись переходит в защищенный сегмент
+            unlink(node);
+            link(node, PROTECTED);
+            if (sizes[PROTECTED] > maxProtected) {
+                Node demoted = heads[PROTECTED];
+                unlink(demoted);
+                link(demoted, PROBATION);
+            }
+        } else {
+            unlink(node);
+            link(node, node.queue);
+        }
+    }
+
+    private void evictFromWindow() {
+        while (sizes[WINDOW] > maxWindow) {
+            Node candidate = heads[WINDOW];
+            unlink(candidate);
+            if (sizes[PROBATION] + sizes[PROTECTED] < maxEntries - maxWindow) {
+                link(candidate, PROBATION);
+                continue;
+            }
+            // Основная часть заполнена: остается тот, к кому чаще обращались
+            Node victim = heads[PROBATION] != null ? heads[PROBATION] : heads[PROTECTED];
+            if (victim != null && sketch.frequency(candidate.key) > sketch.frequency(victim.key)) {
+                evict(victim);
+                link(candidate, PROBATION);
+            } else {
+                evict(candidate);
+            }
+        }
+    }
+
+    private void evict(Node node) {
+        unlink(node);
+        nodes.remove(node.key, node);
+        evictions.increment();
+    }
+
+    private void link(Node node, int queue) {
+        node.queue = queue;
+        node.prev = tails[queue];
+        node.next = null;
+        if (tails[queue] != null) {
+            tails[queue].next = node;
+        } else {
+            heads[queue] = node;
+        }
+        tails[queue] = node;
+        sizes[queue]++;
+        node.linked = true;
+    }
+
+    private void unlink(Node node) {
+        if (!node.linked) {
+            return;
+        }
+        int queue = node.queue;
+        if (node.prev != null) {
+            node.prev.next = node.next;
+        } else {
+            heads[queue] = node.next;
+        }
+        if (node.next != null) {
+            node.next.prev = node.prev;
+        } else {
+            tails[queue] = node.prev;
+        }
+        node.prev = null;
+        node.next = null;
+        sizes[queue]--;
+        node.linked = false;
+    }
+
+    /**
+     * Частотный эскиз count-min: четыре 4-битных счетчика на код в массиве long. Когда учтено в
+     * десять раз больше обращений, чем емкость кэша, все счетчики делятся пополам, и старая
+     * популярность постепенно забывается.
+     */
+    private static final class FrequencySketch {
+        private final long[] table;
+        private final int mask;
+        private final int sampleSize;
+        private int additions;
+
+        FrequencySketch(int maxEntries) {
+            int length = Integer.highestOneBit(Math.max(8, maxEntries) - 1) << 1;
+            this.table = new long[length];
+            this.mask = length - 1;
+            this.sampleSize = 10 * Math.max(8, maxEntries);
+        }
+
+        void increment(String key) {
+            long hash = BloomFilter.hash(key);
+            boolean added = false;
+            for (int i = 0; i < 4; i++) {
+                int index = index(hash, i);
+                int shift = counterShift(hash, i);
+                if ((table[index] >>> shift & 0xF) < 15) {
+                    table[index] += 1L << shift;
+                    added = true;
+                }
+            }
+            if (added && ++additions >= sampleSize) {
+                reset();
+            }
+        }
+
+        int frequency(String key) {
+            long hash = BloomFilter.hash(key);
+            int frequency = 15;
+            for (int i = 0; i < 4; i++) {
+                frequency =
+                        Math.min(
+                                frequency,
+                                (int) (table[index(hash, i)] >>> counterShift(hash, i) & 0xF));
+            }
+            return frequency;
+        }
+
+        private void reset() {
+            for (int i = 0; i < table.length; i++) {
+                table[i] = (table[i] >>> 1) & 0x7777777777777777L;
+            }
+            additions /= 2;
+        }
+
+        private int index(long hash, int i) {
+            long mixed = (hash + i * 0x9e3779b97f4a7c15L) * 0xbf58476d1ce4e5b9L;
+            return (int) (mixed >>> 32) & mask;
+        }
+
+        // 16 счетчиков в long; каждая из четырех строк берет свой счетчик из своего слова
+        private static int counterShift(long hash, int i) {
+            return (int) ((hash >>> (i * 4)) & 0xF) * 4;
+        }
+    }
+}
@@ -0,0 +1,118 @@
+package com.example.urlshortener.core;
+
+import com.sun.net.httpserver.Headers;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * HTTP-сервер переходов на встроенном в JDK com.sun.net.httpserver. {@code GET /{код}} отвечает 302
+ * с заголовком Location, 404 для неизвестного кода и 410 для истекшей или исчерпавшей лимит ссылки.
+ * HEAD получает тот же ответ, но переход не засчитывается.
+ *
+ * <p>Каждый запрос обрабатывается в своем виртуальном потоке: ожидание хранилища не занимает потоки
+ * ОС, и число одновременных запросов ограничено только памятью.
+ */
+public class RedirectHttpServer implements RedirectServer {
+    private static final byte[] NOT_FOUND_BODY =
+            "Ссылка не найдена\n".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] GONE_BODY =
+            "Ссылка неактивна (истек срок или превышен лимит переходов)\n"
+                    .getBytes(StandardCharsets.UTF_8);
+
+    private static final byte[] OVERLOADED_BODY =
+            "Сервис перегружен, повторите запрос позже\n".getBytes(StandardCharsets.UTF_8);
+
+    private final UrlShortenerService service;
+    private final HttpServer server;
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+
+    public RedirectHttpServer(UrlShortenerService service, int port) throws IOException {
+        this.service = service;
+        this.server = HttpServer.create(new InetSocketAddress(port), 0);
+        server.createContext("/", this::handle);
+        server.setExecutor(executor);
+    }
+
+    @Override
+    public void start() {
+        server.start();
+        Logger.log("HTTP-сервер переходов запущен на порту " + getPort());
+    }
+
+    @Override
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    @Override
+    public void stop() {
+        server.stop(1);
+        executor.shutdown();
+        Logger.log("HTTP-сервер переходов остановлен");
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try {
+            String method = exchange.getRequestMethod();
+            if (!"GET".equals(method) && !"HEAD".equals(method)) {
+                exchange.getResponseHeaders().set("Allow", "GET, HEAD");
+                exchange.sendResponseHeaders(405, -1);
+                return;
+            }
+            String shortCode = exchange.getRequestURI().getPath().substring(1);
+            if (shortCode.isEmpty() || shortCode.indexOf('/') >= 0) {
+                sendText(exchange, 404, NOT_FOUND_BODY);
+                return;
+            }
+            RedirectResult result =
+                    "HEAD".equals(method)
+                            ? service.peekRedirect(shortCode)
+                            : service.resolveRedirect(shortCode);
+            switch (result.getStatus()) {
+                case FOUND:
+                    Headers headers = exchange.getResponseHeaders();
+                    headers.set("Location", result.getOriginalUrl());
+                    headers.set("Cache-Control", result.getCacheControl());
+                    if (result.getExpires() != null) {
+                        headers.set("Expires", result.getExpires());
+                    }
+                    exchange.sendResponseHeaders(result.getHttpStatus(), -1);
+                    break;
+                case INACTIVE:
+                    sendText(exchange, 410, GONE_BODY);
+                    break;
+                default:
+                    sendText(exchange, 404, NOT_FOUND_BODY);
+            }
+        } catch (ServiceOverloadedException e) {
+            exchange.getResponseHeaders()
+                    .set("Retry-After", String.valueOf(e.getRetryAfterSeconds()));
+            sendText(exchange, 503, OVERLOADED_BODY);
+        } catch (RuntimeException e) {
+            Logger.logError("Ошибка обработки HTTP-запроса " + exchange.getRequestURI(), e);
+            exchange.sendResponseHeaders(500, -1);
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private static void sendText(HttpExchange exchange, int status, byte[] body)
+            throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+        if ("HEAD".equals(exchange.getRequestMethod())) {
+            exchange.sendResponseHeaders(status, -1);
+            return;
+        }
+        exchange.sendResponseHeaders(status, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package com.example.urlshortener.core;
+
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+
+/**
+ * Результат перехода по короткому коду. Промах - обычный результат, а не исключение: сканеры
+ * перебирают случайные коды, и ответ на них не должен стоить захвата стека.
+ *
+ * <p>Результат найденной ссылки один на ссылку (см. {@link Link#redirectResult()}) и несет готовое
+ * начало ответа - строку статуса и заголовки Location, Cache-Control и Content-Length, - которое
+ * {@link NioRedirectServer} отправляет без форматирования на каждый переход.
+ *
+ * <p>Постоянная ссылка отвечает 301 с Cache-Control: public и Expires на конец ее срока: повторные
+ * переходы поглощают браузеры и CDN, а после истечения клиент снова спросит сервис и получит 410.
+ * Остальные ссылки отвечают 302 с Cache-Control: no-store, чтобы каждый переход дошел до сервиса и
+ * был засчитан в лимит.
+ */
+public class RedirectResult {
+    public enum Status {
+        FOUND,
+        NOT_FOUND,
+        INACTIVE
+    }
+
+    static final RedirectResult NOT_FOUND = new RedirectResult(Status.NOT_FOUND, null);
+    static final RedirectResult INACTIVE = new RedirectResult(Status.INACTIVE, null);
+
+    private final Status status;
+    private final String originalUrl;
+    private final boolean permanent;
+    private final String expires;
+    private final byte[] responseHead;
+
+    private RedirectResult(Status status, String originalUrl, Link link) {
+        this.status = status;
+        this.originalUrl = originalUrl;
+        this.permanent = link != null && link.isPermanent();
+        this.expires =
+                permanent
+                        ? DateTimeFormatter.RFC_1123_DATE_TIME.format(
+                                link.getExpirationTime().atOffset(ZoneOffset.UTC))
+                        : null;
+        this.responseHead = link != null ? encodeHead(location(originalUrl)) : null;
+    }
+
+    private RedirectResult(Status status, String originalUrl) {
+        this(status, originalUrl, null);
+    }
+
+    static RedirectResult found(Link link) {
+        return new RedirectResult(Status.FOUND, link.getOriginalUrl(), link);
+    }
+
+    private byte[] encodeHead(String location) {
+        StringBuilder head = new StringBuilder("HTTP/1.1 ");
+        head.append(permanent ? "301 Moved Permanently" : "302 Found").append("\r\n");
+        head.append("Location: ").append(location).append("\r\n");
+        head.append("Cache-Control: ").append(getCacheControl()).append("\r\n");
+        if (expires != null) {
+            head.append("Expires: ").append(expires).append("\r\n");
+        }
+        head.append("Content-Length: 0\r\n");
+        return head.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    // Заголовок допускает только ASCII без переводов строки
+    private static String location(String originalUrl) {
+        try {
+            return URI.create(originalUrl).toASCIIString();
+        } catch (IllegalArgumentException e) {
+            return originalUrl.replaceAll("[\\r\\n]", "");
+        }
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    // null, если ссылка не найдена или неактивна
+    public String getOriginalUrl() {
+        return originalUrl;
+    }
+
+    public boolean isPermanent() {
+        return permanent;
+    }
+
+    // 301 для постоянной ссылки, иначе 302
+    public int getHttpStatus() {
+        return permanent ? 301 : 302;
+    }
+
+    public String getCacheControl() {
+        return permanent ? "public" : "no-store";
+    }
+
+    // Дата истечения в формате HTTP для постоянной ссылки, иначе null
+    public String getExpires() {
+        return expires;
+    }
+
+    // Начало ответа без завершающей пустой строки: заголовок Connection дописывает сервер
+    byte[] getResponseHead() {
+        return responseHead;
+    }
+}
@@ -0,0 +1,28 @@
+package com.example.urlshortener.core;
+
+import java.io.IOException;
+
+/**
+ * HTTP-сервер переходов режима --serve. Реализация выбирается настройкой http.engine, см. {@link
+ * #create(UrlShortenerService, SystemSettings, int)}.
+ */
+public interface RedirectServer {
+
+    static RedirectServer create(UrlShortenerService service, SystemSettings settings, int port)
+            throws IOException {
+        switch (settings.getHttpEngine()) {
+            case NIO:
+                return new NioRedirectServer(service, port);
+            case VIRTUAL:
+            default:
+                return new RedirectHttpServer(service, port);
+        }
+    }
+
+    void start();
+
+    // Порт, на котором сервер слушает; при запуске с портом 0 его выбирает ОС
+    int getPort();
+
+    void stop();
+}
@@ -0,0 +1,126 @@
+package com.example.urlshortener.core;
+
+import java.io.Closeable;
+import java.nio.file.Path;
+import java.security.SecureRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Генератор уникальных коротких кодов. Код - это номер из последовательности, пропущенный через
+ * ключевую перестановку {@link CodePermutation} и записанный в base62, поэтому разные номера всегда
+ * дают разные коды.
+ *
+ * <p>Номера раздаются арендованными блоками по {@link #LEASE_SIZE}. Блоки держат полосы, и поток
+ * выдает коды из блока своей полосы: полос в несколько раз больше, чем ядер, так что потоки почти
+ * не встречаются на одном мониторе, а к источнику номеров обращаются раз в блок. Источник - файл
+ * последовательности, общий для процессов с одним каталогом данных, или счетчик в памяти.
+ */
+public final class SequenceCodeGenerator implements Closeable {
+    static final long LEASE_SIZE = 1024;
+
+    private final CodePermutation permutation;
+    // null - номера берутся из памяти и не переживают перезапуск
+    private final CodeSequenceFile sequenceFile;
+    private final AtomicLong memorySequence = new AtomicLong();
+    private final Lease[] stripes;
+    // Номера, на которые перестановка отображает уже занятые коды старого формата (случайные)
+    private final LongHashSet occupiedNumbers =
+            new LongHashSet(0, Runtime.getRuntime().availableProcessors());
+    // Граница аренды, прочитанная последней; граница только растет. Файл последовательности
+    // перечитывается, лишь когда номер кода не ниже нее, то есть почти только для старых кодов
+    private volatile long knownLeasedUpTo;
+
+    // Арендованный блок [next, end); next == end - блок исчерпан
+    private static final class Lease {
+        long next;
+        long end;
+    }
+
+    private SequenceCodeGenerator(long key, CodeSequenceFile sequenceFile) {
+        this.permutation = new CodePermutation(key);
+        this.sequenceFile = sequenceFile;
+        int stripeCount =
+                Integer.highestOneBit(Runtime.getRuntime().availableProcessors() * 4 - 1) << 1;
+        this.stripes = new Lease[stripeCount];
+        for (int i = 0; i < stripeCount; i++) {
+            stripes[i] = new Lease();
+        }
+    }
+
+    /** Генератор с ключом и границей из файла последовательности; файл создается при отсутствии. */
+    public static SequenceCodeGenerator open(Path file) {
+        CodeSequenceFile opened = CodeSequenceFile.open(file);
+        return new SequenceCodeGenerator(opened.getKey(), opened);
+    }
+
+    /** Генератор со случайным ключом и номерами с нуля, без файла. */
+    public static SequenceCodeGenerator inMemory() {
+        return new SequenceCodeGenerator(new SecureRandom().nextLong(), null);
+    }
+
+    public String nextCode() {
+        long number;
+        do {
+            number = nextNumber();
+        } while (!occupiedNumbers.isEmpty() && occupiedNumbers.remove(number));
+        return Base62.encode(permutation.permute(number));
+    }
+
+    String codeForNumber(long number) {
+        return Base62.encode(permutation.permute(number));
+    }
+
+    private long nextNumber() {
+        Lease lease = stripes[(int) Thread.currentThread().threadId() & (stripes.length - 1)];
+        synchronized (lease) {
+            if (lease.next == lease.end) {
+                long start = leaseBlock();
+                lease.next = start;
+                lease.end = Math.min(start + LEASE_SIZE, Base62.SPACE);
+            }
+            return lease.next++;
+        }
+    }
+
+    private long leaseBlock() {
+        long start =
+                sequenceFile != null
+                        ? sequenceFile.lease(LEASE_SIZE)
+                        : memorySequence.getAndAdd(LEASE_SIZE);
+        if (start >= Base62.SPACE) {
+            throw new IllegalStateException("Пространство коротких кодов исчерпано");
+        }
+        return start;
+    }
+
+    /**
+     * Учитывает код, уже лежащий в хранилище. Коды этой же последовательности имеют номера ниже
+     * границы аренды и повториться не могут; запоминаются только номера случайных кодов старого
+     * формата, попавшие выше границы. Вызывается при загрузке хранилища, до выдачи кодов, и может
+     * вызываться из нескольких потоков сразу.
+     */
+    void excludeExisting(String code) {
+        long value = Base62.decode(code);
+        if (value >= 0) {
+            long number = permutation.inverse(value);
+            if (number >= knownLeasedUpTo) {
+                knownLeasedUpTo =
+                        sequenceFile != null ? sequenceFile.getLeasedUpTo() : memorySequence.get();
+                if (number >= knownLeasedUpTo) {
+                    occupiedNumbers.add(number);
+                }
+            }
+        }
+    }
+
+    void clearExcluded() {
+        occupiedNumbers.clear();
+    }
+
+    @Override
+    public void close() {
+        if (sequenceFile != null) {
+            sequenceFile.close();
+        }
+    }
+}
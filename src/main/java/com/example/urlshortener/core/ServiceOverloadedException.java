@@ -0,0 +1,16 @@
+package com.example.urlshortener.core;
+
+/** Операция отклонена ограничителем нагрузки; HTTP-серверы отвечают на нее 503 с Retry-After. */
+public class ServiceOverloadedException extends RuntimeException {
+    private final int retryAfterSeconds;
+
+    public ServiceOverloadedException(int retryAfterSeconds) {
+        // Отказ под перегрузкой должен стоить как можно меньше, стек для него не собираем
+        super("Сервис перегружен, повторите через " + retryAfterSeconds + " с", null, false, false);
+        this.retryAfterSeconds = retryAfterSeconds;
+    }
+
+    public int getRetryAfterSeconds() {
+        return retryAfterSeconds;
+    }
+}
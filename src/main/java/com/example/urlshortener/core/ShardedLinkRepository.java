@@ -0,0 +1,394 @@
+package com.example.urlshortener.core;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+/**
+ * Хранилище ссылок, разбитое на шарды по хешу короткого кода.
+ *
+ * <p>Каждый шард - отдельный {@link FileLinkRepository} в каталоге shard-&lt;номер&gt; со своей
+ * картой, снимком, журналом, файлом счетчиков и фоновыми потоками, поэтому запись в разные шарды
+ * идет параллельно, а загрузка и сворачивание журналов распараллеливаются сами собой.
+ *
+ * <p>Число шардов записано в файле shards.meta. Если настройка link.shard.count с ним не совпадает,
+ * хранилище не открывается: ссылки нужно сначала перераспределить командой {@code
+ * --rebalance-shards N} при остановленном сервисе, см. {@link #rebalance}. Перераспределение,
+ * прерванное сбоем, доводится до конца при следующем открытии хранилища.
+ */
+public class ShardedLinkRepository implements LinkRepository {
+    static final String META_FILE = "shards.meta";
+    // Намерение заменить шарды: "старое новое" число шардов; пишется, когда новые шарды готовы
+    static final String REBALANCE_MARKER = "shards.rebalance";
+    private static final String SHARD_PREFIX = "shard-";
+    private static final String REBALANCE_DIRECTORY = "shards-rebalance";
+    private static final String PREVIOUS_DIRECTORY = "shards-previous";
+
+    private final Path dataDirectory;
+    private final List<FileLinkRepository> shards;
+
+    public ShardedLinkRepository(Path dataDirectory, SystemSettings settings) {
+        long startNanos = System.nanoTime();
+        this.dataDirectory = dataDirectory;
+        int shardCount = settings.getShardCount();
+        if (shardCount <= 0) {
+            throw new IllegalArgumentException("Число шардов должно быть положительным");
+        }
+        recoverRebalance(dataDirectory);
+        int storedCount = readShardCount(dataDirectory);
+        if (storedCount > 0 && storedCount != shardCount) {
+            throw new IllegalStateException(
+                    "Хранилище разбито на "
+                            + storedCount
+                            + " шардов, а в настройках "
+                            + shardCount
+                            + ". Перераспределите ссылки командой --rebalance-shards "
+                            + shardCount);
+        }
+        if (storedCount < 0) {
+            writeShardCount(dataDirectory, shardCount);
+        }
+        for (int index = 0; index < storedCount; index++) {
+            // Пустой шард вместо потерянного молча спрятал бы его ссылки
+            if (!Files.isDirectory(dataDirectory.resolve(SHARD_PREFIX + index))) {
+                throw new IllegalStateException("Не найден каталог шарда " + SHARD_PREFIX + index);
+            }
+        }
+        // Каждый шард при загрузке сам передает свои коды генератору
+        this.shards = openShards(dataDirectory, shardCount, settings);
+        Logger.log(
+                String.format(
+                        "Шардированное хранилище открыто за %d мс: шардов %d, ссылок %d",
+                        TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos),
+                        shardCount,
+                        shards.stream().mapToInt(FileLinkRepository::count).sum()));
+    }
+
+    // Шарды загружаются параллельно, каждый в своем каталоге
+    private static List<FileLinkRepository> openShards(
+            Path directory, int shardCount, SystemSettings settings) {
+        return IntStream.range(0, shardCount)
+                .parallel()
+                .mapToObj(
+                        index -> {
+                            Path shardDirectory = directory.resolve(SHARD_PREFIX + index);
+                            try {
+                                Files.createDirectories(shardDirectory);
+                            } catch (IOException e) {
+                                throw new RuntimeException(
+                                        "Не удалось создать каталог шарда " + index, e);
+                            }
+                            return new FileLinkRepository(shardDirectory, settings, false);
+                        })
+                .collect(Collectors.toList());
+    }
+
+    static int shardIndex(String shortCode, int shardCount) {
+        // Hash кода перемешивается, чтобы соседние коды не попадали в один шард
+        int hash = shortCode.hashCode();
+        hash ^= hash >>> 16;
+        hash *= 0x85ebca6b;
+        hash ^= hash >>> 13;
+        return Math.floorMod(hash, shardCount);
+    }
+
+    private FileLinkRepository shardFor(String shortCode) {
+        return shards.get(shardIndex(shortCode, shards.size()));
+    }
+
+    public int getShardCount() {
+        return shards.size();
+    }
+
+    @Override
+    public void save(Link link) {
+        if (link == null) {
+            throw new IllegalArgumentException("Ссылка не может быть null");
+        }
+        shardFor(link.getShortCode()).save(link);
+    }
+
+    // Пачка делится по шардам, и каждый шард пишет свою часть параллельно с остальными
+    @Override
+    public void saveAll(Collection<Link> links) {
+        Map<FileLinkRepository, List<Link>> byShard = new HashMap<>();
+        for (Link link : links) {
+            if (link == null) {
+                throw new IllegalArgumentException("Ссылка не может быть null");
+            }
+            byShard.computeIfAbsent(shardFor(link.getShortCode()), shard -> new ArrayList<>())
+                    .add(link);
+        }
+        byShard.entrySet().parallelStream()
+                .forEach(entry -> entry.getKey().saveAll(entry.getValue()));
+    }
+
+    @Override
+    public Optional<Link> findByShortCode(String shortCode) {
+        if (shortCode == null || shortCode.trim().isEmpty()) {
+            return Optional.empty();
+        }
+        return shardFor(shortCode).findByShortCode(shortCode);
+    }
+
+    @Override
+    public List<Link> findByOwnerId(UUID ownerId) {
+        if (ownerId == null) {
+            return Collections.emptyList();
+        }
+        return shards.parallelStream()
+                .flatMap(shard -> shard.findByOwnerId(ownerId).stream())
+                .collect(Collectors.toList());
+    }
+
+    // Каждый шард отдает страницу после того же курсора, общая страница - их слияние
+    @Override
+    public LinkPage findPageByOwnerId(
+            UUID ownerId, LinkSort sort, LinkFilter filter, String cursor, int pageSize) {
+        List<LinkPage> pages =
+                shards.parallelStream()
+                        .map(
+                                shard ->
+                                        shard.findPageByOwnerId(
+                                                ownerId, sort, filter, cursor, pageSize))
+                        .collect(Collectors.toList());
+        return LinkPage.merge(sort, pages, pageSize);
+    }
+
+    @Override
+    public int countByOwnerId(UUID ownerId) {
+        return shards.stream().mapToInt(shard -> shard.countByOwnerId(ownerId)).sum();
+    }
+
+    @Override
+    public void recordClick(Link link) {
+        if (link == null) {
+            throw new IllegalArgumentException("Ссылка не может быть null");
+        }
+        shardFor(link.getShortCode()).recordClick(link);
+    }
+
+    @Override
+    public List<Link> removeExpiredLinks() {
+        return shards.parallelStream()
+                .flatMap(shard -> shard.removeExpiredLinks().stream())
+                .collect(Collectors.toList());
+    }
+
+    @Override
+    public Set<String> getAllShortCodes() {
+        return shards.stream()
+                .flatMap(shard -> shard.getAllShortCodes().stream())
+                .collect(Collectors.toUnmodifiableSet());
+    }
+
+    @Override
+    public int count() {
+        return shards.stream().mapToInt(FileLinkRepository::count).sum();
+    }
+
+    @Override
+    public long getStorageSizeBytes() {
+        return dataDirectory.resolve(META_FILE).toFile().length()
+                + shards.stream().mapToLong(FileLinkRepository::getStorageSizeBytes).sum();
+    }
+
+    // Сворачивает журналы всех шардов в снимки параллельно
+    public void checkpoint() {
+        shards.parallelStream().forEach(FileLinkRepository::checkpoint);
+    }
+
+    @Override
+    public void close() {
+        shards.parallelStream().forEach(FileLinkRepository::close);
+    }
+
+    /**
+     * Перераспределяет ссылки по новому числу шардов. Выполняется только при остановленном сервисе:
+     * новые шарды собираются во временном каталоге, после чего записывается файл намерения
+     * shards.rebalance и шарды меняются местами, см. {@link #completeRebalance}.
+     */
+    public static void rebalance(Path dataDirectory, int newShardCount, SystemSettings settings) {
+        if (newShardCount <= 0) {
+            throw new IllegalArgumentException("Число шардов должно быть положительным");
+        }
+        recoverRebalance(dataDirectory);
+        int oldShardCount = readShardCount(dataDirectory);
+        if (oldShardCount == newShardCount) {
+            System.out.println("Хранилище уже разбито на " + newShardCount + " шардов");
+            return;
+        }
+        try {
+            int moved = prepareRebalance(dataDirectory, oldShardCount, newShardCount, settings);
+            completeRebalance(dataDirectory);
+            Logger.log(
+                    "Ссылки перераспределены: "
+                            + moved
+                            + " ссылок, шардов "
+                            + Math.max(oldShardCount, 0)
+                            + " -> "
+                            + newShardCount);
+            System.out.println(
+                    "✅ Ссылки перераспределены по "
+                            + newShardCount
+                            + " шардам. Укажите link.shard.count="
+                            + newShardCount
+                            + " в настройках.");
+        } catch (IOException e) {
+            Logger.logError("Ошибка перераспределения шардов", e);
+            throw new RuntimeException("Не удалось перераспределить шарды", e);
+        }
+    }
+
+    // Собирает новые шарды в shards-rebalance и записывает файл намерения; возвращает число ссылок.
+    // Старые шарды не меняются, поэтому сбой до записи файла намерения ничего не портит
+    static int prepareRebalance(
+            Path dataDirectory, int oldShardCount, int newShardCount, SystemSettings settings)
+            throws IOException {
+        Path staging = dataDirectory.resolve(REBALANCE_DIRECTORY);
+        Files.createDirectories(staging);
+        List<FileLinkRepository> target = openShards(staging, newShardCount, settings);
+        int moved = 0;
+        if (oldShardCount > 0) {
+            List<FileLinkRepository> source = openShards(dataDirectory, oldShardCount, settings);
+            for (FileLinkRepository shard : source) {
+                // Копия не привязана к clicks.dat старого шарда и несет его счетчик
+                List<Link> links = new ArrayList<>();
+                for (String code : shard.getAllShortCodes()) {
+                    shard.findByShortCode(code)
+                            .map(ShardedLinkRepository::detachedCopy)
+                            .ifPresent(links::add);
+                }
+                Map<Integer, List<Link>> byShard =
+                        links.stream()
+                                .collect(
+                                        Collectors.groupingBy(
+                                                link ->
+                                                        shardIndex(
+                                                                link.getShortCode(),
+                                                                newShardCount)));
+                byShard.forEach((index, part) -> target.get(index).saveAll(part));
+                moved += links.size();
+            }
+            source.forEach(FileLinkRepository::close);
+        }
+        target.parallelStream().forEach(FileLinkRepository::checkpoint);
+        target.forEach(FileLinkRepository::close);
+
+        writeAtomically(
+                dataDirectory.resolve(REBALANCE_MARKER),
+                Math.max(oldShardCount, 0) + " " + newShardCount);
+        return moved;
+    }
+
+    /**
+     * Доводит до конца замену шардов по файлу намерения. Каждый шаг проверяет, не сделан ли он уже,
+     * поэтому повторный вызов после сбоя на любом шаге продолжает с того же места: старые шарды
+     * уходят в shards-previous, новые переезжают из shards-rebalance, записывается shards.meta, и
+     * только потом удаляются отложенные каталоги и сам файл намерения.
+     */
+    static void completeRebalance(Path dataDirectory) throws IOException {
+        Path marker = dataDirectory.resolve(REBALANCE_MARKER);
+        String[] counts = Files.readString(marker, StandardCharsets.UTF_8).trim().split(" ");
+        int oldShardCount = Integer.parseInt(counts[0]);
+        int newShardCount = Integer.parseInt(counts[1]);
+        Path staging = dataDirectory.resolve(REBALANCE_DIRECTORY);
+        Path previous = dataDirectory.resolve(PREVIOUS_DIRECTORY);
+
+        // Новые шарды начинают переезжать только после того, как ушли все старые
+        boolean placingNew =
+                IntStream.range(0, newShardCount)
+                        .anyMatch(index -> !Files.exists(staging.resolve(SHARD_PREFIX + index)));
+        if (!placingNew) {
+            Files.createDirectories(previous);
+            for (int index = 0; index < oldShardCount; index++) {
+                Path shard = dataDirectory.resolve(SHARD_PREFIX + index);
+                if (Files.exists(shard)) {
+                    Files.move(shard, previous.resolve(SHARD_PREFIX + index));
+                }
+            }
+        }
+        for (int index = 0; index < newShardCount; index++) {
+            Path shard = staging.resolve(SHARD_PREFIX + index);
+            if (Files.exists(shard)) {
+                Files.move(shard, dataDirectory.resolve(SHARD_PREFIX + index));
+            }
+        }
+        writeShardCount(dataDirectory, newShardCount);
+        deleteRecursively(previous);
+        deleteRecursively(staging);
+        Files.delete(marker);
+    }
+
+    // Остатки прерванного перераспределения: без файла намерения новые шарды не были готовы и
+    // удаляются, с ним замена доводится до конца
+    private static void recoverRebalance(Path dataDirectory) {
+        try {
+            if (Files.exists(dataDirectory.resolve(REBALANCE_MARKER))) {
+                completeRebalance(dataDirectory);
+                Logger.log("Завершено прерванное перераспределение шардов");
+                return;
+            }
+            deleteRecursively(dataDirectory.resolve(REBALANCE_DIRECTORY));
+            deleteRecursively(dataDirectory.resolve(PREVIOUS_DIRECTORY));
+        } catch (IOException | RuntimeException e) {
+            Logger.logError("Ошибка восстановления после перераспределения шардов", e);
+            throw new IllegalStateException(
+                    "Не удалось завершить прерванное перераспределение шардов", e);
+        }
+    }
+
+    private static Link detachedCopy(Link link) {
+        ByteBuffer buffer = ByteBuffer.allocate(LinkCodec.encodedSize(link));
+        LinkCodec.encode(link, buffer);
+        return LinkCodec.decode(buffer.flip());
+    }
+
+    // Возвращает -1, если хранилище еще не создавалось
+    static int readShardCount(Path dataDirectory) {
+        Path meta = dataDirectory.resolve(META_FILE);
+        if (!Files.exists(meta)) {
+            return -1;
+        }
+        try {
+            return Integer.parseInt(Files.readString(meta, StandardCharsets.UTF_8).trim());
+        } catch (IOException | NumberFormatException e) {
+            throw new IllegalStateException("Файл " + META_FILE + " поврежден", e);
+        }
+    }
+
+    private static void writeShardCount(Path dataDirectory, int shardCount) {
+        writeAtomically(dataDirectory.resolve(META_FILE), String.valueOf(shardCount));
+    }
+
+    private static void writeAtomically(Path file, String content) {
+        Path tempFile = file.resolveSibling(file.getFileName() + ".tmp");
+        try {
+            Files.writeString(tempFile, content, StandardCharsets.UTF_8);
+            Files.move(
+                    tempFile,
+                    file,
+                    StandardCopyOption.ATOMIC_MOVE,
+                    StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            throw new RuntimeException("Не удалось записать " + file.getFileName(), e);
+        }
+    }
+
+    private static void deleteRecursively(Path directory) throws IOException {
+        if (!Files.exists(directory)) {
+            return;
+        }
+        try (Stream<Path> files = Files.walk(directory)) {
+            for (Path file : files.sorted(Comparator.reverseOrder()).collect(Collectors.toList())) {
+                Files.delete(file);
+            }
+        }
+    }
+}
@@ -1,124 +1,61 @@
 package com.example.urlshortener.core;
 
-import java.util.Random;
-import java.util.Set;
+import java.nio.file.Path;
+import java.util.Collection;
 import java.util.UUID;
-import java.util.concurrent.ConcurrentHashMap;
 
+/**
+ * Точка входа для генерации коротких кодов. Сами коды выдает текущий {@link SequenceCodeGenerator}:
+ * по умолчанию со случайным ключом в памяти, а после {@link #useSequenceFile} - с ключом и арендами
+ * номеров из файла последовательности.
+ */
 public class ShortCodeGenerator {
-    private static final String CHARACTERS =
-            "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789";
-    private static final int CODE_LENGTH = 8;
-    private static final int MAX_GENERATION_ATTEMPTS = 1000; // Увеличим количество попыток
-    private static final Random random = new Random();
+    private static volatile SequenceCodeGenerator generator = SequenceCodeGenerator.inMemory();
 
-    // Храним использованные коды с привязкой к пользователю: userId -> Set<shortCodes>
-    private static final ConcurrentHashMap<UUID, Set<String>> userUsedCodes =
-            new ConcurrentHashMap<>();
-
-    // Также храним глобально использованные коды для быстрой проверки уникальности
-    private static final Set<String> globalUsedCodes = ConcurrentHashMap.newKeySet();
-
-    public static void initializeWithExistingCodes(Set<String> existingCodes) {
-        globalUsedCodes.clear();
-        globalUsedCodes.addAll(existingCodes);
-        userUsedCodes.clear(); // При инициализации очищаем пользовательские коды
-        System.out.println("Загружено использованных кодов: " + globalUsedCodes.size());
+    /**
+     * Учитывает коды, уже лежащие в хранилище, чтобы генератор не выдал их повторно. Вызывается при
+     * загрузке хранилища, до выдачи кодов; коды нескольких хранилищ (шардов) накапливаются.
+     */
+    public static void initializeWithExistingCodes(Collection<String> existingCodes) {
+        SequenceCodeGenerator current = generator;
+        existingCodes.parallelStream().forEach(current::excludeExisting);
+        System.out.println("Загружено использованных кодов: " + existingCodes.size());
     }
 
-    public static String generateShortCode() {
-        StringBuilder sb = new StringBuilder(CODE_LENGTH);
-        for (int i = 0; i < CODE_LENGTH; i++) {
-            sb.append(CHARACTERS.charAt(random.nextInt(CHARACTERS.length())));
-        }
-        return sb.toString();
+    /** То же для одного кода: хранилище, которое обходит свои ссылки потоком, не копит их набор. */
+    public static void excludeExistingCode(String code) {
+        generator.excludeExisting(code);
     }
 
-    // Генерация уникального кода для конкретного пользователя
-    public static String generateUniqueShortCode(UUID userId) {
-        String code;
-        int attempts = 0;
-
-        do {
-            code = generateShortCode();
-            attempts++;
-            if (attempts > MAX_GENERATION_ATTEMPTS) {
-                throw new IllegalStateException(
-                        "Не удалось сгенерировать уникальный код после "
-                                + MAX_GENERATION_ATTEMPTS
-                                + " попыток");
-            }
-        } while (isCodeUsed(userId, code));
-
-        // Регистрируем код для пользователя и глобально
-        registerCode(userId, code);
-        return code;
+    /**
+     * Переключает генерацию на файл последовательности, создавая его при первом запуске. Вызывается
+     * до загрузки хранилища ссылок.
+     */
+    public static synchronized void useSequenceFile(Path file) {
+        replaceGenerator(SequenceCodeGenerator.open(file));
     }
 
-    // Проверка, используется ли код (учитываем пользователя)
-    private static boolean isCodeUsed(UUID userId, String code) {
-        // Проверяем глобальную уникальность
-        if (globalUsedCodes.contains(code)) {
-            return true;
-        }
-
-        // Проверяем, не использует ли этот пользователь уже этот код
-        Set<String> userCodes = userUsedCodes.get(userId);
-        return userCodes != null && userCodes.contains(code);
+    // Возвращает генератор к случайному ключу без файла; нужен тестам
+    static synchronized void useInMemorySequence() {
+        replaceGenerator(SequenceCodeGenerator.inMemory());
     }
 
-    // Регистрация кода для пользователя
-    private static void registerCode(UUID userId, String code) {
-        // Добавляем в глобальный набор
-        globalUsedCodes.add(code);
-
-        // Добавляем в набор пользователя
-        userUsedCodes.computeIfAbsent(userId, k -> ConcurrentHashMap.newKeySet()).add(code);
-    }
-
-    public static void releaseCode(String code) {
-        globalUsedCodes.remove(code);
-
-        // Удаляем код из всех пользовательских наборов
-        userUsedCodes.values().forEach(userCodes -> userCodes.remove(code));
+    private static void replaceGenerator(SequenceCodeGenerator replacement) {
+        SequenceCodeGenerator previous = generator;
+        generator = replacement;
+        previous.close();
     }
 
-    // Освобождение кода для конкретного пользователя
-    public static void releaseCodeForUser(UUID userId, String code) {
-        globalUsedCodes.remove(code);
-        Set<String> userCodes = userUsedCodes.get(userId);
-        if (userCodes != null) {
-            userCodes.remove(code);
-        }
-    }
-
-    public static int getGlobalUsedCodesCount() {
-        return globalUsedCodes.size();
-    }
-
-    public static int getUserUsedCodesCount(UUID userId) {
-        Set<String> userCodes = userUsedCodes.get(userId);
-        return userCodes != null ? userCodes.size() : 0;
+    // Генерация уникального кода для конкретного пользователя
+    public static String generateUniqueShortCode(UUID userId) {
+        return generator.nextCode();
     }
 
-    public static void clearUserCodes(UUID userId) {
-        Set<String> userCodes = userUsedCodes.remove(userId);
-        if (userCodes != null) {
-            globalUsedCodes.removeAll(userCodes);
-        }
+    static String codeForNumber(long number) {
+        return generator.codeForNumber(number);
     }
 
     public static void clearAllCodes() {
-        globalUsedCodes.clear();
-        userUsedCodes.clear();
-    }
-
-    public static Set<String> getGlobalUsedCodes() {
-        return Set.copyOf(globalUsedCodes);
-    }
-
-    public static Set<String> getUserUsedCodes(UUID userId) {
-        Set<String> userCodes = userUsedCodes.get(userId);
-        return userCodes != null ? Set.copyOf(userCodes) : Set.of();
+        generator.clearExcluded();
     }
 }
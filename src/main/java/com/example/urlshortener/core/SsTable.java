@@ -0,0 +1,324 @@
+package com.example.urlshortener.core;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.*;
+import java.util.zip.CRC32;
+
+/**
+ * Неизменяемый файл ссылок, отсортированных по короткому коду (SSTable), для {@link
+ * LsmLinkRepository}.
+ *
+ * <p>Формат: записи по возрастанию кода [код 8 байт][тип 1 байт][длина int][запись LinkCodec],
+ * затем разреженный индекс (код и смещение каждой INDEX_INTERVAL-й записи), фильтр Блума и подвал:
+ * смещения индекса и фильтра, число записей, первый и последний код, CRC32 индекса и фильтра,
+ * версия и магическое число. Файл отображается в память целиком.
+ */
+final class SsTable {
+    // Метка удаления: ссылка удалена, более старые версии в нижних уровнях не действуют
+    static final Link TOMBSTONE = new Link("", "", new UUID(0, 0), 0, Instant.EPOCH);
+
+    private static final int MAGIC = 0x4C535354; // "LSST"
+    private static final byte VERSION = 1;
+    private static final byte TYPE_PUT = 0;
+    private static final byte TYPE_TOMBSTONE = 1;
+    private static final int RECORD_HEADER_SIZE = LinkCodec.SHORT_CODE_BYTES + 1 + 4;
+    private static final int INDEX_INTERVAL = 32;
+    private static final int FOOTER_SIZE = 8 + 8 + 4 + LinkCodec.SHORT_CODE_BYTES * 2 + 4 + 1 + 4;
+    private static final int BUFFER_SIZE = 256 * 1024;
+
+    private final Path file;
+    private final long number;
+    private final MappedByteBuffer data;
+    private final int dataEnd;
+    private final String[] indexKeys;
+    private final int[] indexOffsets;
+    private final BloomFilter bloom;
+    private final int recordCount;
+    private final String firstKey;
+    private final String lastKey;
+
+    private SsTable(
+            Path file,
+            long number,
+            MappedByteBuffer data,
+            int dataEnd,
+            String[] indexKeys,
+            int[] indexOffsets,
+            BloomFilter bloom,
+            int recordCount,
+            String firstKey,
+            String lastKey) {
+        this.file = file;
+        this.number = number;
+        this.data = data;
+        this.dataEnd = dataEnd;
+        this.indexKeys = indexKeys;
+        this.indexOffsets = indexOffsets;
+        this.bloom = bloom;
+        this.recordCount = recordCount;
+        this.firstKey = firstKey;
+        this.lastKey = lastKey;
+    }
+
+    static SsTable open(Path file, long number) throws IOException {
+        MappedByteBuffer data;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (channel.size() < FOOTER_SIZE || channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("Некорректный размер SSTable " + file.getFileName());
+            }
+            data = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        ByteBuffer footer = data.duplicate().position(data.capacity() - FOOTER_SIZE);
+        long indexOffset = footer.getLong();
+        long bloomOffset = footer.getLong();
+        int recordCount = footer.getInt();
+        String firstKey = LinkCodec.readShortCode(footer);
+        String lastKey = LinkCodec.readShortCode(footer);
+        int checksum = footer.getInt();
+        byte version = footer.get();
+        if (footer.getInt() != MAGIC || version != VERSION) {
+            throw new IOException("Неизвестный формат SSTable " + file.getFileName());
+        }
+
+        ByteBuffer meta =
+                data.slice((int) indexOffset, data.capacity() - FOOTER_SIZE - (int) indexOffset);
+        CRC32 crc = new CRC32();
+        crc.update(meta.duplicate());
+        if ((int) crc.getValue() != checksum) {
+            throw new IOException("Контрольная сумма SSTable не совпадает: " + file.getFileName());
+        }
+        int indexCount = meta.getInt();
+        String[] indexKeys = new String[indexCount];
+        int[] indexOffsets = new int[indexCount];
+        for (int i = 0; i < indexCount; i++) {
+            indexKeys[i] = LinkCodec.readShortCode(meta);
+            indexOffsets[i] = meta.getInt();
+        }
+        meta.position((int) (bloomOffset - indexOffset));
+        BloomFilter bloom = BloomFilter.readFrom(meta);
+        return new SsTable(
+                file,
+                number,
+                data,
+                (int) indexOffset,
+                indexKeys,
+                indexOffsets,
+                bloom,
+                recordCount,
+                firstKey,
+                lastKey);
+    }
+
+    /** Возвращает ссылку, {@link #TOMBSTONE} или null, если кода в файле нет. */
+    Link get(String shortCode) {
+        if (recordCount == 0
+                || shortCode.compareTo(firstKey) < 0
+                || shortCode.compareTo(lastKey) > 0
+                || !bloom.mightContain(shortCode)) {
+            return null;
+        }
+        int block = Arrays.binarySearch(indexKeys, shortCode);
+        if (block < 0) {
+            block = -block - 2; // Последняя точка индекса с кодом меньше искомого
+        }
+        ByteBuffer in = data.duplicate().position(indexOffsets[block]);
+        for (int i = 0; i < INDEX_INTERVAL && in.position() < dataEnd; i++) {
+            String code = LinkCodec.readShortCode(in);
+            byte type = in.get();
+            int length = in.getInt();
+            int cmp = code.compareTo(shortCode);
+            if (cmp == 0) {
+                return readValue(type, in, length);
+            }
+            if (cmp > 0) {
+                return null;
+            }
+            in.position(in.position() + length);
+        }
+        return null;
+    }
+
+    /** Все записи файла по возрастанию кода, включая метки удаления. */
+    Iterator<Map.Entry<String, Link>> iterator() {
+        ByteBuffer in = data.duplicate().position(0);
+        return new Iterator<>() {
+            @Override
+            public boolean hasNext() {
+                return in.position() < dataEnd;
+            }
+
+            @Override
+            public Map.Entry<String, Link> next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                String code = LinkCodec.readShortCode(in);
+                byte type = in.get();
+                int length = in.getInt();
+                Link value = readValue(type, in, length);
+                in.position(in.position() + length);
+                return new AbstractMap.SimpleImmutableEntry<>(code, value);
+            }
+        };
+    }
+
+    private Link readValue(byte type, ByteBuffer in, int length) {
+        if (type == TYPE_TOMBSTONE) {
+            return TOMBSTONE;
+        }
+        return LinkCodec.decode(data.slice(in.position(), length));
+    }
+
+    Path getFile() {
+        return file;
+    }
+
+    long getNumber() {
+        return number;
+    }
+
+    long getSizeBytes() {
+        return data.capacity();
+    }
+
+    int getRecordCount() {
+        return recordCount;
+    }
+
+    String getFirstKey() {
+        return firstKey;
+    }
+
+    String getLastKey() {
+        return lastKey;
+    }
+
+    boolean overlaps(String first, String last) {
+        return recordCount > 0 && firstKey.compareTo(last) <= 0 && lastKey.compareTo(first) >= 0;
+    }
+
+    /** Пишет SSTable во временный файл и по завершении атомарно переименовывает его. */
+    static final class Writer {
+        private final Path file;
+        private final long number;
+        private final Path tempFile;
+        private final FileChannel channel;
+        private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        private final BloomFilter bloom;
+        private final List<String> indexKeys = new ArrayList<>();
+        private final List<Integer> indexOffsets = new ArrayList<>();
+        private long position;
+        private int recordCount;
+        private String firstKey = "";
+        private String lastKey = "";
+
+        Writer(Path file, long number, int expectedKeys) throws IOException {
+            this.file = file;
+            this.number = number;
+            this.tempFile = file.resolveSibling(file.getFileName() + ".tmp");
+            this.channel =
+                    FileChannel.open(
+                            tempFile,
+                            StandardOpenOption.CREATE,
+                            StandardOpenOption.WRITE,
+                            StandardOpenOption.TRUNCATE_EXISTING);
+            this.bloom = BloomFilter.forKeys(expectedKeys);
+        }
+
+        // Коды должны идти строго по возрастанию
+        void add(String shortCode, Link link) throws IOException {
+            boolean tombstone = link == TOMBSTONE;
+            int length = tombstone ? 0 : LinkCodec.encodedSize(link);
+            if (buffer.remaining() < RECORD_HEADER_SIZE + length) {
+                flush();
+            }
+            if (recordCount % INDEX_INTERVAL == 0) {
+                indexKeys.add(shortCode);
+                indexOffsets.add((int) (position + buffer.position()));
+            }
+            if (recordCount == 0) {
+                firstKey = shortCode;
+            }
+            lastKey = shortCode;
+            LinkCodec.writeShortCode(shortCode, buffer);
+            buffer.put(tombstone ? TYPE_TOMBSTONE : TYPE_PUT).putInt(length);
+            if (!tombstone) {
+                LinkCodec.encode(link, buffer);
+            }
+            bloom.add(shortCode);
+            recordCount++;
+        }
+
+        long getSizeBytes() {
+            return position + buffer.position();
+        }
+
+        int getRecordCount() {
+            return recordCount;
+        }
+
+        SsTable finish() throws IOException {
+            try {
+                flush();
+                long indexOffset = position;
+                int indexSize = 4 + indexKeys.size() * (LinkCodec.SHORT_CODE_BYTES + 4);
+                ByteBuffer meta = ByteBuffer.allocate(indexSize + bloom.serializedSize());
+                meta.putInt(indexKeys.size());
+                for (int i = 0; i < indexKeys.size(); i++) {
+                    LinkCodec.writeShortCode(indexKeys.get(i), meta);
+                    meta.putInt(indexOffsets.get(i));
+                }
+                bloom.writeTo(meta);
+                meta.flip();
+                CRC32 crc = new CRC32();
+                crc.update(meta.duplicate());
+                writeFully(meta);
+
+                ByteBuffer footer = ByteBuffer.allocate(FOOTER_SIZE);
+                footer.putLong(indexOffset).putLong(indexOffset + indexSize).putInt(recordCount);
+                LinkCodec.writeShortCode(firstKey, footer);
+                LinkCodec.writeShortCode(lastKey, footer);
+                footer.putInt((int) crc.getValue()).put(VERSION).putInt(MAGIC).flip();
+                writeFully(footer);
+                channel.force(true);
+            } finally {
+                channel.close();
+            }
+            Files.move(
+                    tempFile,
+                    file,
+                    StandardCopyOption.ATOMIC_MOVE,
+                    StandardCopyOption.REPLACE_EXISTING);
+            return open(file, number);
+        }
+
+        void abort() {
+            try {
+                channel.close();
+                Files.deleteIfExists(tempFile);
+            } catch (IOException e) {
+                System.err.println("Не удалось удалить незаконченный SSTable: " + e.getMessage());
+            }
+        }
+
+        private void flush() throws IOException {
+            buffer.flip();
+            writeFully(buffer);
+            buffer.clear();
+        }
+
+        private void writeFully(ByteBuffer source) throws IOException {
+            while (source.hasRemaining()) {
+                position += channel.write(source);
+            }
+        }
+    }
+}
@@ -0,0 +1,8 @@
+package com.example.urlshortener.core;
+
+public enum StorageBackend {
+    FILE, // Снимок links.dat + журнал изменений + clicks.dat
+    MEMORY, // Только в памяти, без сохранения между запусками
+    LSM, // LSM-дерево на диске, в памяти только свежие изменения и горячие ссылки
+    SHARDED // Несколько независимых файловых хранилищ, разбитых по хешу кода
+}
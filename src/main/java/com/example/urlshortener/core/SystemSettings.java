@@ -1,19 +1,48 @@
 package com.example.urlshortener.core;
 
 import java.io.*;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.Properties;
 
 public class SystemSettings {
     private static final String SETTINGS_FILE = "system_settings.properties";
+
+    // Значения по умолчанию для настроек хранилища ссылок
+    private static final long DEFAULT_SNAPSHOT_INTERVAL_SECONDS = 300;
+    private static final long DEFAULT_LOG_SEGMENT_MAX_BYTES = 4L * 1024 * 1024;
+    private static final DurabilityMode DEFAULT_DURABILITY = DurabilityMode.GROUP;
+    private static final long DEFAULT_GROUP_COMMIT_MAX_DELAY_MILLIS = 5;
+    private static final long DEFAULT_GROUP_COMMIT_MAX_RECORDS = 256;
+    private static final long DEFAULT_CLICK_FLUSH_INTERVAL_MILLIS = 1000;
+    private static final long DEFAULT_CLICK_FLUSH_MAX_PENDING = 10_000;
+    private static final long DEFAULT_CLEANUP_INTERVAL_MILLIS = 1000;
+    private static final StorageBackend DEFAULT_STORAGE_BACKEND = StorageBackend.FILE;
+    private static final long DEFAULT_LSM_MEMTABLE_MAX_BYTES = 4L * 1024 * 1024;
+    private static final long DEFAULT_LSM_TABLE_MAX_BYTES = 8L * 1024 * 1024;
+    private static final long DEFAULT_LSM_CACHE_MAX_LINKS = 100_000;
+    private static final long DEFAULT_SHARD_COUNT = 4;
+    private static final long DEFAULT_REDIRECT_CACHE_MAX_LINKS = 10_000;
+    private static final long DEFAULT_HTTP_PORT = 8080;
+    private static final HttpEngine DEFAULT_HTTP_ENGINE = HttpEngine.VIRTUAL;
+    private static final long DEFAULT_ADMISSION_MAX_LIMIT = 1000;
+    private static final long DEFAULT_ADMISSION_QUEUE_TIMEOUT_MILLIS = 50;
+
+    private final File settingsFile;
     private final Properties properties;
 
     public SystemSettings() {
+        this(Paths.get(SETTINGS_FILE));
+    }
+
+    public SystemSettings(Path settingsFile) {
+        this.settingsFile = settingsFile.toFile();
         properties = new Properties();
         loadSettings();
     }
 
     private void loadSettings() {
-        try (InputStream input = new FileInputStream(SETTINGS_FILE)) {
+        try (InputStream input = new FileInputStream(settingsFile)) {
             properties.load(input);
         } catch (FileNotFoundException e) {
             // Файл не существует - используем значения по умолчанию
@@ -28,10 +57,34 @@ public class SystemSettings {
     private void setDefaultValues() {
         properties.setProperty("default.click.limit", "10");
         properties.setProperty("link.ttl.seconds", "600");
+        properties.setProperty(
+                "link.snapshot.interval.seconds",
+                String.valueOf(DEFAULT_SNAPSHOT_INTERVAL_SECONDS));
+        properties.setProperty(
+                "link.log.segment.max.bytes", String.valueOf(DEFAULT_LOG_SEGMENT_MAX_BYTES));
+        properties.setProperty("link.storage.backend", DEFAULT_STORAGE_BACKEND.name());
+        properties.setProperty(
+                "lsm.memtable.max.bytes", String.valueOf(DEFAULT_LSM_MEMTABLE_MAX_BYTES));
+        properties.setProperty("lsm.table.max.bytes", String.valueOf(DEFAULT_LSM_TABLE_MAX_BYTES));
+        properties.setProperty("lsm.cache.max.links", String.valueOf(DEFAULT_LSM_CACHE_MAX_LINKS));
+        properties.setProperty("link.shard.count", String.valueOf(DEFAULT_SHARD_COUNT));
+        properties.setProperty("link.durability", DEFAULT_DURABILITY.name());
+        properties.setProperty(
+                "link.group.commit.max.delay.millis",
+                String.valueOf(DEFAULT_GROUP_COMMIT_MAX_DELAY_MILLIS));
+        properties.setProperty(
+                "link.group.commit.max.records", String.valueOf(DEFAULT_GROUP_COMMIT_MAX_RECORDS));
+        properties.setProperty(
+                "link.clicks.flush.interval.millis",
+                String.valueOf(DEFAULT_CLICK_FLUSH_INTERVAL_MILLIS));
+        properties.setProperty(
+                "link.clicks.flush.max.pending", String.valueOf(DEFAULT_CLICK_FLUSH_MAX_PENDING));
+        properties.setProperty(
+                "link.cleanup.interval.millis", String.valueOf(DEFAULT_CLEANUP_INTERVAL_MILLIS));
     }
 
     private void saveSettings() {
-        try (OutputStream output = new FileOutputStream(SETTINGS_FILE)) {
+        try (OutputStream output = new FileOutputStream(settingsFile)) {
             properties.store(output, "System Settings for URL Shortener");
         } catch (IOException e) {
             System.err.println("Ошибка сохранения настроек: " + e.getMessage());
@@ -47,6 +100,110 @@ public class SystemSettings {
         return Long.parseLong(properties.getProperty("link.ttl.seconds"));
     }
 
+    // Как часто фоновый поток пишет снимок links.dat
+    public long getSnapshotIntervalSeconds() {
+        return getLong("link.snapshot.interval.seconds", DEFAULT_SNAPSHOT_INTERVAL_SECONDS);
+    }
+
+    // Размер сегмента журнала, при котором снимок пишется досрочно
+    public long getLogSegmentMaxBytes() {
+        return getLong("link.log.segment.max.bytes", DEFAULT_LOG_SEGMENT_MAX_BYTES);
+    }
+
+    // Реализация хранилища ссылок: FILE, MEMORY, LSM или SHARDED
+    public StorageBackend getStorageBackend() {
+        String value = properties.getProperty("link.storage.backend");
+        return value != null
+                ? StorageBackend.valueOf(value.trim().toUpperCase())
+                : DEFAULT_STORAGE_BACKEND;
+    }
+
+    // При каком объеме изменений в памяти LSM-хранилище сбрасывает их в новый SSTable
+    public long getLsmMemtableMaxBytes() {
+        return getLong("lsm.memtable.max.bytes", DEFAULT_LSM_MEMTABLE_MAX_BYTES);
+    }
+
+    // Предельный размер одного SSTable после уплотнения
+    public long getLsmTableMaxBytes() {
+        return getLong("lsm.table.max.bytes", DEFAULT_LSM_TABLE_MAX_BYTES);
+    }
+
+    // Сколько горячих ссылок LSM-хранилище держит в памяти
+    public int getLsmCacheMaxLinks() {
+        return (int) getLong("lsm.cache.max.links", DEFAULT_LSM_CACHE_MAX_LINKS);
+    }
+
+    // На сколько шардов делится хранилище SHARDED; менять только вместе с --rebalance-shards
+    public int getShardCount() {
+        return (int) getLong("link.shard.count", DEFAULT_SHARD_COUNT);
+    }
+
+    // Порт HTTP-сервера переходов в режиме --serve
+    public int getHttpPort() {
+        return (int) getLong("http.port", DEFAULT_HTTP_PORT);
+    }
+
+    // Чем обслуживать переходы в режиме --serve: VIRTUAL или NIO
+    public HttpEngine getHttpEngine() {
+        String value = properties.getProperty("http.engine");
+        return value != null ? HttpEngine.valueOf(value.trim().toUpperCase()) : DEFAULT_HTTP_ENGINE;
+    }
+
+    // Верхняя граница адаптивного лимита одновременных переходов и созданий ссылок
+    public int getAdmissionMaxLimit() {
+        return (int) getLong("admission.limit.max", DEFAULT_ADMISSION_MAX_LIMIT);
+    }
+
+    // Сколько операция ждет места в очереди, прежде чем получить отказ с 503
+    public long getAdmissionQueueTimeoutMillis() {
+        return getLong("admission.queue.timeout.millis", DEFAULT_ADMISSION_QUEUE_TIMEOUT_MILLIS);
+    }
+
+    // Сколько ссылок кэш переходов держит перед хранилищем
+    public int getRedirectCacheMaxLinks() {
+        return (int) getLong("redirect.cache.max.links", DEFAULT_REDIRECT_CACHE_MAX_LINKS);
+    }
+
+    // Как часто удалять просроченные ссылки; очистка берет только наступившие сроки из индекса
+    public long getCleanupIntervalMillis() {
+        return getLong("link.cleanup.interval.millis", DEFAULT_CLEANUP_INTERVAL_MILLIS);
+    }
+
+    // Когда изменение ссылки считается сохраненным: SYNC, GROUP или ASYNC
+    public DurabilityMode getDurabilityMode() {
+        String value = properties.getProperty("link.durability");
+        return value != null
+                ? DurabilityMode.valueOf(value.trim().toUpperCase())
+                : DEFAULT_DURABILITY;
+    }
+
+    // Окно группового коммита: сколько ждать соседних записей перед fsync
+    public long getGroupCommitMaxDelayMillis() {
+        return getLong("link.group.commit.max.delay.millis", DEFAULT_GROUP_COMMIT_MAX_DELAY_MILLIS);
+    }
+
+    // Сколько записей сбрасывать одним fsync, не дожидаясь конца окна
+    public int getGroupCommitMaxRecords() {
+        return (int) getLong("link.group.commit.max.records", DEFAULT_GROUP_COMMIT_MAX_RECORDS);
+    }
+
+    // Как часто сбрасывать на диск счетчики переходов: clicks.dat или журнал переходов LSM.
+    // Столько переходов теряется при сбое
+    public long getClickFlushIntervalMillis() {
+        return getLong("link.clicks.flush.interval.millis", DEFAULT_CLICK_FLUSH_INTERVAL_MILLIS);
+    }
+
+    // После скольких переходов журнал переходов пишется досрочно, не дожидаясь интервала
+    public int getClickFlushMaxPending() {
+        return (int) getLong("link.clicks.flush.max.pending", DEFAULT_CLICK_FLUSH_MAX_PENDING);
+    }
+
+    // Настройки, которых нет в старых файлах, берутся по умолчанию
+    private long getLong(String key, long defaultValue) {
+        String value = properties.getProperty(key);
+        return value != null ? Long.parseLong(value.trim()) : defaultValue;
+    }
+
     // Сеттеры
     public void setDefaultClickLimit(int limit) {
         properties.setProperty("default.click.limit", String.valueOf(limit));
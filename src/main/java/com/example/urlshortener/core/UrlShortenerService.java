@@ -5,20 +5,45 @@ import java.util.List;
 import java.util.UUID;
 
 public class UrlShortenerService {
-    private final FileLinkRepository repository;
+    private static final int MAX_PAGE_SIZE = 1000;
+
+    private final LinkRepository repository;
     private final SystemSettings systemSettings;
+    private final InactiveLinkTracker inactiveLinkTracker = new InactiveLinkTracker();
+    private final RedirectCache redirectCache;
+    private final ConcurrencyLimiter limiter;
 
-    public UrlShortenerService(FileLinkRepository repository, SystemSettings systemSettings) {
+    public UrlShortenerService(LinkRepository repository, SystemSettings systemSettings) {
         this.repository = repository;
         this.systemSettings = systemSettings;
+        this.redirectCache = new RedirectCache(systemSettings.getRedirectCacheMaxLinks());
+        this.limiter =
+                new ConcurrencyLimiter(
+                        systemSettings.getAdmissionMaxLimit(),
+                        systemSettings.getAdmissionQueueTimeoutMillis());
     }
 
     public String createShortLink(String originalUrl, UUID ownerId) {
+        return createShortLink(originalUrl, ownerId, false);
+    }
+
+    // Постоянная ссылка создается без лимита переходов и отвечает 301 с кэшированием.
+    // Под перегрузкой бросает ServiceOverloadedException
+    public String createShortLink(String originalUrl, UUID ownerId, boolean permanent) {
         // Явная валидация URL перед созданием ссылки
         if (originalUrl == null || originalUrl.trim().isEmpty()) {
             throw new IllegalArgumentException("URL не может быть пустым");
         }
 
+        long startNanos = limiter.acquire(ConcurrencyLimiter.Kind.CREATE);
+        try {
+            return create(originalUrl, ownerId, permanent);
+        } finally {
+            limiter.release(ConcurrencyLimiter.Kind.CREATE, startNanos);
+        }
+    }
+
+    private String create(String originalUrl, UUID ownerId, boolean permanent) {
         try {
             UrlValidator.validateUrl(originalUrl);
         } catch (IllegalArgumentException e) {
@@ -33,28 +58,95 @@ public class UrlShortenerService {
                         originalUrl,
                         shortCode,
                         ownerId,
-                        systemSettings.getDefaultClickLimit(),
-                        expirationTime);
+                        permanent ? Link.NO_CLICK_LIMIT : systemSettings.getDefaultClickLimit(),
+                        expirationTime,
+                        permanent);
 
         repository.save(newLink);
+        redirectCache.invalidate(shortCode);
         return shortCode;
     }
 
     public String handleRedirect(String shortCode) {
-        Link link =
-                repository
-                        .findByShortCode(shortCode)
-                        .orElseThrow(() -> new LinkNotFoundException("Ссылка не найдена"));
-
-        if (!LinkValidator.isLinkActive(link)) {
-            throw new LinkNotActiveException(
-                    "Ссылка неактивна (истек срок или превышен лимит переходов)");
+        RedirectResult result = resolveRedirect(shortCode);
+        switch (result.getStatus()) {
+            case NOT_FOUND:
+                throw new LinkNotFoundException("Ссылка не найдена");
+            case INACTIVE:
+                throw new LinkNotActiveException(
+                        "Ссылка неактивна (истек срок или превышен лимит переходов)");
+            default:
+                return result.getOriginalUrl();
+        }
+    }
+
+    // То же, что handleRedirect, но промах и неактивная ссылка возвращаются без исключений.
+    // Под перегрузкой бросает ServiceOverloadedException
+    public RedirectResult resolveRedirect(String shortCode) {
+        long startNanos = limiter.acquire(ConcurrencyLimiter.Kind.REDIRECT);
+        try {
+            return resolve(shortCode);
+        } finally {
+            limiter.release(ConcurrencyLimiter.Kind.REDIRECT, startNanos);
+        }
+    }
+
+    // То же, что resolveRedirect, но без ожидания в очереди ограничителя: поток цикла событий
+    // не паркуется, а при отсутствии места сразу получает ServiceOverloadedException
+    public RedirectResult tryResolveRedirect(String shortCode) {
+        long startNanos = limiter.tryAcquire(ConcurrencyLimiter.Kind.REDIRECT);
+        try {
+            return resolve(shortCode);
+        } finally {
+            limiter.release(ConcurrencyLimiter.Kind.REDIRECT, startNanos);
+        }
+    }
+
+    // Каким был бы переход, без самого перехода: HEAD-запросы ботов и превью не тратят лимит
+    public RedirectResult peekRedirect(String shortCode) {
+        RedirectCache.Entry entry = redirectCache.get(shortCode);
+        Link link = entry != null ? entry.link : repository.findByShortCode(shortCode).orElse(null);
+        if (link == null) {
+            return RedirectResult.NOT_FOUND;
         }
+        return LinkValidator.isLinkActive(link) ? link.redirectResult() : RedirectResult.INACTIVE;
+    }
 
-        link.incrementClicks();
+    private RedirectResult resolve(String shortCode) {
+        RedirectCache.Entry entry = redirectCache.get(shortCode);
+        if (entry == null) {
+            Link link = repository.findByShortCode(shortCode).orElse(null);
+            if (link == null) {
+                return RedirectResult.NOT_FOUND;
+            }
+            entry = redirectCache.put(link);
+        }
+        if (!Instant.now().isBefore(entry.getExpirationTime())) {
+            redirectCache.invalidate(shortCode);
+            return RedirectResult.INACTIVE;
+        }
+        // Лимит проверяется вместе с увеличением счетчика, а не отдельно перед ним
+        Link link = entry.link;
+        int clicks = link.tryConsumeClick();
+        if (clicks < 0 || clicks == entry.getClickLimit()) {
+            // Исчерпанная ссылка больше не занимает место горячих
+            redirectCache.invalidate(shortCode);
+        }
+        if (clicks < 0) {
+            return RedirectResult.INACTIVE;
+        }
+        inactiveLinkTracker.onClick(link, clicks);
+
+        repository.recordClick(link);
+        return link.redirectResult();
+    }
+
+    public RedirectCache.Stats getRedirectCacheStats() {
+        return redirectCache.getStats();
+    }
 
-        repository.save(link);
-        return link.getOriginalUrl();
+    public ConcurrencyLimiter.Stats getAdmissionStats() {
+        return limiter.getStats();
     }
 
     public List<Link> getInactiveLinks(UUID ownerId) {
@@ -63,10 +155,36 @@ public class UrlShortenerService {
                 .collect(java.util.stream.Collectors.toList());
     }
 
+    // Новые уведомления о ссылках владельца, ставших неактивными с прошлой проверки
+    public List<InactiveLinkTracker.Event> pollNotifications(UUID ownerId) {
+        return inactiveLinkTracker.drain(ownerId);
+    }
+
+    // Удаляет просроченные ссылки и сообщает о них владельцам
+    public int removeExpiredLinks() {
+        List<Link> removed = repository.removeExpiredLinks();
+        removed.forEach(link -> redirectCache.invalidate(link.getShortCode()));
+        inactiveLinkTracker.onExpired(removed);
+        return removed.size();
+    }
+
     public List<Link> getAllUserLinks(UUID ownerId) {
         return repository.findByOwnerId(ownerId);
     }
 
+    public LinkPage getUserLinksPage(
+            UUID ownerId, LinkSort sort, LinkFilter filter, String cursor, int pageSize) {
+        if (pageSize <= 0 || pageSize > MAX_PAGE_SIZE) {
+            throw new IllegalArgumentException(
+                    "Размер страницы должен быть от 1 до " + MAX_PAGE_SIZE);
+        }
+        return repository.findPageByOwnerId(ownerId, sort, filter, cursor, pageSize);
+    }
+
+    public int countUserLinks(UUID ownerId) {
+        return repository.countByOwnerId(ownerId);
+    }
+
     public void updateDefaultClickLimit(int newLimit) {
         if (newLimit <= 0) {
             throw new IllegalArgumentException("Лимит переходов должен быть положительным числом");
@@ -8,6 +8,11 @@ public class UserRepository {
     private final Map<String, UserCredentials> usersByUsername = new ConcurrentHashMap<>();
     private final Map<UUID, UserCredentials> usersById = new ConcurrentHashMap<>();
     private static final String USERS_FILE = "users.dat";
+    // Из users.dat разрешено десериализовать только карту учетных записей
+    private static final String USERS_FILTER =
+            "maxdepth=10;java.util.concurrent.ConcurrentHashMap*;java.util.concurrent.locks.*;"
+                    + "java.util.UUID;java.lang.*;com.example.urlshortener.core.UserCredentials;"
+                    + "com.example.urlshortener.core.UserRole;!*";
 
     public UserRepository() {
         loadUsersFromFile();
@@ -21,6 +26,7 @@ public class UserRepository {
         if (!file.exists()) return;
 
         try (ObjectInputStream ois = new ObjectInputStream(new FileInputStream(file))) {
+            ois.setObjectInputFilter(ObjectInputFilter.Config.createFilter(USERS_FILTER));
             @SuppressWarnings("unchecked")
             Map<String, UserCredentials> loadedUsers =
                     (Map<String, UserCredentials>) ois.readObject();
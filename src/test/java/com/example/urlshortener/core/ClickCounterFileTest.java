@@ -0,0 +1,141 @@
+package com.example.urlshortener.core;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.List;
+import java.util.UUID;
+
+class ClickCounterFileTest {
+    @TempDir Path dataDir;
+
+    private Link newLink(String shortCode) {
+        return new Link(
+                "https://example.com/" + shortCode,
+                shortCode,
+                UUID.randomUUID(),
+                100,
+                Instant.now().plusSeconds(3600));
+    }
+
+    @Test
+    void testClicksSurviveRestartWithoutLogRecords() {
+        FileLinkRepository repository = new FileLinkRepository(dataDir);
+        Link link = newLink("mapped01");
+        repository.save(link);
+        long logSizeAfterSave = logSize();
+        for (int i = 0; i < 5; i++) {
+            link.incrementClicks();
+            repository.recordClick(link);
+        }
+        // Переходы не пишутся в журнал, только в clicks.dat
+        assertEquals(logSizeAfterSave, logSize());
+        repository.close();
+
+        FileLinkRepository reopened = new FileLinkRepository(dataDir);
+        assertEquals(5, reopened.findByShortCode("mapped01").orElseThrow().getCurrentClicks());
+        reopened.close();
+    }
+
+    @Test
+    void testSecondOpenOfSameFileIsRejected() {
+        Path file = dataDir.resolve("clicks.dat");
+        ClickCounterFile counters = ClickCounterFile.open(file, 1000);
+        assertNotNull(counters);
+        assertNull(ClickCounterFile.open(file, 1000));
+        counters.close();
+
+        ClickCounterFile reopened = ClickCounterFile.open(file, 1000);
+        assertNotNull(reopened);
+        reopened.close();
+    }
+
+    @Test
+    void testReleasedSlotIsReusedAfterQuarantineAndValueStaysInLink() {
+        Path file = dataDir.resolve("clicks.dat");
+        ClickCounterFile counters = ClickCounterFile.open(file, 60_000);
+        Link first = newLink("first001");
+        counters.attach(first);
+        first.incrementClicks();
+        first.incrementClicks();
+        counters.release(first);
+        assertEquals(2, first.getCurrentClicks());
+
+        // Слот первой ссылки еще в карантине: запоздалый переход не попадет во вторую ссылку
+        Link second = newLink("second01");
+        counters.attach(second);
+        assertEquals(0, second.getCurrentClicks());
+        second.incrementClicks();
+        assertEquals(1, second.getCurrentClicks());
+        assertEquals(2, first.getCurrentClicks());
+        assertEquals(2, counters.getSlotCount());
+
+        // Через два тика сброса слот снова выдается
+        counters.recycleReleasedSlots();
+        counters.attach(newLink("third001"));
+        assertEquals(3, counters.getSlotCount());
+        counters.recycleReleasedSlots();
+        counters.attach(newLink("fourth01"));
+        assertEquals(3, counters.getSlotCount());
+        counters.close();
+
+        // В файле остался только слот второй ссылки
+        ClickCounterFile reopened = ClickCounterFile.open(file, 1000);
+        Link restored = newLink("second01");
+        Link stale = newLink("first001");
+        reopened.attachAll(List.of(restored, stale));
+        assertEquals(1, restored.getCurrentClicks());
+        assertEquals(0, stale.getCurrentClicks());
+        reopened.close();
+    }
+
+    @Test
+    void testResavedLinkDoesNotLeakSlot() {
+        FileLinkRepository repository = new FileLinkRepository(dataDir);
+        Link original = newLink("resaved1");
+        repository.save(original);
+        original.incrementClicks();
+        original.incrementClicks();
+        Link replacement = newLink("resaved1");
+        repository.save(replacement);
+        replacement.incrementClicks();
+        repository.close();
+
+        ClickCounterFile counters = ClickCounterFile.open(dataDir.resolve("clicks.dat"), 1000);
+        assertEquals(1, counters.getUsedSlotCount());
+        counters.close();
+        FileLinkRepository reopened = new FileLinkRepository(dataDir);
+        assertEquals(1, reopened.findByShortCode("resaved1").orElseThrow().getCurrentClicks());
+        reopened.close();
+    }
+
+    @Test
+    void testDuplicateSlotsOfOneCodeAreClearedOnAttach() {
+        Path file = dataDir.resolve("clicks.dat");
+        ClickCounterFile counters = ClickCounterFile.open(file, 1000);
+        // Так выглядел файл, когда замененная ссылка не освобождала слот
+        counters.attach(newLink("twice001"));
+        counters.attach(newLink("twice001"));
+        counters.close();
+
+        ClickCounterFile reopened = ClickCounterFile.open(file, 1000);
+        reopened.attachAll(List.of(newLink("twice001")));
+        assertEquals(1, reopened.getUsedSlotCount());
+        reopened.close();
+    }
+
+    private long logSize() {
+        try (var segments = Files.list(dataDir)) {
+            return segments.filter(path -> path.getFileName().toString().startsWith("links-"))
+                    .mapToLong(path -> path.toFile().length())
+                    .sum();
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
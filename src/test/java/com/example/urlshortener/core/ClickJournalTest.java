@@ -0,0 +1,111 @@
+package com.example.urlshortener.core;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+class ClickJournalTest {
+    @TempDir Path dataDir;
+
+    private Link newLink(String shortCode) {
+        return new Link(
+                "https://example.com/" + shortCode,
+                shortCode,
+                UUID.randomUUID(),
+                100,
+                Instant.now().plusSeconds(600));
+    }
+
+    private Map<String, Integer> replay() {
+        Map<String, Integer> clicks = new HashMap<>();
+        ClickJournal journal = new ClickJournal(dataDir, 60_000, 1000);
+        journal.replay((code, value) -> clicks.merge(code, value, Math::max));
+        journal.close();
+        return clicks;
+    }
+
+    @Test
+    void testThresholdFlushesPendingClicks() throws InterruptedException {
+        // Интервал больше времени теста - пишет только досрочный сброс по порогу
+        ClickJournal journal = new ClickJournal(dataDir, 60_000, 5);
+        Link link = newLink("thresh01");
+        for (int i = 0; i < 5; i++) {
+            link.incrementClicks();
+            journal.record(link);
+        }
+        for (int i = 0; i < 100 && journal.getPendingLinkCount() > 0; i++) {
+            Thread.sleep(20);
+        }
+        assertEquals(0, journal.getPendingLinkCount());
+        assertTrue(journal.getSizeBytes() > 0);
+        journal.close();
+
+        assertEquals(Map.of("thresh01", 5), replay());
+    }
+
+    @Test
+    void testOnlyLatestCounterIsKeptPerLink() throws IOException {
+        ClickJournal journal = new ClickJournal(dataDir, 60_000, 1000);
+        Link first = newLink("first001");
+        Link second = newLink("second01");
+        for (int i = 0; i < 300; i++) {
+            first.incrementClicks();
+            journal.record(first);
+        }
+        second.incrementClicks();
+        journal.record(second);
+        long before = journal.getSizeBytes();
+        journal.flush();
+
+        // Одна пачка: заголовок и по записи на ссылку, а не на переход
+        assertEquals(8 + 2 * 12, journal.getSizeBytes() - before);
+        journal.close();
+
+        assertEquals(Map.of("first001", 300, "second01", 1), replay());
+    }
+
+    @Test
+    void testTornTailIsIgnored() throws IOException {
+        ClickJournal journal = new ClickJournal(dataDir, 60_000, 1000);
+        Link link = newLink("torntail");
+        link.incrementClicks();
+        journal.record(link);
+        journal.close();
+
+        try (var files = Files.list(dataDir)) {
+            Path segment =
+                    files.filter(file -> file.toString().endsWith(".journal"))
+                            .findFirst()
+                            .orElseThrow();
+            Files.write(segment, new byte[] {0, 0, 0, 3, 1, 2}, StandardOpenOption.APPEND);
+        }
+        assertEquals(Map.of("torntail", 1), replay());
+    }
+
+    @Test
+    void testRotateSealsSegmentsOfPreviousRuns() throws IOException {
+        ClickJournal journal = new ClickJournal(dataDir, 60_000, 1000);
+        journal.record(newLink("oldrun01"));
+        journal.close();
+
+        ClickJournal reopened = new ClickJournal(dataDir, 60_000, 1000);
+        reopened.record(newLink("newrun01"));
+        List<Path> sealed = reopened.rotate();
+        assertEquals(2, sealed.size());
+        reopened.deleteSegments(sealed);
+        reopened.close();
+
+        assertTrue(replay().isEmpty());
+    }
+}
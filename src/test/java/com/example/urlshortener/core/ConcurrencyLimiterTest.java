@@ -0,0 +1,81 @@
+package com.example.urlshortener.core;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+class ConcurrencyLimiterTest {
+    private static final long WINDOW_NEVER_ENDS = Long.MAX_VALUE;
+
+    @Test
+    void testOverloadFailsFastAndRedirectsGoFirst() throws Exception {
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter(2, 2, 2, 2000, WINDOW_NEVER_ENDS);
+        long first = limiter.acquire(ConcurrencyLimiter.Kind.REDIRECT);
+        long second = limiter.acquire(ConcurrencyLimiter.Kind.REDIRECT);
+
+        // Создание встает в очередь раньше перехода, но место первым получает переход
+        CompletableFuture<Long> create =
+                CompletableFuture.supplyAsync(
+                        () -> limiter.acquire(ConcurrencyLimiter.Kind.CREATE));
+        Thread.sleep(100);
+        CompletableFuture<Long> redirect =
+                CompletableFuture.supplyAsync(
+                        () -> limiter.acquire(ConcurrencyLimiter.Kind.REDIRECT));
+        Thread.sleep(100);
+        limiter.release(ConcurrencyLimiter.Kind.REDIRECT, first);
+        long redirectStart = redirect.get(1, TimeUnit.SECONDS);
+        assertFalse(create.isDone());
+
+        limiter.release(ConcurrencyLimiter.Kind.REDIRECT, second);
+        long createStart = create.get(1, TimeUnit.SECONDS);
+        assertEquals(2, limiter.getStats().getInFlight());
+
+        // Очередь без ожидания: при занятом лимите отказ приходит сразу
+        ConcurrencyLimiter impatient = new ConcurrencyLimiter(1, 1, 1, 0, WINDOW_NEVER_ENDS);
+        impatient.acquire(ConcurrencyLimiter.Kind.REDIRECT);
+        ServiceOverloadedException e =
+                assertThrows(
+                        ServiceOverloadedException.class,
+                        () -> impatient.acquire(ConcurrencyLimiter.Kind.REDIRECT));
+        assertEquals(1, e.getRetryAfterSeconds());
+        assertEquals(1, impatient.getStats().getRejectedRedirects());
+
+        limiter.release(ConcurrencyLimiter.Kind.REDIRECT, redirectStart);
+        limiter.release(ConcurrencyLimiter.Kind.CREATE, createStart);
+        assertEquals(0, limiter.getStats().getInFlight());
+    }
+
+    @Test
+    void testLimitFollowsLatency() {
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter(4, 200, 50, 0, WINDOW_NEVER_ENDS);
+        long fast = TimeUnit.MILLISECONDS.toNanos(1);
+        long slow = TimeUnit.MILLISECONDS.toNanos(20);
+
+        // Ровная задержка под нагрузкой - лимит растет
+        for (int i = 0; i < 20; i++) {
+            limiter.update(fast, 1000);
+        }
+        int grown = limiter.getStats().getLimit();
+        assertTrue(grown > 50, "лимит " + grown);
+
+        // Недогруженный сервис лимит не меняет
+        limiter.update(slow, 1);
+        assertEquals(grown, limiter.getStats().getLimit());
+
+        // Задержка выросла - лимит падает, но не ниже минимума
+        for (int i = 0; i < 20; i++) {
+            limiter.update(slow, 1000);
+        }
+        int shrunk = limiter.getStats().getLimit();
+        assertTrue(shrunk < 30 && shrunk >= 4, "лимит " + shrunk);
+
+        // Задержка вернулась - лимит снова растет
+        for (int i = 0; i < 20; i++) {
+            limiter.update(fast, 1000);
+        }
+        assertTrue(limiter.getStats().getLimit() > shrunk);
+    }
+}
@@ -0,0 +1,51 @@
+package com.example.urlshortener.core;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.junit.jupiter.api.Test;
+
+class CuckooFilterTest {
+
+    @Test
+    void testNoFalseNegativesAfterAddsAndRemoves() {
+        CuckooFilter filter = CuckooFilter.forKeys(20_000);
+        for (int i = 0; i < 20_000; i++) {
+            assertTrue(filter.add(Base62.encode(i)));
+        }
+        // Удаляем каждый второй код: оставшиеся по-прежнему находятся
+        for (int i = 0; i < 20_000; i += 2) {
+            assertTrue(filter.remove(Base62.encode(i)));
+        }
+        for (int i = 1; i < 20_000; i += 2) {
+            assertTrue(filter.mightContain(Base62.encode(i)));
+        }
+        assertEquals(10_000, filter.size());
+
+        int falsePositives = 0;
+        for (int i = 0; i < 100_000; i++) {
+            if (filter.mightContain(Base62.encode(1_000_000 + i))) {
+                falsePositives++;
+            }
+        }
+        assertTrue(falsePositives < 100, "Ложных срабатываний: " + falsePositives);
+    }
+
+    @Test
+    void testFullFilterRejectsAddWithoutLosingCodes() {
+        CuckooFilter filter = CuckooFilter.forKeys(100);
+        int added = 0;
+        while (filter.add(Base62.encode(added))) {
+            added++;
+        }
+        // Отказ наступает только при почти полной таблице, и ни один код не потерян
+        assertTrue(added > filter.capacity() * 0.9, added + " из " + filter.capacity());
+        for (int i = 0; i < added; i++) {
+            assertTrue(filter.mightContain(Base62.encode(i)));
+        }
+
+        // После удаления запасной отпечаток возвращается в таблицу и место снова есть
+        assertTrue(filter.remove(Base62.encode(0)));
+        assertTrue(filter.remove(Base62.encode(1)));
+        assertTrue(filter.add(Base62.encode(added)));
+    }
+}
@@ -0,0 +1,56 @@
+package com.example.urlshortener.core;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.UUID;
+
+class ExpiryIndexTest {
+    private final Instant now = Instant.ofEpochSecond(1_000_000);
+
+    private Link newLink(String shortCode, Instant expirationTime) {
+        return new Link(
+                "https://example.com/" + shortCode,
+                shortCode,
+                UUID.randomUUID(),
+                10,
+                expirationTime);
+    }
+
+    @Test
+    void testPollReturnsOnlyDueBuckets() {
+        ExpiryIndex index = new ExpiryIndex();
+        index.add(newLink("past0001", now.minusSeconds(30)));
+        index.add(newLink("past0002", now.minusSeconds(1)));
+        index.add(newLink("current1", now.plusMillis(500)));
+        for (int i = 0; i < 1000; i++) {
+            index.add(newLink(String.format("f%07d", i), now.plusSeconds(1 + i)));
+        }
+
+        // Корзина текущей секунды тоже отдается: ее ссылки хранилище перепроверяет само
+        List<String> due = index.pollDue(now);
+        assertEquals(3, due.size());
+        assertTrue(due.containsAll(List.of("past0001", "past0002", "current1")));
+        assertEquals(1000, index.size());
+        assertTrue(index.pollDue(now).isEmpty());
+        assertEquals(10, index.pollDue(now.plusSeconds(10)).size());
+    }
+
+    @Test
+    void testReplacedLinkLeavesOldBucket() {
+        ExpiryIndex index = new ExpiryIndex();
+        Link shortLived = newLink("replaced", now.minusSeconds(5));
+        index.add(shortLived);
+        Link extended = newLink("replaced", now.plusSeconds(600));
+        index.replace(shortLived, extended);
+
+        assertTrue(index.pollDue(now).isEmpty());
+        assertEquals(1, index.size());
+        index.remove(extended);
+        assertEquals(0, index.size());
+        assertTrue(index.pollDue(now.plusSeconds(600)).isEmpty());
+    }
+}
@@ -0,0 +1,167 @@
+package com.example.urlshortener.core;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+class FileLinkRepositoryTest {
+    @TempDir Path dataDir;
+
+    private UUID testUserId;
+
+    @BeforeEach
+    void setUp() {
+        testUserId = UUID.randomUUID();
+    }
+
+    private Link newLink(String shortCode, Instant expirationTime) {
+        return new Link(
+                "https://example.com/" + shortCode, shortCode, testUserId, 10, expirationTime);
+    }
+
+    @Test
+    void testReplayLogAfterRestart() {
+        FileLinkRepository repository = new FileLinkRepository(dataDir);
+        Link link = newLink("abcd1234", Instant.now().plusSeconds(3600));
+        repository.save(link);
+        link.incrementClicks();
+        repository.recordClick(link);
+        link.incrementClicks();
+        repository.recordClick(link);
+        repository.close();
+
+        // Снимок не писался - состояние восстанавливается только из журнала
+        assertFalse(Files.exists(dataDir.resolve("links.dat")));
+
+        FileLinkRepository reopened = new FileLinkRepository(dataDir);
+        Link restored = reopened.findByShortCode("abcd1234").orElseThrow();
+        assertEquals("https://example.com/abcd1234", restored.getOriginalUrl());
+        assertEquals(testUserId, restored.getOwnerId());
+        assertEquals(2, restored.getCurrentClicks());
+        reopened.close();
+    }
+
+    @Test
+    void testExpiredLinkDeletionIsLogged() {
+        FileLinkRepository repository = new FileLinkRepository(dataDir);
+        repository.save(newLink("expired1", Instant.now().minusSeconds(10)));
+        repository.save(newLink("active01", Instant.now().plusSeconds(3600)));
+        repository.removeExpiredLinks();
+        repository.close();
+
+        FileLinkRepository reopened = new FileLinkRepository(dataDir);
+        assertTrue(reopened.findByShortCode("expired1").isEmpty());
+        assertTrue(reopened.findByShortCode("active01").isPresent());
+        reopened.close();
+    }
+
+    @Test
+    void testCheckpointWritesSnapshotAndTruncatesLog() {
+        FileLinkRepository repository = new FileLinkRepository(dataDir);
+        Link link = newLink("snapshot", Instant.now().plusSeconds(3600));
+        repository.save(link);
+        link.incrementClicks();
+        repository.recordClick(link);
+        repository.checkpoint();
+
+        // Изменение после снимка попадает в новый сегмент
+        link.incrementClicks();
+        repository.recordClick(link);
+        repository.close();
+
+        assertTrue(Files.exists(dataDir.resolve("links.dat")));
+        FileLinkRepository reopened = new FileLinkRepository(dataDir);
+        assertEquals(2, reopened.findByShortCode("snapshot").orElseThrow().getCurrentClicks());
+        reopened.close();
+    }
+
+    @Test
+    void testBackgroundCompactionWhenSegmentIsFull() throws Exception {
+        FileLinkRepository repository =
+                new FileLinkRepository(dataDir, settingsWith("link.log.segment.max.bytes=1\n"));
+        repository.save(newLink("bgsnap01", Instant.now().plusSeconds(3600)));
+
+        // Снимок пишет фоновый поток, ждем его появления
+        Path linksFile = dataDir.resolve("links.dat");
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!Files.exists(linksFile) && System.currentTimeMillis() < deadline) {
+            Thread.sleep(20);
+        }
+        assertTrue(Files.exists(linksFile));
+        repository.close();
+
+        FileLinkRepository reopened = new FileLinkRepository(dataDir);
+        assertTrue(reopened.findByShortCode("bgsnap01").isPresent());
+        reopened.close();
+    }
+
+    @ParameterizedTest
+    @EnumSource(DurabilityMode.class)
+    void testChangesSurviveRestartInEveryDurabilityMode(DurabilityMode mode) throws Exception {
+        SystemSettings settings =
+                settingsWith(
+                        "link.durability=" + mode + "\nlink.group.commit.max.delay.millis=2\n");
+        FileLinkRepository repository = new FileLinkRepository(dataDir, settings);
+
+        // Несколько потоков пишут одновременно - в режиме GROUP они попадут в общие пачки
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            String shortCode = String.format("dur%05d", i);
+            futures.add(
+                    executor.submit(
+                            () ->
+                                    repository.save(
+                                            newLink(shortCode, Instant.now().plusSeconds(3600)))));
+        }
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        executor.shutdown();
+        repository.close();
+
+        FileLinkRepository reopened = new FileLinkRepository(dataDir, settings);
+        assertEquals(200, reopened.findByOwnerId(testUserId).size());
+        reopened.close();
+    }
+
+    private SystemSettings settingsWith(String extraProperties) throws IOException {
+        Path settingsFile = dataDir.resolve("settings.properties");
+        Files.writeString(
+                settingsFile, "default.click.limit=10\nlink.ttl.seconds=600\n" + extraProperties);
+        return new SystemSettings(settingsFile);
+    }
+
+    @Test
+    void testTornRecordAtLogTailIsIgnored() throws IOException {
+        FileLinkRepository repository = new FileLinkRepository(dataDir);
+        repository.save(newLink("survivor", Instant.now().plusSeconds(3600)));
+        repository.close();
+
+        // Имитируем сбой посреди дозаписи: в конце сегмента оборванный заголовок
+        LinkLog log = new LinkLog(dataDir);
+        Path segment = log.listSegments().get(0);
+        log.close();
+        Files.write(segment, new byte[] {0, 0, 0, 42, 1}, StandardOpenOption.APPEND);
+
+        FileLinkRepository reopened = new FileLinkRepository(dataDir);
+        assertTrue(reopened.findByShortCode("survivor").isPresent());
+        reopened.close();
+    }
+}
@@ -0,0 +1,52 @@
+package com.example.urlshortener.core;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.UUID;
+
+class InactiveLinkTrackerTest {
+    private final UUID ownerId = UUID.randomUUID();
+
+    private Link newLink(String shortCode, int clickLimit) {
+        return new Link(
+                "https://example.com/" + shortCode,
+                shortCode,
+                ownerId,
+                clickLimit,
+                Instant.now().minusSeconds(1));
+    }
+
+    @Test
+    void testExpiredLinksAreReportedOncePerOwner() {
+        InactiveLinkTracker tracker = new InactiveLinkTracker();
+        Link expired = newLink("expired1", 5);
+        Link exhausted = newLink("exhaust1", 1);
+        tracker.onClick(exhausted, exhausted.incrementClicks());
+        tracker.onExpired(List.of(expired, exhausted));
+
+        // Исчерпанная ссылка уже дала событие при переходе и при удалении не повторяется
+        List<InactiveLinkTracker.Event> events = tracker.drain(ownerId);
+        assertEquals(2, events.size());
+        assertEquals(InactiveLinkTracker.Reason.CLICK_LIMIT_REACHED, events.get(0).getReason());
+        assertEquals("expired1", events.get(1).getShortCode());
+        assertEquals(InactiveLinkTracker.Reason.EXPIRED, events.get(1).getReason());
+        assertTrue(tracker.drain(ownerId).isEmpty());
+        assertTrue(tracker.drain(UUID.randomUUID()).isEmpty());
+    }
+
+    @Test
+    void testQueueKeepsOnlyLatestEvents() {
+        InactiveLinkTracker tracker = new InactiveLinkTracker();
+        for (int i = 0; i < 1500; i++) {
+            tracker.onExpired(List.of(newLink(String.format("q%07d", i), 5)));
+        }
+
+        List<InactiveLinkTracker.Event> events = tracker.drain(ownerId);
+        assertEquals(1000, events.size());
+        assertEquals("q0000500", events.get(0).getShortCode());
+    }
+}
@@ -0,0 +1,164 @@
+package com.example.urlshortener.core;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ObjectOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+class LinkCodecTest {
+    @TempDir Path dataDir;
+
+    private Link newLink(String shortCode, String url) {
+        return new Link(
+                url,
+                shortCode,
+                UUID.randomUUID(),
+                25,
+                7,
+                Instant.now().truncatedTo(ChronoUnit.MILLIS),
+                Instant.now().plusSeconds(600).truncatedTo(ChronoUnit.MILLIS));
+    }
+
+    @Test
+    void testEncodeDecodeRoundTrip() {
+        Link link = newLink("aB3dE5gH", "https://пример.рф/путь?q=1");
+        ByteBuffer buffer = ByteBuffer.allocate(LinkCodec.encodedSize(link));
+        LinkCodec.encode(link, buffer);
+        assertFalse(buffer.hasRemaining());
+
+        Link decoded = LinkCodec.decode(buffer.flip());
+        assertEquals(link.getShortCode(), decoded.getShortCode());
+        assertEquals(link.getOriginalUrl(), decoded.getOriginalUrl());
+        assertEquals(link.getOwnerId(), decoded.getOwnerId());
+        assertEquals(link.getClickLimit(), decoded.getClickLimit());
+        assertEquals(link.getCurrentClicks(), decoded.getCurrentClicks());
+        assertEquals(link.getCreationTime(), decoded.getCreationTime());
+        assertEquals(link.getExpirationTime(), decoded.getExpirationTime());
+    }
+
+    @Test
+    void testShortCodeIsPaddedToFixedWidth() {
+        Link link = newLink("abc", "https://example.com");
+        ByteBuffer buffer = ByteBuffer.allocate(LinkCodec.encodedSize(link));
+        LinkCodec.encode(link, buffer);
+
+        assertEquals("abc", LinkCodec.decode(buffer.flip()).getShortCode());
+    }
+
+    @Test
+    void testPermanentFlagRoundTripAndVersionOneRecords() {
+        Link permanent =
+                new Link(
+                        "https://example.com/forever",
+                        "perm0001",
+                        UUID.randomUUID(),
+                        Link.NO_CLICK_LIMIT,
+                        Instant.now().plusSeconds(600),
+                        true);
+        ByteBuffer buffer = ByteBuffer.allocate(LinkCodec.encodedSize(permanent));
+        LinkCodec.encode(permanent, buffer);
+        assertTrue(LinkCodec.decode(buffer.flip()).isPermanent());
+
+        // Запись версии 1 - та же запись без байта флагов
+        Link link = newLink("old00001", "https://example.com/old");
+        ByteBuffer current = ByteBuffer.allocate(LinkCodec.encodedSize(link));
+        LinkCodec.encode(link, current);
+        current.flip();
+        ByteBuffer versionOne = ByteBuffer.allocate(current.remaining() - 1);
+        versionOne.put((byte) 1).put(current.position(2)).flip();
+        Link decoded = LinkCodec.decode(versionOne);
+        assertEquals("https://example.com/old", decoded.getOriginalUrl());
+        assertEquals(7, decoded.getCurrentClicks());
+        assertFalse(decoded.isPermanent());
+
+        // Постоянная ссылка с лимитом переходов не создается
+        assertThrows(
+                IllegalArgumentException.class,
+                () ->
+                        new Link(
+                                "https://example.com",
+                                "perm0002",
+                                UUID.randomUUID(),
+                                10,
+                                Instant.now().plusSeconds(600),
+                                true));
+    }
+
+    @Test
+    void testTooLongShortCodeIsRejected() {
+        Link link = newLink("toolong123", "https://example.com");
+        ByteBuffer buffer = ByteBuffer.allocate(256);
+
+        assertThrows(IllegalArgumentException.class, () -> LinkCodec.encode(link, buffer));
+    }
+
+    @Test
+    void testSnapshotRoundTrip() throws Exception {
+        List<Link> links = new ArrayList<>();
+        for (int i = 0; i < 5000; i++) {
+            links.add(newLink(String.format("s%07d", i), "https://example.com/" + i));
+        }
+        Path file = dataDir.resolve("links.dat");
+        LinkSnapshot.write(file, links);
+
+        Map<String, Link> loaded = new HashMap<>();
+        LinkSnapshot.LoadResult result = LinkSnapshot.read(file, loaded);
+        assertFalse(result.isLegacyFormat());
+        assertEquals(5000, result.getLoaded());
+        assertEquals("https://example.com/4321", loaded.get("s0004321").getOriginalUrl());
+    }
+
+    @Test
+    void testChunkedSnapshotIsLoadedInParallel() throws Exception {
+        // Больше CHUNK_MAX_RECORDS записей, чтобы снимок разбился на несколько частей
+        List<Link> links = new ArrayList<>();
+        for (int i = 0; i < 150_000; i++) {
+            links.add(newLink(String.format("c%07d", i), "https://example.com/" + i));
+        }
+        Path file = dataDir.resolve("links.dat");
+        LinkSnapshot.write(file, links);
+        assertEquals(150_000, LinkSnapshot.peekLinkCount(file));
+
+        Map<String, Link> loaded = new ConcurrentHashMap<>();
+        LinkSnapshot.LoadResult result = LinkSnapshot.read(file, loaded);
+        assertTrue(result.getChunks() > 1);
+        assertEquals(150_000, result.getLoaded());
+        assertEquals(150_000, loaded.size());
+        assertEquals("https://example.com/149999", loaded.get("c0149999").getOriginalUrl());
+    }
+
+    @Test
+    void testLegacySerializedFileIsMigrated() throws Exception {
+        // links.dat в формате ObjectOutputStream, как его писали прежние версии
+        List<Link> legacyLinks = new ArrayList<>();
+        legacyLinks.add(newLink("legacy01", "https://example.com/old"));
+        Path file = dataDir.resolve("links.dat");
+        try (ObjectOutputStream oos = new ObjectOutputStream(Files.newOutputStream(file))) {
+            oos.writeObject(legacyLinks);
+        }
+
+        FileLinkRepository repository = new FileLinkRepository(dataDir);
+        assertEquals(
+                "https://example.com/old",
+                repository.findByShortCode("legacy01").orElseThrow().getOriginalUrl());
+        repository.checkpoint();
+        repository.close();
+
+        Map<String, Link> loaded = new HashMap<>();
+        assertFalse(LinkSnapshot.read(file, loaded).isLegacyFormat());
+        assertEquals(7, loaded.get("legacy01").getCurrentClicks());
+    }
+}
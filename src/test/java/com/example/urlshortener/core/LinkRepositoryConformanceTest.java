@@ -0,0 +1,222 @@
+package com.example.urlshortener.core;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+
+// Общие проверки и замер скорости, которые должна проходить каждая реализация LinkRepository
+class LinkRepositoryConformanceTest {
+    private static final int BENCHMARK_LINKS = 20_000;
+
+    @TempDir Path dataDir;
+
+    private LinkRepository open(StorageBackend backend) throws IOException {
+        Path settingsFile = dataDir.resolve("settings.properties");
+        Files.writeString(
+                settingsFile,
+                "default.click.limit=10\nlink.ttl.seconds=600\n"
+                        + "link.storage.backend="
+                        + backend.name()
+                        + "\nlink.durability=ASYNC\n");
+        return LinkRepository.create(dataDir, new SystemSettings(settingsFile));
+    }
+
+    private static Link newLink(String shortCode, UUID ownerId, Instant expirationTime) {
+        return new Link("https://example.com/" + shortCode, shortCode, ownerId, 10, expirationTime);
+    }
+
+    @ParameterizedTest
+    @EnumSource(StorageBackend.class)
+    void testSaveAndFind(StorageBackend backend) throws IOException {
+        try (LinkRepository repository = open(backend)) {
+            UUID ownerId = UUID.randomUUID();
+            repository.save(newLink("conf0001", ownerId, Instant.now().plusSeconds(600)));
+
+            Link found = repository.findByShortCode("conf0001").orElseThrow();
+            assertEquals("https://example.com/conf0001", found.getOriginalUrl());
+            assertEquals(ownerId, found.getOwnerId());
+            assertTrue(repository.findByShortCode("missing1").isEmpty());
+            assertEquals(1, repository.count());
+        }
+    }
+
+    @ParameterizedTest
+    @EnumSource(StorageBackend.class)
+    void testFindByOwnerId(StorageBackend backend) throws IOException {
+        try (LinkRepository repository = open(backend)) {
+            UUID owner = UUID.randomUUID();
+            UUID other = UUID.randomUUID();
+            Instant expiration = Instant.now().plusSeconds(600);
+            repository.saveAll(
+                    List.of(
+                            newLink("owner001", owner, expiration),
+                            newLink("owner002", owner, expiration),
+                            newLink("other001", other, expiration)));
+
+            assertEquals(2, repository.findByOwnerId(owner).size());
+            assertEquals(1, repository.findByOwnerId(other).size());
+            assertEquals(Set.of("owner001", "owner002", "other001"), repository.getAllShortCodes());
+
+            // Код, перезаписанный ссылкой другого владельца, переходит к нему
+            repository.save(newLink("owner002", other, expiration));
+            assertEquals(1, repository.findByOwnerId(owner).size());
+            assertEquals(2, repository.findByOwnerId(other).size());
+        }
+    }
+
+    @ParameterizedTest
+    @EnumSource(StorageBackend.class)
+    void testPagedOwnerListing(StorageBackend backend) throws IOException {
+        try (LinkRepository repository = open(backend)) {
+            UUID owner = UUID.randomUUID();
+            Instant base = Instant.parse("2030-01-01T00:00:00Z");
+            List<Link> links = new ArrayList<>();
+            for (int i = 0; i < 45; i++) {
+                // Время создания растет с номером, срок - убывает, каждая пятая ссылка истекла
+                Instant expiration =
+                        i % 5 == 0 ? Instant.now().minusSeconds(60) : base.minusSeconds(i);
+                links.add(
+                        new Link(
+                                "https://example.com/" + i,
+                                String.format("page%04d", i),
+                                owner,
+                                100,
+                                i % 7,
+                                base.minusSeconds(1000 - i),
+                                expiration));
+            }
+            repository.saveAll(links);
+            repository.save(newLink("stranger", UUID.randomUUID(), base));
+            assertEquals(45, repository.countByOwnerId(owner));
+
+            List<String> created =
+                    collectPages(repository, owner, LinkSort.CREATED, LinkFilter.ALL);
+            assertEquals(45, created.size());
+            assertEquals("page0044", created.get(0));
+            assertEquals("page0000", created.get(44));
+
+            List<String> inactive =
+                    collectPages(repository, owner, LinkSort.EXPIRES, LinkFilter.INACTIVE);
+            assertEquals(9, inactive.size());
+            assertTrue(
+                    inactive.stream()
+                            .allMatch(code -> Integer.parseInt(code.substring(4)) % 5 == 0));
+
+            // По переходам: сначала шесть переходов, при равенстве - по коду
+            List<String> clicks = collectPages(repository, owner, LinkSort.CLICKS, LinkFilter.ALL);
+            assertEquals(45, clicks.size());
+            assertEquals(List.of("page0006", "page0013", "page0020"), clicks.subList(0, 3));
+            assertEquals(45, Set.copyOf(clicks).size());
+        }
+    }
+
+    private static List<String> collectPages(
+            LinkRepository repository, UUID owner, LinkSort sort, LinkFilter filter) {
+        List<String> codes = new ArrayList<>();
+        String cursor = null;
+        do {
+            LinkPage page = repository.findPageByOwnerId(owner, sort, filter, cursor, 10);
+            assertTrue(page.getLinks().size() <= 10);
+            page.getLinks().forEach(link -> codes.add(link.getShortCode()));
+            cursor = page.getNextCursor();
+        } while (cursor != null);
+        return codes;
+    }
+
+    @ParameterizedTest
+    @EnumSource(StorageBackend.class)
+    void testRemoveExpiredLinksReturnsRemoved(StorageBackend backend) throws IOException {
+        try (LinkRepository repository = open(backend)) {
+            UUID ownerId = UUID.randomUUID();
+            repository.save(newLink("expired1", ownerId, Instant.now().minusSeconds(1)));
+            repository.save(newLink("active01", ownerId, Instant.now().plusSeconds(600)));
+
+            List<Link> removed = repository.removeExpiredLinks();
+            assertEquals(1, removed.size());
+            assertEquals("expired1", removed.get(0).getShortCode());
+            assertTrue(repository.findByShortCode("expired1").isEmpty());
+            assertEquals(1, repository.count());
+            // Удаленная ссылка уходит и из индекса владельцев
+            assertEquals(1, repository.findByOwnerId(ownerId).size());
+        }
+    }
+
+    @ParameterizedTest
+    @EnumSource(StorageBackend.class)
+    void testRecordClickKeepsCounter(StorageBackend backend) throws IOException {
+        try (LinkRepository repository = open(backend)) {
+            Link link = newLink("clicks01", UUID.randomUUID(), Instant.now().plusSeconds(600));
+            repository.save(link);
+            for (int i = 0; i < 3; i++) {
+                link.incrementClicks();
+                repository.recordClick(link);
+            }
+            assertEquals(
+                    3, repository.findByShortCode("clicks01").orElseThrow().getCurrentClicks());
+        }
+    }
+
+    @ParameterizedTest
+    @EnumSource(StorageBackend.class)
+    void testBenchmark(StorageBackend backend) throws IOException {
+        try (LinkRepository repository = open(backend)) {
+            UUID ownerId = UUID.randomUUID();
+            Instant expiration = Instant.now().plusSeconds(600);
+            List<Link> batch = new ArrayList<>(BENCHMARK_LINKS);
+            for (int i = 0; i < BENCHMARK_LINKS; i++) {
+                batch.add(newLink(String.format("b%07d", i), ownerId, expiration));
+            }
+
+            long start = System.nanoTime();
+            for (Link link : batch.subList(0, BENCHMARK_LINKS / 2)) {
+                repository.save(link);
+            }
+            long saveNanos = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            repository.saveAll(batch.subList(BENCHMARK_LINKS / 2, BENCHMARK_LINKS));
+            long saveAllNanos = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            for (int round = 0; round < 5; round++) {
+                for (Link link : batch) {
+                    assertTrue(repository.findByShortCode(link.getShortCode()).isPresent());
+                }
+            }
+            long findNanos = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            for (Link link : batch) {
+                link.incrementClicks();
+                repository.recordClick(link);
+            }
+            long clickNanos = System.nanoTime() - start;
+
+            assertEquals(BENCHMARK_LINKS, repository.count());
+            System.out.printf(
+                    "%s: save %.0f оп/с, saveAll %.0f оп/с, поиск %.0f оп/с,"
+                            + " переход %.0f оп/с, на диске %d байт%n",
+                    backend,
+                    opsPerSecond(BENCHMARK_LINKS / 2, saveNanos),
+                    opsPerSecond(BENCHMARK_LINKS / 2, saveAllNanos),
+                    opsPerSecond(BENCHMARK_LINKS * 5, findNanos),
+                    opsPerSecond(BENCHMARK_LINKS, clickNanos),
+                    repository.getStorageSizeBytes());
+        }
+    }
+
+    private static double opsPerSecond(int operations, long nanos) {
+        return operations * 1_000_000_000.0 / Math.max(1, nanos);
+    }
+}
@@ -6,7 +6,13 @@ import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
 import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 
 class LinkValidatorTest {
     private UUID testUserId;
@@ -83,4 +89,59 @@ class LinkValidatorTest {
 
         assertFalse(LinkValidator.isLinkActive(link));
     }
+
+    @Test
+    void testTryConsumeClickStopsAtLimit() {
+        Link link =
+                new Link(
+                        "https://example.com",
+                        "test1234",
+                        testUserId,
+                        2,
+                        Instant.now().plusSeconds(3600));
+
+        assertEquals(1, link.tryConsumeClick());
+        assertEquals(2, link.tryConsumeClick());
+        assertEquals(-1, link.tryConsumeClick()); // Лимит исчерпан, счетчик не растет
+        assertEquals(2, link.getCurrentClicks());
+        assertFalse(LinkValidator.isLinkActive(link));
+    }
+
+    @Test
+    void testStripedClicksHoldLimitExactly() throws Exception {
+        // Лимит далеко: под конкуренцией переходы идут через полосы, у лимита - точным CAS
+        Link link =
+                new Link(
+                        "https://example.com",
+                        "hotlink1",
+                        testUserId,
+                        100_000,
+                        Instant.now().plusSeconds(3600));
+        AtomicInteger served = new AtomicInteger();
+        AtomicInteger reachedLimit = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(16);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int t = 0; t < 16; t++) {
+            futures.add(
+                    executor.submit(
+                            () -> {
+                                int clicks;
+                                while ((clicks = link.tryConsumeClick()) > 0) {
+                                    served.incrementAndGet();
+                                    if (clicks == link.getClickLimit()) {
+                                        reachedLimit.incrementAndGet();
+                                    }
+                                }
+                            }));
+        }
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        executor.shutdown();
+
+        assertEquals(100_000, served.get());
+        assertEquals(1, reachedLimit.get());
+        assertEquals(100_000, link.getCurrentClicks());
+        assertEquals(-1, link.tryConsumeClick());
+    }
 }
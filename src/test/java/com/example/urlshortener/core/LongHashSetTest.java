@@ -0,0 +1,64 @@
+package com.example.urlshortener.core;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+class LongHashSetTest {
+
+    @Test
+    void testMatchesHashSetUnderChurn() {
+        // Вставки и удаления вперемешку: перестройки и помеченные ячейки не теряют элементов
+        LongHashSet set = new LongHashSet(0, 4);
+        Set<Long> expected = new HashSet<>();
+        Random random = new Random(7);
+        for (int i = 0; i < 200_000; i++) {
+            long value = random.nextInt(20_000);
+            if (random.nextInt(3) == 0) {
+                assertEquals(expected.remove(value), set.remove(value));
+            } else {
+                assertEquals(expected.add(value), set.add(value));
+            }
+        }
+        assertEquals(expected.size(), set.size());
+        for (long value = 0; value < 20_000; value++) {
+            assertEquals(expected.contains(value), set.contains(value));
+        }
+        Set<Long> visited = new HashSet<>();
+        set.forEach(visited::add);
+        assertEquals(expected, visited);
+    }
+
+    @Test
+    void testConcurrentAddsAreAllKept() throws Exception {
+        LongHashSet set = new LongHashSet(0, 8);
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int t = 0; t < 8; t++) {
+            long offset = t * 100_000L;
+            futures.add(
+                    executor.submit(
+                            () -> {
+                                for (long value = 0; value < 50_000; value++) {
+                                    assertTrue(set.add(offset + value));
+                                }
+                            }));
+        }
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        executor.shutdown();
+        assertEquals(400_000, set.size());
+        assertTrue(set.contains(749_999));
+        assertFalse(set.contains(750_000));
+    }
+}
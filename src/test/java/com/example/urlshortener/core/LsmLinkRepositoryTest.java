@@ -0,0 +1,236 @@
+package com.example.urlshortener.core;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.UUID;
+
+class LsmLinkRepositoryTest {
+    @TempDir Path dataDir;
+
+    private final UUID ownerId = UUID.randomUUID();
+
+    private LsmLinkRepository open() throws IOException {
+        // Маленькие memtable и SSTable, чтобы сброс и уплотнение начались уже на тысячах ссылок
+        Path settingsFile = dataDir.resolve("settings.properties");
+        Files.writeString(
+                settingsFile,
+                "default.click.limit=10\nlink.ttl.seconds=600\nlink.durability=ASYNC\n"
+                        + "lsm.memtable.max.bytes=4096\nlsm.table.max.bytes=16384\n"
+                        + "lsm.cache.max.links=64\n");
+        return new LsmLinkRepository(dataDir, new SystemSettings(settingsFile));
+    }
+
+    private Link newLink(String shortCode, Instant expirationTime) {
+        return new Link(
+                "https://example.com/" + shortCode, shortCode, ownerId, 100, expirationTime);
+    }
+
+    @Test
+    void testLinksSurviveFlushCompactionAndRestart() throws IOException {
+        LsmLinkRepository repository = open();
+        for (int i = 0; i < 3000; i++) {
+            Instant expiration =
+                    i % 10 == 0 ? Instant.now().minusSeconds(1) : Instant.now().plusSeconds(600);
+            repository.save(newLink(String.format("k%07d", i), expiration));
+            if (i % 500 == 499) {
+                repository.checkpoint(); // Не меньше шести файлов уровня 0 за прогон
+            }
+        }
+        Link clicked = repository.findByShortCode("k0000001").orElseThrow();
+        clicked.incrementClicks();
+        repository.recordClick(clicked);
+        assertEquals(300, repository.removeExpiredLinks().size());
+        repository.checkpoint();
+
+        // Уровень 0 слит в нижние уровни
+        int[] tables = repository.getTableCounts();
+        assertTrue(tables[0] < 4, Arrays.toString(tables));
+        assertTrue(Arrays.stream(tables).skip(1).sum() > 1, Arrays.toString(tables));
+        repository.close();
+
+        LsmLinkRepository reopened = open();
+        assertEquals(2700, reopened.count());
+        assertTrue(reopened.findByShortCode("k0000010").isEmpty());
+        assertEquals(
+                "https://example.com/k0002999",
+                reopened.findByShortCode("k0002999").orElseThrow().getOriginalUrl());
+        assertEquals(1, reopened.findByShortCode("k0000001").orElseThrow().getCurrentClicks());
+        assertEquals(2700, reopened.findByOwnerId(ownerId).size());
+        reopened.close();
+    }
+
+    @Test
+    void testUnflushedChangesAreReplayedFromLog() throws IOException {
+        LsmLinkRepository repository = open();
+        repository.save(newLink("walonly1", Instant.now().plusSeconds(600)));
+        repository.close();
+
+        LsmLinkRepository reopened = open();
+        assertTrue(reopened.findByShortCode("walonly1").isPresent());
+        reopened.close();
+    }
+
+    @Test
+    void testClicksAreRestoredFromClickJournal() throws IOException {
+        LsmLinkRepository repository = open();
+        repository.save(newLink("clicked1", Instant.now().plusSeconds(600)));
+        repository.checkpoint();
+        Link link = repository.findByShortCode("clicked1").orElseThrow();
+        for (int i = 0; i < 7; i++) {
+            link.incrementClicks();
+            repository.recordClick(link);
+        }
+        repository.close();
+
+        // Переходы не попали ни в журнал изменений, ни в SSTable - только в журнал переходов
+        LsmLinkRepository reopened = open();
+        assertEquals(7, reopened.findByShortCode("clicked1").orElseThrow().getCurrentClicks());
+        reopened.checkpoint();
+        reopened.close();
+
+        LsmLinkRepository compacted = open();
+        assertEquals(7, compacted.findByShortCode("clicked1").orElseThrow().getCurrentClicks());
+        compacted.close();
+    }
+
+    @Test
+    void testClicksFoldIntoTablesAndDeletedLinkStaysDeleted() throws IOException {
+        LsmLinkRepository repository = open();
+        repository.save(newLink("alive001", Instant.now().plusSeconds(600)));
+        repository.save(newLink("expired1", Instant.now().minusSeconds(1)));
+        repository.checkpoint();
+        Link alive = repository.findByShortCode("alive001").orElseThrow();
+        Link expired = repository.findByShortCode("expired1").orElseThrow();
+        assertEquals(1, repository.removeExpiredLinks().size());
+        repository.checkpoint(); // Надгробие ушло из memtable в SSTable
+
+        for (int i = 0; i < 3; i++) {
+            alive.incrementClicks();
+            repository.recordClick(alive);
+        }
+        // Переход, проскочивший проверку срока, не воскрешает удаленную ссылку
+        expired.incrementClicks();
+        repository.recordClick(expired);
+        assertTrue(repository.findByShortCode("expired1").isEmpty());
+        repository.checkpoint();
+        repository.close();
+
+        // Счетчик сброшен в SSTable, журнал переходов пуст
+        try (var files = Files.list(dataDir.resolve("lsm"))) {
+            assertTrue(
+                    files.filter(file -> file.getFileName().toString().startsWith("clicks-"))
+                            .allMatch(file -> file.toFile().length() == 0));
+        }
+        LsmLinkRepository reopened = open();
+        assertEquals(3, reopened.findByShortCode("alive001").orElseThrow().getCurrentClicks());
+        assertTrue(reopened.findByShortCode("expired1").isEmpty());
+        assertEquals(1, reopened.count());
+        reopened.close();
+    }
+
+    @Test
+    void testLiveCodeFilterGrowsWithoutLosingLinks() throws IOException {
+        LsmLinkRepository repository = open();
+        // Больше емкости начального фильтра: он пересобирается, и все ссылки остаются видны
+        for (int i = 0; i < 6000; i++) {
+            repository.save(newLink(String.format("f%07d", i), Instant.now().plusSeconds(600)));
+        }
+        for (int i = 0; i < 6000; i++) {
+            assertTrue(repository.findByShortCode(String.format("f%07d", i)).isPresent());
+        }
+        assertTrue(repository.findByShortCode("f9999999").isEmpty());
+        // Фоновая пересборка идет в очереди перед сбросом и к его концу завершена
+        repository.checkpoint();
+        for (int i = 0; i < 6000; i++) {
+            assertTrue(repository.findByShortCode(String.format("f%07d", i)).isPresent());
+        }
+        assertTrue(repository.findByShortCode("f9999999").isEmpty());
+        repository.close();
+    }
+
+    @Test
+    void testIndexesAreLoadedFromSnapshotAfterCleanClose() throws IOException {
+        LsmLinkRepository repository = open();
+        for (int i = 0; i < 1000; i++) {
+            Instant expiration =
+                    i % 10 == 0 ? Instant.now().minusSeconds(1) : Instant.now().plusSeconds(600);
+            repository.save(newLink(String.format("s%07d", i), expiration));
+        }
+        repository.checkpoint();
+        repository.save(newLink("walonly2", Instant.now().plusSeconds(600)));
+        repository.close();
+        Path snapshot = dataDir.resolve(LsmLinkRepository.DIRECTORY).resolve(LsmIndexSnapshot.FILE);
+        assertTrue(Files.exists(snapshot));
+
+        LsmLinkRepository reopened = open();
+        // Снимок прочитан и удален: после падения его не окажется
+        assertFalse(Files.exists(snapshot));
+        assertEquals(1001, reopened.findByOwnerId(ownerId).size());
+        assertEquals(1001, reopened.countByOwnerId(ownerId));
+        assertTrue(reopened.findByShortCode("walonly2").isPresent());
+        assertTrue(reopened.findByShortCode("s9999999").isEmpty());
+        assertEquals(100, reopened.removeExpiredLinks().size());
+        assertEquals(901, reopened.count());
+        reopened.close();
+    }
+
+    @Test
+    void testSnapshotOfOtherFilesIsIgnored() throws IOException {
+        LsmLinkRepository repository = open();
+        repository.save(newLink("before01", Instant.now().plusSeconds(600)));
+        repository.close();
+        Path snapshot = dataDir.resolve(LsmLinkRepository.DIRECTORY).resolve(LsmIndexSnapshot.FILE);
+        Path stale = dataDir.resolve("stale-indexes");
+        Files.copy(snapshot, stale);
+
+        LsmLinkRepository reopened = open();
+        reopened.save(newLink("after001", Instant.now().plusSeconds(600)));
+        reopened.close();
+        // Снимок от прежнего состояния файлов не должен спрятать новую ссылку
+        Files.copy(stale, snapshot, StandardCopyOption.REPLACE_EXISTING);
+
+        LsmLinkRepository third = open();
+        assertTrue(third.findByShortCode("after001").isPresent());
+        assertEquals(2, third.findByOwnerId(ownerId).size());
+        third.close();
+    }
+
+    @Test
+    void testHotLinkIsServedAsSameInstance() throws IOException {
+        LsmLinkRepository repository = open();
+        repository.save(newLink("hotlink1", Instant.now().plusSeconds(600)));
+        repository.checkpoint();
+
+        // После сброса ссылка читается из SSTable и дальше отдается из кэша
+        Link first = repository.findByShortCode("hotlink1").orElseThrow();
+        assertSame(first, repository.findByShortCode("hotlink1").orElseThrow());
+        repository.close();
+    }
+
+    @Test
+    void testSsTableLookupAndTombstones() throws IOException {
+        Path file = dataDir.resolve("table-000000001.sst");
+        SsTable.Writer writer = new SsTable.Writer(file, 1, 1000);
+        for (int i = 0; i < 1000; i++) {
+            String code = String.format("t%07d", i * 2);
+            writer.add(code, i == 500 ? SsTable.TOMBSTONE : newLink(code, Instant.now()));
+        }
+        SsTable table = writer.finish();
+
+        assertEquals(1000, table.getRecordCount());
+        assertEquals("t0000000", table.getFirstKey());
+        assertEquals("https://example.com/t0000998", table.get("t0000998").getOriginalUrl());
+        assertSame(SsTable.TOMBSTONE, table.get("t0001000"));
+        assertNull(table.get("t0000999"));
+        assertNull(table.get("zzzzzzzz"));
+    }
+}
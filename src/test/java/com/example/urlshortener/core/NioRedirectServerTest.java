@@ -0,0 +1,237 @@
+package com.example.urlshortener.core;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+class NioRedirectServerTest {
+    @TempDir Path dataDir;
+
+    private InMemoryLinkRepository repository;
+    private NioRedirectServer server;
+    private final HttpClient client =
+            HttpClient.newBuilder()
+                    .version(HttpClient.Version.HTTP_1_1)
+                    .followRedirects(HttpClient.Redirect.NEVER)
+                    .build();
+
+    @BeforeEach
+    void setUp() throws Exception {
+        startServer("", new InMemoryLinkRepository());
+    }
+
+    private void startServer(String extraSettings, InMemoryLinkRepository linkRepository)
+            throws Exception {
+        Path settingsFile = dataDir.resolve("settings.properties");
+        Files.writeString(
+                settingsFile, "default.click.limit=10\nlink.ttl.seconds=600\n" + extraSettings);
+        repository = linkRepository;
+        UrlShortenerService service =
+                new UrlShortenerService(repository, new SystemSettings(settingsFile));
+        server = new NioRedirectServer(service, 0, 2);
+        server.start();
+    }
+
+    @AfterEach
+    void tearDown() {
+        server.stop();
+    }
+
+    private void saveLink(String shortCode, int clickLimit) {
+        repository.save(
+                new Link(
+                        "https://example.com/" + shortCode,
+                        shortCode,
+                        UUID.randomUUID(),
+                        clickLimit,
+                        Instant.now().plusSeconds(600),
+                        clickLimit == Link.NO_CLICK_LIMIT));
+    }
+
+    private HttpResponse<String> get(String path) throws Exception {
+        HttpRequest request =
+                HttpRequest.newBuilder(URI.create("http://localhost:" + server.getPort() + path))
+                        .build();
+        return client.send(request, HttpResponse.BodyHandlers.ofString());
+    }
+
+    // Запрос уходит по частям, ответы читаются до закрытия соединения сервером
+    private String rawRequest(String... parts) throws Exception {
+        try (Socket socket = new Socket("localhost", server.getPort())) {
+            OutputStream out = socket.getOutputStream();
+            for (String part : parts) {
+                out.write(part.getBytes(StandardCharsets.US_ASCII));
+                out.flush();
+                Thread.sleep(20);
+            }
+            InputStream in = socket.getInputStream();
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+
+    @Test
+    void testRedirectNotFoundAndGone() throws Exception {
+        saveLink("nioLink1", 1);
+
+        HttpResponse<String> found = get("/nioLink1?utm=1");
+        assertEquals(302, found.statusCode());
+        assertEquals("https://example.com/nioLink1", found.headers().firstValue("Location").get());
+        assertEquals("no-store", found.headers().firstValue("Cache-Control").get());
+
+        // Лимит в один переход исчерпан
+        HttpResponse<String> gone = get("/nioLink1");
+        assertEquals(410, gone.statusCode());
+        assertTrue(gone.body().startsWith("Ссылка неактивна"));
+        assertEquals(404, get("/unknown1").statusCode());
+        assertEquals(404, get("/").statusCode());
+        assertEquals(404, get("/nioLink1/extra").statusCode());
+    }
+
+    @Test
+    void testSplitRequestAndUnsupportedMethod() throws Exception {
+        saveLink("nioLink2", 10);
+
+        String response = rawRequest("GET /nioL", "ink2 HTTP/1.0\r\nHost: local", "host\r\n\r\n");
+        assertTrue(response.startsWith("HTTP/1.1 302 Found\r\n"), response);
+        assertTrue(response.contains("Location: https://example.com/nioLink2\r\n"), response);
+        assertTrue(response.contains("Connection: close\r\n"), response);
+
+        String head = rawRequest("HEAD /unknown2 HTTP/1.1\r\nConnection: close\r\n\r\n");
+        assertTrue(head.startsWith("HTTP/1.1 404 Not Found\r\n"), head);
+        assertTrue(head.endsWith("\r\n\r\n"), head);
+
+        String post = rawRequest("POST /nioLink2 HTTP/1.1\r\nContent-Length: 0\r\n\r\n");
+        assertTrue(post.startsWith("HTTP/1.1 405 Method Not Allowed\r\n"), post);
+        assertTrue(post.contains("Allow: GET, HEAD\r\n"), post);
+    }
+
+    @Test
+    void testPipelinedRequestsOnPersistentConnection() throws Exception {
+        saveLink("nioLink3", 10);
+
+        // Три запроса одной записью: ответы приходят по порядку, последний закрывает соединение
+        String responses =
+                rawRequest(
+                        "GET /nioLink3 HTTP/1.1\r\nHost: localhost\r\n\r\n"
+                                + "GET /unknown3 HTTP/1.1\r\nHost: localhost\r\n\r\n"
+                                + "GET /nioLink3 HTTP/1.1\r\nConnection: close\r\n\r\n");
+        int first = responses.indexOf("HTTP/1.1 302 Found");
+        int second = responses.indexOf("HTTP/1.1 404 Not Found");
+        int third = responses.indexOf("HTTP/1.1 302 Found", first + 1);
+        assertTrue(first == 0 && second > first && third > second, responses);
+        assertTrue(responses.contains("Connection: keep-alive\r\n"), responses);
+        assertTrue(responses.endsWith("Connection: close\r\n\r\n"), responses);
+
+        // HttpClient переиспользует соединение для последовательных запросов
+        for (int i = 0; i < 5; i++) {
+            assertEquals(302, get("/nioLink3").statusCode());
+        }
+        assertEquals(7, repository.findByShortCode("nioLink3").orElseThrow().getCurrentClicks());
+    }
+
+    @Test
+    void testPermanentLinkIsCacheable() throws Exception {
+        saveLink("nioPerm1", Link.NO_CLICK_LIMIT);
+
+        HttpResponse<String> response = get("/nioPerm1");
+        assertEquals(301, response.statusCode());
+        assertEquals(
+                "https://example.com/nioPerm1", response.headers().firstValue("Location").get());
+        assertEquals("public", response.headers().firstValue("Cache-Control").get());
+        assertTrue(response.headers().firstValue("Expires").isPresent());
+    }
+
+    @Test
+    void testHeadDoesNotConsumeClicks() throws Exception {
+        repository.save(
+                new Link(
+                        "https://example.com/head",
+                        "nioHead1",
+                        UUID.randomUUID(),
+                        1,
+                        Instant.now().plusSeconds(600)));
+        HttpRequest head =
+                HttpRequest.newBuilder(
+                                URI.create("http://localhost:" + server.getPort() + "/nioHead1"))
+                        .method("HEAD", HttpRequest.BodyPublishers.noBody())
+                        .build();
+
+        // Проверки ботов не тратят единственный переход
+        for (int i = 0; i < 3; i++) {
+            HttpResponse<Void> response = client.send(head, HttpResponse.BodyHandlers.discarding());
+            assertEquals(302, response.statusCode());
+        }
+        assertEquals(0, repository.findByShortCode("nioHead1").orElseThrow().getCurrentClicks());
+        assertEquals(302, get("/nioHead1").statusCode());
+        assertEquals(410, get("/nioHead1").statusCode());
+    }
+
+    @Test
+    void testOverloadedEventLoopRejectsWithoutWaiting() throws Exception {
+        CountDownLatch entered = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        server.stop();
+        startServer(
+                "admission.limit.max=1\nadmission.queue.timeout.millis=60000\n",
+                new InMemoryLinkRepository() {
+                    @Override
+                    public Optional<Link> findByShortCode(String shortCode) {
+                        if (shortCode.equals("nioSlow1")) {
+                            entered.countDown();
+                            try {
+                                release.await();
+                            } catch (InterruptedException e) {
+                                Thread.currentThread().interrupt();
+                            }
+                        }
+                        return super.findByShortCode(shortCode);
+                    }
+                });
+
+        HttpRequest slow =
+                HttpRequest.newBuilder(
+                                URI.create("http://localhost:" + server.getPort() + "/nioSlow1"))
+                        .build();
+        CompletableFuture<HttpResponse<String>> pending =
+                client.sendAsync(slow, HttpResponse.BodyHandlers.ofString());
+        assertTrue(entered.await(5, TimeUnit.SECONDS));
+
+        // Цикл событий не ждет места в очереди: второй запрос на другом цикле сразу получает 503,
+        // хотя очередь могла бы ждать минуту
+        HttpRequest other =
+                HttpRequest.newBuilder(
+                                URI.create("http://localhost:" + server.getPort() + "/other01"))
+                        .timeout(Duration.ofSeconds(5))
+                        .build();
+        HttpResponse<String> rejected;
+        try {
+            rejected = client.send(other, HttpResponse.BodyHandlers.ofString());
+        } finally {
+            release.countDown();
+        }
+        assertEquals(503, rejected.statusCode());
+        assertEquals("1", rejected.headers().firstValue("Retry-After").get());
+        assertEquals(404, pending.get(5, TimeUnit.SECONDS).statusCode());
+    }
+}
@@ -0,0 +1,76 @@
+package com.example.urlshortener.core;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+import java.util.UUID;
+
+class RedirectCacheTest {
+    private final UUID ownerId = UUID.randomUUID();
+
+    private Link newLink(String shortCode) {
+        return new Link(
+                "https://example.com/" + shortCode,
+                shortCode,
+                ownerId,
+                1_000_000,
+                Instant.now().plusSeconds(3600));
+    }
+
+    // Промах, загрузка из «хранилища» и запись в кэш - как в сервисе
+    private void access(RedirectCache cache, String shortCode) {
+        if (cache.get(shortCode) == null) {
+            cache.put(newLink(shortCode));
+        }
+    }
+
+    @Test
+    void testHotSetSurvivesScan() {
+        RedirectCache cache = new RedirectCache(100);
+        for (int round = 0; round < 20; round++) {
+            for (int i = 0; i < 50; i++) {
+                access(cache, String.format("hot%05d", i));
+            }
+        }
+        // Поток разовых кодов вперемешку с переходами по горячим ссылкам их не вытесняет
+        for (int i = 0; i < 10_000; i++) {
+            access(cache, String.format("scan%04d", i));
+            if (i % 4 == 0) {
+                access(cache, String.format("hot%05d", i / 4 % 50));
+            }
+        }
+        for (int i = 0; i < 50; i++) {
+            assertNotNull(cache.get(String.format("hot%05d", i)), "hot" + i);
+        }
+
+        RedirectCache.Stats stats = cache.getStats();
+        assertTrue(stats.getSize() <= 100);
+        assertTrue(stats.getEvictions() >= 9_900);
+        assertTrue(stats.getHits() >= 950 + 2500);
+    }
+
+    @Test
+    void testInvalidateRemovesEntry() {
+        RedirectCache cache = new RedirectCache(10);
+        RedirectCache.Entry entry = cache.put(newLink("abcdefgh"));
+        assertEquals("https://example.com/abcdefgh", entry.getOriginalUrl());
+        assertSame(entry, cache.get("abcdefgh"));
+
+        cache.invalidate("abcdefgh");
+        assertNull(cache.get("abcdefgh"));
+        assertEquals(0, cache.getStats().getSize());
+    }
+
+    @Test
+    void testConcurrentMissesShareOneLink() {
+        RedirectCache cache = new RedirectCache(10);
+        // Два промаха прочитали из хранилища разные объекты одной ссылки
+        RedirectCache.Entry first = cache.put(newLink("abcdefgh"));
+        RedirectCache.Entry second = cache.put(newLink("abcdefgh"));
+        assertSame(first, second);
+        assertSame(first, cache.get("abcdefgh"));
+        assertEquals(1, cache.getStats().getSize());
+    }
+}
@@ -0,0 +1,161 @@
+package com.example.urlshortener.core;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+class RedirectHttpServerTest {
+    @TempDir Path dataDir;
+
+    private InMemoryLinkRepository repository;
+    private RedirectHttpServer server;
+    private final HttpClient client =
+            HttpClient.newBuilder().followRedirects(HttpClient.Redirect.NEVER).build();
+
+    @BeforeEach
+    void setUp() throws Exception {
+        startServer("", new InMemoryLinkRepository());
+    }
+
+    private void startServer(String extraSettings, InMemoryLinkRepository linkRepository)
+            throws Exception {
+        Path settingsFile = dataDir.resolve("settings.properties");
+        Files.writeString(
+                settingsFile, "default.click.limit=10\nlink.ttl.seconds=600\n" + extraSettings);
+        repository = linkRepository;
+        UrlShortenerService service =
+                new UrlShortenerService(repository, new SystemSettings(settingsFile));
+        server = new RedirectHttpServer(service, 0);
+        server.start();
+    }
+
+    @AfterEach
+    void tearDown() {
+        server.stop();
+    }
+
+    private HttpResponse<String> get(String path) throws Exception {
+        HttpRequest request =
+                HttpRequest.newBuilder(URI.create("http://localhost:" + server.getPort() + path))
+                        .build();
+        return client.send(request, HttpResponse.BodyHandlers.ofString());
+    }
+
+    @Test
+    void testRedirectNotFoundAndGone() throws Exception {
+        UUID ownerId = UUID.randomUUID();
+        repository.save(
+                new Link(
+                        "https://example.com/page",
+                        "httplnk1",
+                        ownerId,
+                        1,
+                        Instant.now().plusSeconds(600)));
+
+        HttpResponse<String> found = get("/httplnk1");
+        assertEquals(302, found.statusCode());
+        assertEquals("https://example.com/page", found.headers().firstValue("Location").get());
+        assertEquals("no-store", found.headers().firstValue("Cache-Control").get());
+
+        // Лимит в один переход исчерпан
+        assertEquals(410, get("/httplnk1").statusCode());
+        assertEquals(404, get("/unknown1").statusCode());
+        assertEquals(404, get("/").statusCode());
+    }
+
+    @Test
+    void testPermanentLinkIsCacheable() throws Exception {
+        repository.save(
+                new Link(
+                        "https://example.com/forever",
+                        "httpprm1",
+                        UUID.randomUUID(),
+                        Link.NO_CLICK_LIMIT,
+                        Instant.now().plusSeconds(600),
+                        true));
+
+        HttpResponse<String> response = get("/httpprm1");
+        assertEquals(301, response.statusCode());
+        assertEquals("public", response.headers().firstValue("Cache-Control").get());
+        assertTrue(response.headers().firstValue("Expires").isPresent());
+    }
+
+    @Test
+    void testHeadDoesNotConsumeClicks() throws Exception {
+        repository.save(
+                new Link(
+                        "https://example.com/head",
+                        "httphed1",
+                        UUID.randomUUID(),
+                        1,
+                        Instant.now().plusSeconds(600)));
+        HttpRequest head =
+                HttpRequest.newBuilder(
+                                URI.create("http://localhost:" + server.getPort() + "/httphed1"))
+                        .method("HEAD", HttpRequest.BodyPublishers.noBody())
+                        .build();
+
+        // Проверки ботов не тратят единственный переход
+        for (int i = 0; i < 3; i++) {
+            HttpResponse<Void> response = client.send(head, HttpResponse.BodyHandlers.discarding());
+            assertEquals(302, response.statusCode());
+        }
+        assertEquals(0, repository.findByShortCode("httphed1").orElseThrow().getCurrentClicks());
+        assertEquals(302, get("/httphed1").statusCode());
+        assertEquals(410, get("/httphed1").statusCode());
+    }
+
+    @Test
+    void testOverloadedServerAnswers503() throws Exception {
+        CountDownLatch entered = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        server.stop();
+        startServer(
+                "admission.limit.max=1\nadmission.queue.timeout.millis=0\n",
+                new InMemoryLinkRepository() {
+                    @Override
+                    public Optional<Link> findByShortCode(String shortCode) {
+                        if (shortCode.equals("httpSlow")) {
+                            entered.countDown();
+                            try {
+                                release.await();
+                            } catch (InterruptedException e) {
+                                Thread.currentThread().interrupt();
+                            }
+                        }
+                        return super.findByShortCode(shortCode);
+                    }
+                });
+
+        HttpRequest slow =
+                HttpRequest.newBuilder(
+                                URI.create("http://localhost:" + server.getPort() + "/httpSlow"))
+                        .build();
+        CompletableFuture<HttpResponse<String>> pending =
+                client.sendAsync(slow, HttpResponse.BodyHandlers.ofString());
+        assertTrue(entered.await(5, TimeUnit.SECONDS));
+
+        // Единственное место занято, очереди нет: второй запрос сразу получает 503
+        HttpResponse<String> rejected = get("/other01");
+        release.countDown();
+        assertEquals(503, rejected.statusCode());
+        assertEquals("1", rejected.headers().firstValue("Retry-After").get());
+        assertEquals(404, pending.get(5, TimeUnit.SECONDS).statusCode());
+    }
+}
@@ -0,0 +1,72 @@
+package com.example.urlshortener.core;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+class SequenceCodeGeneratorTest {
+    @TempDir Path dataDir;
+
+    @Test
+    void testThreadsGetUniqueCodesFromLeases() throws Exception {
+        SequenceCodeGenerator generator = SequenceCodeGenerator.open(dataDir.resolve("codes.seq"));
+        Set<String> codes = ConcurrentHashMap.newKeySet();
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int t = 0; t < 8; t++) {
+            futures.add(
+                    executor.submit(
+                            () -> {
+                                for (int i = 0; i < 10_000; i++) {
+                                    assertTrue(codes.add(generator.nextCode()));
+                                }
+                            }));
+        }
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        executor.shutdown();
+        generator.close();
+        assertEquals(80_000, codes.size());
+    }
+
+    @Test
+    void testGeneratorsSharingFileLeaseDisjointBlocks() {
+        // Два генератора на одном файле ведут себя как два процесса с общим каталогом данных
+        Path file = dataDir.resolve("codes.seq");
+        SequenceCodeGenerator first = SequenceCodeGenerator.open(file);
+        SequenceCodeGenerator second = SequenceCodeGenerator.open(file);
+        Set<String> codes = new HashSet<>();
+        for (int i = 0; i < 5000; i++) {
+            assertTrue(codes.add(first.nextCode()));
+            assertTrue(codes.add(second.nextCode()));
+        }
+        first.close();
+        second.close();
+
+        // После перезапуска номера продолжаются за всеми выданными блоками
+        SequenceCodeGenerator reopened = SequenceCodeGenerator.open(file);
+        for (int i = 0; i < 5000; i++) {
+            assertTrue(codes.add(reopened.nextCode()));
+        }
+        reopened.close();
+    }
+
+    @Test
+    void testInMemoryGeneratorStartsFromZero() {
+        SequenceCodeGenerator generator = SequenceCodeGenerator.inMemory();
+        assertEquals(generator.codeForNumber(0), generator.nextCode());
+        assertEquals(generator.codeForNumber(1), generator.nextCode());
+    }
+}
@@ -0,0 +1,175 @@
+package com.example.urlshortener.core;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+class ShardedLinkRepositoryTest {
+    @TempDir Path dataDir;
+
+    private final UUID ownerId = UUID.randomUUID();
+
+    private SystemSettings settings(int shardCount) throws IOException {
+        Path settingsFile = dataDir.resolve("settings.properties");
+        Files.writeString(
+                settingsFile,
+                "default.click.limit=10\nlink.ttl.seconds=600\nlink.durability=ASYNC\n"
+                        + "link.shard.count="
+                        + shardCount
+                        + "\n");
+        return new SystemSettings(settingsFile);
+    }
+
+    private List<Link> newLinks(int count) {
+        List<Link> links = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            String code = String.format("s%07d", i);
+            links.add(
+                    new Link(
+                            "https://example.com/" + code,
+                            code,
+                            ownerId,
+                            100,
+                            Instant.now().plusSeconds(600)));
+        }
+        return links;
+    }
+
+    @Test
+    void testLinksAreSpreadOverShardsAndSurviveRestart() throws IOException {
+        ShardedLinkRepository repository = new ShardedLinkRepository(dataDir, settings(4));
+        repository.saveAll(newLinks(2000));
+        Link clicked = repository.findByShortCode("s0000007").orElseThrow();
+        clicked.incrementClicks();
+        repository.recordClick(clicked);
+        repository.close();
+
+        // Каждый шард получил заметную долю ссылок
+        for (int i = 0; i < 4; i++) {
+            assertTrue(Files.isDirectory(dataDir.resolve("shard-" + i)));
+        }
+        int[] perShard = new int[4];
+        newLinks(2000)
+                .forEach(
+                        link ->
+                                perShard[
+                                        ShardedLinkRepository.shardIndex(
+                                                link.getShortCode(), 4)]++);
+        for (int count : perShard) {
+            assertTrue(count > 300, "Неравномерное распределение: " + count);
+        }
+
+        ShardedLinkRepository reopened = new ShardedLinkRepository(dataDir, settings(4));
+        assertEquals(2000, reopened.count());
+        assertEquals(2000, reopened.findByOwnerId(ownerId).size());
+        assertEquals(1, reopened.findByShortCode("s0000007").orElseThrow().getCurrentClicks());
+        reopened.close();
+    }
+
+    @Test
+    void testPagesContinueWhenRemainingLinksSitInOneShard() throws IOException {
+        // С одним шардом все ссылки владельца после курсора лежат в нем
+        ShardedLinkRepository repository = new ShardedLinkRepository(dataDir, settings(1));
+        repository.saveAll(newLinks(21));
+
+        LinkPage first =
+                repository.findPageByOwnerId(ownerId, LinkSort.CREATED, LinkFilter.ALL, null, 20);
+        assertEquals(20, first.getLinks().size());
+        assertTrue(first.hasNext());
+        LinkPage second =
+                repository.findPageByOwnerId(
+                        ownerId, LinkSort.CREATED, LinkFilter.ALL, first.getNextCursor(), 20);
+        assertEquals(1, second.getLinks().size());
+        assertFalse(second.hasNext());
+        repository.close();
+    }
+
+    @Test
+    void testChangedShardCountRequiresRebalance() throws IOException {
+        new ShardedLinkRepository(dataDir, settings(4)).close();
+
+        IllegalStateException error =
+                assertThrows(
+                        IllegalStateException.class,
+                        () -> new ShardedLinkRepository(dataDir, settings(2)));
+        assertTrue(error.getMessage().contains("--rebalance-shards 2"));
+    }
+
+    @Test
+    void testRebalanceMovesLinksToNewShardCount() throws IOException {
+        ShardedLinkRepository repository = new ShardedLinkRepository(dataDir, settings(4));
+        repository.saveAll(newLinks(1000));
+        Link clicked = repository.findByShortCode("s0000042").orElseThrow();
+        clicked.incrementClicks();
+        clicked.incrementClicks();
+        repository.recordClick(clicked);
+        repository.close();
+
+        ShardedLinkRepository.rebalance(dataDir, 2, settings(4));
+
+        assertEquals(2, ShardedLinkRepository.readShardCount(dataDir));
+        assertFalse(Files.exists(dataDir.resolve("shard-2")));
+        ShardedLinkRepository rebalanced = new ShardedLinkRepository(dataDir, settings(2));
+        assertEquals(1000, rebalanced.count());
+        assertEquals(2, rebalanced.findByShortCode("s0000042").orElseThrow().getCurrentClicks());
+        assertEquals(
+                "https://example.com/s0000999",
+                rebalanced.findByShortCode("s0000999").orElseThrow().getOriginalUrl());
+        rebalanced.close();
+    }
+
+    @Test
+    void testInterruptedSwapIsCompletedOnOpen() throws IOException {
+        ShardedLinkRepository repository = new ShardedLinkRepository(dataDir, settings(2));
+        repository.saveAll(newLinks(500));
+        repository.close();
+
+        // Сбой посреди замены: новые шарды готовы, один старый уже отложен, shards.meta прежний
+        ShardedLinkRepository.prepareRebalance(dataDir, 2, 3, settings(2));
+        Files.createDirectories(dataDir.resolve("shards-previous"));
+        Files.move(dataDir.resolve("shard-0"), dataDir.resolve("shards-previous/shard-0"));
+        assertEquals(2, ShardedLinkRepository.readShardCount(dataDir));
+
+        ShardedLinkRepository recovered = new ShardedLinkRepository(dataDir, settings(3));
+        assertEquals(500, recovered.count());
+        assertEquals(3, ShardedLinkRepository.readShardCount(dataDir));
+        assertFalse(Files.exists(dataDir.resolve("shards-previous")));
+        assertFalse(Files.exists(dataDir.resolve("shards-rebalance")));
+        assertFalse(Files.exists(dataDir.resolve(ShardedLinkRepository.REBALANCE_MARKER)));
+        recovered.close();
+    }
+
+    @Test
+    void testUnfinishedStagingIsDroppedOnOpen() throws IOException {
+        ShardedLinkRepository repository = new ShardedLinkRepository(dataDir, settings(2));
+        repository.saveAll(newLinks(500));
+        repository.close();
+
+        // Сбой до файла намерения: старые шарды не тронуты, недособранные новые удаляются
+        ShardedLinkRepository.prepareRebalance(dataDir, 2, 3, settings(2));
+        Files.delete(dataDir.resolve(ShardedLinkRepository.REBALANCE_MARKER));
+
+        ShardedLinkRepository reopened = new ShardedLinkRepository(dataDir, settings(2));
+        assertEquals(500, reopened.count());
+        assertFalse(Files.exists(dataDir.resolve("shards-rebalance")));
+        reopened.close();
+    }
+
+    @Test
+    void testMissingShardDirectoryIsNotReplacedWithEmptyShard() throws IOException {
+        new ShardedLinkRepository(dataDir, settings(2)).close();
+        Files.move(dataDir.resolve("shard-1"), dataDir.resolve("lost-shard"));
+
+        assertThrows(
+                IllegalStateException.class, () -> new ShardedLinkRepository(dataDir, settings(2)));
+    }
+}
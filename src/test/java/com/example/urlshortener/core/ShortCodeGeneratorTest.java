@@ -4,7 +4,10 @@ import static org.junit.jupiter.api.Assertions.*;
 
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 
+import java.nio.file.Path;
+import java.util.HashSet;
 import java.util.Set;
 import java.util.UUID;
 
@@ -20,8 +23,9 @@ class ShortCodeGeneratorTest {
 
     @Test
     void testGenerateShortCode_ReturnsCorrectLength() {
-        String code = ShortCodeGenerator.generateShortCode();
+        String code = ShortCodeGenerator.generateUniqueShortCode(testUserId);
         assertEquals(8, code.length());
+        assertTrue(code.chars().allMatch(c -> Base62.ALPHABET.indexOf(c) >= 0), code);
     }
 
     @Test
@@ -56,20 +60,69 @@ class ShortCodeGeneratorTest {
     }
 
     @Test
-    void testReleaseCode() {
-        String code = ShortCodeGenerator.generateUniqueShortCode(testUserId);
-        assertTrue(ShortCodeGenerator.getGlobalUsedCodes().contains(code));
+    void testPermutationIsBijectiveAndInvertible() {
+        CodePermutation permutation = new CodePermutation(42);
+        Set<Long> values = new HashSet<>();
+        for (long number = 0; number < 100_000; number++) {
+            long value = permutation.permute(number);
+            assertTrue(value >= 0 && value < Base62.SPACE);
+            assertEquals(number, permutation.inverse(value));
+            assertTrue(values.add(value));
+        }
+        long last = Base62.SPACE - 1;
+        assertEquals(last, permutation.inverse(permutation.permute(last)));
+    }
 
-        ShortCodeGenerator.releaseCode(code);
-        assertFalse(ShortCodeGenerator.getGlobalUsedCodes().contains(code));
+    @Test
+    void testBase62RoundTrip() {
+        assertEquals("AAAAAAAA", Base62.encode(0));
+        assertEquals("99999999", Base62.encode(Base62.SPACE - 1));
+        assertEquals(123_456_789L, Base62.decode(Base62.encode(123_456_789L)));
+        assertEquals(-1, Base62.decode("existing1"));
+        assertEquals(-1, Base62.decode("abc-defg"));
     }
 
     @Test
-    void testReleaseCodeForUser() {
-        String code = ShortCodeGenerator.generateUniqueShortCode(testUserId);
-        assertTrue(ShortCodeGenerator.getUserUsedCodes(testUserId).contains(code));
+    void testSequentialCodesAreUniqueWithoutRetries() {
+        Set<String> codes = new HashSet<>();
+        for (int i = 0; i < 50_000; i++) {
+            assertTrue(codes.add(ShortCodeGenerator.generateUniqueShortCode(testUserId)));
+        }
+    }
 
-        ShortCodeGenerator.releaseCodeForUser(testUserId, code);
-        assertFalse(ShortCodeGenerator.getUserUsedCodes(testUserId).contains(code));
+    @Test
+    void testOccupiedLegacyCodeIsSkipped() {
+        ShortCodeGenerator.useInMemorySequence();
+        // Случайный код старого формата совпал с кодом номера 1 - номер пропускается
+        String legacy = ShortCodeGenerator.codeForNumber(1);
+        ShortCodeGenerator.initializeWithExistingCodes(Set.of(legacy));
+
+        assertEquals(
+                ShortCodeGenerator.codeForNumber(0),
+                ShortCodeGenerator.generateUniqueShortCode(testUserId));
+        assertEquals(
+                ShortCodeGenerator.codeForNumber(2),
+                ShortCodeGenerator.generateUniqueShortCode(testUserId));
+    }
+
+    @Test
+    void testSequenceFileContinuesAfterRestart(@TempDir Path dataDir) {
+        Path file = dataDir.resolve("codes.seq");
+        try {
+            ShortCodeGenerator.useSequenceFile(file);
+            Set<String> codes = new HashSet<>();
+            for (int i = 0; i < 3000; i++) {
+                codes.add(ShortCodeGenerator.generateUniqueShortCode(testUserId));
+            }
+
+            // Тот же ключ, номера продолжаются после зарезервированного блока
+            ShortCodeGenerator.useSequenceFile(file);
+            ShortCodeGenerator.initializeWithExistingCodes(codes);
+            for (int i = 0; i < 3000; i++) {
+                assertTrue(codes.add(ShortCodeGenerator.generateUniqueShortCode(testUserId)));
+            }
+        } finally {
+            ShortCodeGenerator.useInMemorySequence();
+        }
     }
 }
@@ -4,8 +4,19 @@ import static org.junit.jupiter.api.Assertions.*;
 
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 
 class UrlShortenerServiceTest {
     private UrlShortenerService service;
@@ -53,6 +64,115 @@ class UrlShortenerServiceTest {
                 });
     }
 
+    @Test
+    void testResolveRedirectReturnsStatusWithoutException() {
+        String shortCode = service.createShortLink("https://www.example.com", testUserId);
+
+        RedirectResult found = service.resolveRedirect(shortCode);
+        assertEquals(RedirectResult.Status.FOUND, found.getStatus());
+        assertEquals("https://www.example.com", found.getOriginalUrl());
+
+        RedirectResult missing = service.resolveRedirect("missing1");
+        assertEquals(RedirectResult.Status.NOT_FOUND, missing.getStatus());
+        assertNull(missing.getOriginalUrl());
+    }
+
+    @Test
+    void testConcurrentRedirectsNeverExceedClickLimit() throws Exception {
+        assertClickLimitHeldUnderContention(service, linkRepository, () -> {}, () -> {});
+    }
+
+    @Test
+    void testConcurrentRedirectsNeverExceedClickLimitOnLsm(@TempDir Path dataDir) throws Exception {
+        Path settingsFile = dataDir.resolve("settings.properties");
+        Files.writeString(
+                settingsFile,
+                "link.durability=ASYNC\nlsm.memtable.max.bytes=4096\nlsm.cache.max.links=64\n");
+        SystemSettings settings = new SystemSettings(settingsFile);
+        LsmLinkRepository lsm = new LsmLinkRepository(dataDir, settings);
+        try {
+            // Ссылка читается из SSTable, а набор таблиц меняется прямо во время переходов
+            AtomicInteger filler = new AtomicInteger();
+            Runnable churn =
+                    () -> {
+                        for (int i = 0; i < 5; i++) {
+                            for (int j = 0; j < 20; j++) {
+                                lsm.save(
+                                        new Link(
+                                                "https://www.example.com/filler",
+                                                String.format("fill%04d", filler.getAndIncrement()),
+                                                UUID.randomUUID(),
+                                                10,
+                                                Instant.now().plusSeconds(3600)));
+                            }
+                            lsm.checkpoint();
+                        }
+                    };
+            assertClickLimitHeldUnderContention(
+                    new UrlShortenerService(lsm, settings), lsm, lsm::checkpoint, churn);
+        } finally {
+            lsm.close();
+        }
+    }
+
+    // afterSave выполняется после сохранения ссылки, duringRedirects - параллельно с переходами
+    private void assertClickLimitHeldUnderContention(
+            UrlShortenerService service,
+            LinkRepository repository,
+            Runnable afterSave,
+            Runnable duringRedirects)
+            throws Exception {
+        for (int round = 0; round < 20; round++) {
+            String shortCode = String.format("stress%02d", round);
+            repository.save(
+                    new Link(
+                            "https://www.example.com",
+                            shortCode,
+                            testUserId,
+                            10,
+                            Instant.now().plusSeconds(3600)));
+            afterSave.run();
+
+            // 16 потоков стартуют одновременно и делают по 200 переходов
+            AtomicInteger served = new AtomicInteger();
+            CountDownLatch start = new CountDownLatch(1);
+            ExecutorService executor = Executors.newFixedThreadPool(17);
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < 16; t++) {
+                futures.add(
+                        executor.submit(
+                                () -> {
+                                    start.await();
+                                    for (int i = 0; i < 200; i++) {
+                                        if (service.resolveRedirect(shortCode).getStatus()
+                                                == RedirectResult.Status.FOUND) {
+                                            served.incrementAndGet();
+                                        }
+                                    }
+                                    return null;
+                                }));
+            }
+            futures.add(
+                    executor.submit(
+                            () -> {
+                                start.await();
+                                duringRedirects.run();
+                                return null;
+                            }));
+            start.countDown();
+            for (Future<?> future : futures) {
+                future.get();
+            }
+            executor.shutdown();
+
+            assertEquals(10, served.get());
+            assertEquals(
+                    10, repository.findByShortCode(shortCode).orElseThrow().getCurrentClicks());
+        }
+        // Об исчерпании лимита каждой ссылки сообщено ровно один раз
+        assertEquals(20, service.pollNotifications(testUserId).size());
+    }
+
     @Test
     void testGetAllUserLinks() {
         String url = "https://www.example.com";
@@ -62,4 +182,55 @@ class UrlShortenerServiceTest {
         assertEquals(1, userLinks.size());
         assertEquals(url, userLinks.get(0).getOriginalUrl());
     }
+
+    @Test
+    void testClickLimitNotificationIsDeliveredOnce() {
+        String shortCode = service.createShortLink("https://www.example.com", testUserId);
+        for (int i = 0; i < service.getDefaultClickLimit(); i++) {
+            service.handleRedirect(shortCode);
+        }
+
+        var notifications = service.pollNotifications(testUserId);
+        assertEquals(1, notifications.size());
+        assertEquals(shortCode, notifications.get(0).getShortCode());
+        assertEquals(
+                InactiveLinkTracker.Reason.CLICK_LIMIT_REACHED, notifications.get(0).getReason());
+        // Уведомление уже прочитано, и ссылка больше не принимает переходы
+        assertTrue(service.pollNotifications(testUserId).isEmpty());
+        assertThrows(LinkNotActiveException.class, () -> service.handleRedirect(shortCode));
+        assertTrue(service.pollNotifications(testUserId).isEmpty());
+    }
+
+    @Test
+    void testGetUserLinksPage() {
+        for (int i = 0; i < 3; i++) {
+            service.createShortLink("https://www.example.com/" + i, testUserId);
+        }
+
+        LinkPage first =
+                service.getUserLinksPage(testUserId, LinkSort.CREATED, LinkFilter.ALL, null, 2);
+        assertEquals(2, first.getLinks().size());
+        assertTrue(first.hasNext());
+        LinkPage second =
+                service.getUserLinksPage(
+                        testUserId, LinkSort.CREATED, LinkFilter.ALL, first.getNextCursor(), 2);
+        assertEquals(1, second.getLinks().size());
+        assertFalse(second.hasNext());
+
+        assertThrows(
+                IllegalArgumentException.class,
+                () ->
+                        service.getUserLinksPage(
+                                testUserId, LinkSort.CREATED, LinkFilter.ALL, null, 0));
+        // Курсор одной сортировки не подходит к другой
+        assertThrows(
+                IllegalArgumentException.class,
+                () ->
+                        service.getUserLinksPage(
+                                testUserId,
+                                LinkSort.CLICKS,
+                                LinkFilter.ALL,
+                                first.getNextCursor(),
+                                2));
+    }
 }